@@ -180,7 +180,7 @@ public class WSLSdkProvider extends AbstractWindowsBaseProvider {
     }
 
     @Override
-    public @Nullable CompileWithCmtInfo getCompileCommandWithCmt(String sdkHomePath, String rootFolderForTempering, String file, String outputDirectory, String executableName) {
+    public @Nullable CompileWithCmtInfo getCompileCommandWithCmt(String sdkHomePath, String rootFolderForTempering, String file, String outputDirectory, String executableName, boolean binaryAnnotations) {
         // is wsl
         WslPath path = WslPath.parseWindowsUncPath(sdkHomePath);
         if (path == null) return null;
@@ -197,19 +197,37 @@ public class WSLSdkProvider extends AbstractWindowsBaseProvider {
             GeneralCommandLine cli = CompileWithCmtInfo.createAnnotatorCommand(
                     path.getLinuxPath() + "/bin/ocamlc",
                     wslFile, wslOutputDirectory + "/" + executableName,
-                    wslOutputDirectory, outputDirectory /* use OS working directory */
+                    wslOutputDirectory, outputDirectory /* use OS working directory */,
+                    binaryAnnotations
             );
             cli = distribution.patchCommandLine(cli, null, new WSLCommandLineOptions());
             String wslRootFolderForTempering = distribution.getWslPath(rootFolderForTempering);
             if (wslRootFolderForTempering == null)
                 throw new ExecutionException("Could not parse rootFolder:" + rootFolderForTempering);
-            return new CompileWithCmtInfo(cli, wslRootFolderForTempering);
+            return new CompileWithCmtInfo(cli, wslRootFolderForTempering, binaryAnnotations);
         } catch (ExecutionException e) {
             LOG.error("Error creating Compiler command", e);
             return null;
         }
     }
 
+    @Override public @Nullable GeneralCommandLine getCmtToAnnotCommand(String sdkHomePath, String cmtFile) {
+        // is wsl
+        WslPath path = WslPath.parseWindowsUncPath(sdkHomePath);
+        if (path == null) return null;
+        try {
+            WSLDistribution distribution = path.getDistribution();
+            String wslCmtFile = distribution.getWslPath(cmtFile);
+            if (wslCmtFile == null)
+                throw new ExecutionException("Could not parse file:" + cmtFile);
+            GeneralCommandLine cli = CompileWithCmtInfo.createCmtToAnnotCommand(path.getLinuxPath() + "/bin/ocamlcmt", wslCmtFile);
+            return distribution.patchCommandLine(cli, null, new WSLCommandLineOptions());
+        } catch (ExecutionException e) {
+            LOG.error("Error creating ocamlcmt command", e);
+            return null;
+        }
+    }
+
     //
     // SDK
     //
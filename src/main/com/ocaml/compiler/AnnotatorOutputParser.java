@@ -0,0 +1,44 @@
+package com.ocaml.compiler;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.ocaml.ide.highlight.intentions.OCamlMessageAdaptor;
+import com.ocaml.sdk.output.CompilerOutputMessage;
+import com.ocaml.sdk.output.CompilerOutputParser;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collect the messages of the compiler, with the paths of the copies
+ * replaced by the paths of the files.
+ */
+final class AnnotatorOutputParser extends CompilerOutputParser {
+
+    @NotNull private final String myRootFolderForTempering;
+    @NotNull private final Logger myLog;
+    @NotNull final List<CompilerOutputMessage> myMessages = new ArrayList<>();
+
+    AnnotatorOutputParser(@NotNull String rootFolderForTempering, @NotNull Logger log) {
+        myRootFolderForTempering = rootFolderForTempering;
+        myLog = log;
+    }
+
+    @Override protected void onMessageReady(@NotNull CompilerOutputMessage message) {
+        // skipping this
+        // Error: Module `Hello_world' is unavailable (required by `Test_hello_world')
+        // because, we are using some shitty way to compile :(
+        // This class was originally called StupidExternalAnnotator x)
+        if (message.content.contains("is unavailable (required by")) return;
+        message.content = OCamlMessageAdaptor.temperPaths(message.content, myRootFolderForTempering);
+        myLog.debug("added:" + message.header() + " (line->" + message.filePosition.getStartLine() + ")");
+        myMessages.add(message);
+    }
+
+    @Override public void inputDone() {
+        super.inputDone();
+        if (getMalformedLines() > 0 || getMalformedMessages() > 0) {
+            myLog.debug("Ignored " + getMalformedLines() + " lines, and " + getMalformedMessages() + " messages.");
+        }
+    }
+}
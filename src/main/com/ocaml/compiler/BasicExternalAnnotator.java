@@ -1,38 +1,35 @@
 package com.ocaml.compiler;
 
-import com.intellij.execution.process.OSProcessHandler;
-import com.intellij.execution.process.ProcessHandlerFactory;
-import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleUtil;
 import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.ModuleRootManager;
-import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import com.ocaml.ide.files.OCamlFileType;
 import com.ocaml.ide.files.OCamlInterfaceFileType;
-import com.ocaml.ide.highlight.intentions.OCamlMessageAdaptor;
+import com.ocaml.ide.highlight.intentions.CompilerOutputAnnotator;
 import com.ocaml.ide.highlight.intentions.CompilerOutputProvider;
+import com.ocaml.ide.settings.OCamlSettings;
 import com.ocaml.lang.utils.OCamlResolveDependencies;
-import com.ocaml.sdk.output.CompilerOutputMessage;
-import com.ocaml.sdk.output.CompilerOutputParser;
 import com.ocaml.sdk.providers.OCamlSdkProvidersManager;
 import com.ocaml.sdk.providers.utils.CompileWithCmtInfo;
-import com.ocaml.utils.files.OCamlFileUtils;
+import com.ocaml.utils.files.OCamlStagingArea;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * I originally named this class StupidExternalAnnotator, or DummyExternalAnnotator.
@@ -45,6 +42,40 @@ public class BasicExternalAnnotator implements CompilerOutputProvider {
     public CollectedInfo collectInformation(@NotNull PsiFile file, @NotNull Editor editor,
                                             String homePath, @NotNull ModuleRootManager moduleRootManager,
                                             String outputFolder) {
+        Target target = findTarget(file, moduleRootManager);
+        if (target == null) return null;
+        return new BasicCollectedInfo(this, file, editor, homePath, target.myTargetFile, target.myMli,
+                target.myDependencies, outputFolder, target.myUnits, target.myUnit);
+    }
+
+    /**
+     * Must be called from a background thread, outside a read action.
+     * @return the fingerprint that the annotator would give to the current version of the file,
+     * or null if the file can't be compiled
+     * @see CollectedInfo#getFingerprint()
+     */
+    public static @Nullable String computeFingerprint(@NotNull PsiFile file) {
+        Project project = file.getProject();
+        Ref<String> homePath = new Ref<>();
+        Target target = DumbService.getInstance(project).runReadActionInSmartMode(() -> {
+            VirtualFile sourceFile = file.getVirtualFile();
+            if (!file.isValid() || sourceFile == null) return null;
+            Module module = ModuleUtil.findModuleForFile(sourceFile, project);
+            if (module == null) return null;
+            ModuleRootManager moduleRootManager = ModuleRootManager.getInstance(module);
+            homePath.set(CompilerOutputAnnotator.findHomePath(moduleRootManager, project));
+            return homePath.isNull() ? null : findTarget(file, moduleRootManager);
+        });
+        if (target == null) return null;
+        CompilationUnit.computeFingerprints(target.myUnits, homePath.get());
+        CompilationUnit.computeFingerprints(List.of(target.myUnit), homePath.get());
+        return target.myUnit.myFingerprint;
+    }
+
+    /**
+     * Must be called inside a read action.
+     */
+    private static @Nullable Target findTarget(@NotNull PsiFile file, @NotNull ModuleRootManager moduleRootManager) {
         Project project = file.getProject();
         VirtualFile sourceFile = file.getVirtualFile();
         String targetFile = null;
@@ -69,10 +100,16 @@ public class BasicExternalAnnotator implements CompilerOutputProvider {
             VirtualFile mliV = sourceFile.getParent().findChild(OCamlInterfaceFileType.fromSource(sourceFile.getName()));
             if (mliV != null) mli = PsiManager.getInstance(project).findFile(mliV);
         }
-        return new CollectedInfo(this, file, editor, homePath, targetFile, mli, dependencies, outputFolder);
+        // read the dependencies, sorted so that a file is compiled after its own dependencies
+        // only their text is read here, the fingerprints are computed outside the read action
+        List<CompilationUnit> units = createUnits(dependencies, targetFile, mli);
+        CompilationUnit target = CompilationUnit.createTarget(targetFile, file, units);
+        return new Target(targetFile, mli, dependencies, units, target);
     }
 
     @Override public ExternalCompilerResult doAnnotate(@NotNull CollectedInfo collectedInfo, Logger log) {
+        // the fingerprints of the units are used by the cache of the dependencies
+        collectedInfo.getFingerprint();
         // build/out folder
         File myOutputFolder = new File(collectedInfo.myOutputFolder);
         if (!myOutputFolder.exists() && !myOutputFolder.mkdirs()) {
@@ -92,29 +129,23 @@ public class BasicExternalAnnotator implements CompilerOutputProvider {
         // We need to make a copy with the REAL content of the file, and work on this copy.
         // If we are working on the given file, we are not compiling/... the "latest" version,
         // as some changes may not have been committed.
-        // FIX: Read access is allowed from inside read-action (or EDT) only (see com.intellij.openapi.application.Application.runReadAction())
-        //noinspection RedundantSuppression
-        @SuppressWarnings("deprecation")
-        File sourceTempFile = ApplicationManager.getApplication().runReadAction((Computable<File>)
-                () -> OCamlFileUtils.copyToTempFile(targetFolder, collectedInfo.mySourcePsiFile, sourceFile.getName(), log)
-        );
+        // The content was read in collectInformation, the copy is written outside the read action.
+        BasicCollectedInfo basicCollectedInfo = (BasicCollectedInfo) collectedInfo;
+        File sourceTempFile = OCamlStagingArea.stage(targetFolder, sourceFile.getName(), basicCollectedInfo.myTarget.mySource, log);
         if (sourceTempFile == null) return null;
 
         try {
-            for (Pair<String, PsiFile> pair : collectedInfo.myDependencies) {
-                // target folder
-                File localTargetFolder = new File(myOutputFolder, pair.first).getParentFile();
-//               todo: System.out.println("lft" + localTargetFolder);
-                if (!targetFolder.exists() && !targetFolder.mkdirs())
-                    continue;
-                compileFile(collectedInfo.myHomePath, localTargetFolder, myOutputFolder, pair.second, log);
-            }
-
-            // only if we are compiling a .ml,
-            // and we got a .mli
-            if (collectedInfo.myTargetMli != null) {
-                compileFile(collectedInfo.myHomePath, targetFolder, myOutputFolder, collectedInfo.myTargetMli, log);
-            }
+            List<CompilationUnit> units = basicCollectedInfo.myUnits;
+
+            // independent dependencies are compiled concurrently
+            Project project = collectedInfo.mySourcePsiFile.getProject();
+            CompilationCache cache = CompilationCache.getInstance(project, myOutputFolder);
+            CompilerRunner runner = CompilerRunner.getInstance(project);
+            boolean binaryAnnotations = OCamlSettings.getInstance(project).useBinaryAnnotations;
+            new DependencyCompiler(collectedInfo.myHomePath, myOutputFolder, cache, runner, log)
+                    .withBinaryAnnotations(binaryAnnotations)
+                    .compile(units);
+            cache.save(log);
 
             // get compiler
             CompileWithCmtInfo compiler = OCamlSdkProvidersManager.INSTANCE.getCompileCommandWithCmt(
@@ -122,37 +153,17 @@ public class BasicExternalAnnotator implements CompilerOutputProvider {
                     myOutputFolder.getAbsolutePath(),
                     sourceTempFile.getPath(),
                     targetFolder.getAbsolutePath(),
-                    sourceFile.getNameWithoutExtension()
+                    sourceFile.getNameWithoutExtension(),
+                    binaryAnnotations
             );
             if (compiler == null) {
                 log.error("No cli found for " + collectedInfo.myHomePath + " (ml).");
                 return null;
             }
 
-            OSProcessHandler processHandler = ProcessHandlerFactory
-                    .getInstance()
-                    .createColoredProcessHandler(compiler.cli);
-            Process process = processHandler.getProcess();
-            processHandler.startNotify();
-
-            ArrayList<CompilerOutputMessage> info = new ArrayList<>();
-            CompilerOutputParser outputParser = new CompilerOutputParser() {
-                @Override protected void onMessageReady(@NotNull CompilerOutputMessage message) {
-                    // skipping this
-                    // Error: Module `Hello_world' is unavailable (required by `Test_hello_world')
-                    // because, we are using some shitty way to compile :(
-                    // This class was originally called StupidExternalAnnotator x)
-                    if (message.content.contains("is unavailable (required by")) return;
-                    message.content = OCamlMessageAdaptor.temperPaths(message.content, compiler.rootFolderForTempering);
-                    log.debug("added:" + message.header() + " (line->" + message.filePosition.getStartLine() + ")");
-                    info.add(message);
-                }
-            };
-            try (BufferedReader stdin = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = stdin.readLine()) != null) {
-                    outputParser.parseLine(line);
-                }
+            AnnotatorOutputParser outputParser = new AnnotatorOutputParser(compiler.rootFolderForTempering, log);
+            try {
+                runner.run(compiler.cli, outputParser, null);
                 // done
                 outputParser.inputDone();
             } catch (IOException e) {
@@ -163,7 +174,8 @@ public class BasicExternalAnnotator implements CompilerOutputProvider {
 
             String nameWithoutExtension = sourceFile.getNameWithoutExtension();
             File annotFile = new File(targetFolder, nameWithoutExtension + "." + compiler.getAnnotationFileExtension());
-            return new ExternalCompilerResult(info, collectedInfo.myEditor, annotFile);
+            return new ExternalCompilerResult(outputParser.myMessages, collectedInfo.myEditor, annotFile,
+                    collectedInfo.getFingerprint());
         } catch (Exception e) {
             if (!(e instanceof ProcessCanceledException))
                 log.error("Error while processing annotations", e);
@@ -171,30 +183,63 @@ public class BasicExternalAnnotator implements CompilerOutputProvider {
         }
     }
 
-    private void compileFile(@NotNull String homePath, @NotNull File targetFolder,
-                             @NotNull File outputFolder, @NotNull PsiFile targetPsi,
-                             @NotNull Logger log) throws Exception {
-        AtomicReference<File> tempFile = new AtomicReference<>();
-        ApplicationManager.getApplication().runReadAction(() -> tempFile.set(
-                OCamlFileUtils.copyToTempFile(targetFolder, targetPsi, targetPsi.getName(), log)
-        ));
+    private static @NotNull List<CompilationUnit> createUnits(@NotNull Set<Pair<String, PsiFile>> dependencies,
+                                                              @NotNull String targetFile, @Nullable PsiFile mli) {
+        List<CompilationUnit> units = CompilationUnit.createUnits(dependencies);
+        // only if we are compiling a .ml,
+        // and we got a .mli
+        if (mli != null) {
+            String parent = new File(targetFile).getParent();
+            String mliName = mli.getName();
+            String relativePath = parent == null ? mliName : parent + "/" + mliName;
+            units.add(CompilationUnit.create(relativePath, mli, units));
+        }
+        return units;
+    }
+
+    private static final class Target {
+        @NotNull private final String myTargetFile;
+        @Nullable private final PsiFile myMli;
+        @NotNull private final Set<Pair<String, PsiFile>> myDependencies;
+        @NotNull private final List<CompilationUnit> myUnits;
+        @NotNull private final CompilationUnit myUnit;
+
+        private Target(@NotNull String targetFile, @Nullable PsiFile mli, @NotNull Set<Pair<String, PsiFile>> dependencies,
+                       @NotNull List<CompilationUnit> units, @NotNull CompilationUnit unit) {
+            myTargetFile = targetFile;
+            myMli = mli;
+            myDependencies = dependencies;
+            myUnits = units;
+            myUnit = unit;
+        }
+    }
 
-        // compile .mli
-        if (tempFile.get() != null) {
-            // get compiler
-            CompileWithCmtInfo compiler = OCamlSdkProvidersManager.INSTANCE.getCompileCommandWithCmt(
-                    homePath,
-                    outputFolder.getAbsolutePath(),
-                    tempFile.get().getPath(),
-                    targetFolder.getAbsolutePath(),
-                    targetPsi.getVirtualFile().getNameWithoutExtension()
-            );
-            if (compiler == null) {
-                log.error("No cli found for " + homePath + " (mli).");
-                return;
+    private static final class BasicCollectedInfo extends CollectedInfo {
+        @NotNull private final List<CompilationUnit> myUnits;
+        @NotNull private final CompilationUnit myTarget;
+        private boolean myFingerprintComputed;
+
+        private BasicCollectedInfo(@NotNull CompilerOutputProvider annotator, @NotNull PsiFile sourcePsiFile,
+                                   @NotNull Editor editor, @NotNull String homePath,
+                                   @NotNull String targetFile, @Nullable PsiFile mli,
+                                   @NotNull Set<Pair<String, PsiFile>> deps, @NotNull String outputFolder,
+                                   @NotNull List<CompilationUnit> units, @NotNull CompilationUnit target) {
+            super(annotator, sourcePsiFile, editor, homePath, targetFile, mli, deps, outputFolder);
+            myUnits = units;
+            myTarget = target;
+        }
+
+        /**
+         * The result only depends on the content of the file, and of its dependencies.
+         * The hashes are computed once, outside the read action of collectInformation.
+         */
+        @Override public synchronized @NotNull String getFingerprint() {
+            if (!myFingerprintComputed) {
+                CompilationUnit.computeFingerprints(myUnits, myHomePath);
+                CompilationUnit.computeFingerprints(List.of(myTarget), myHomePath);
+                myFingerprintComputed = true;
             }
-            Process process = compiler.cli.createProcess();
-            process.waitFor(); // wait
+            return myTarget.myFingerprint;
         }
     }
 }
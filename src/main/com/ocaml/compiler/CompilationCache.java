@@ -0,0 +1,115 @@
+package com.ocaml.compiler;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fingerprints of the files that were compiled in an output folder
+ * (relative path -> hash of the content of the file, and of the fingerprints of its dependencies).
+ * A file whose fingerprint didn't change doesn't need to be compiled again,
+ * as its .cmi/.cmt are still in the output folder.
+ * <p>
+ * The fingerprints are saved in the output folder, so they are removed with it.
+ * There is one cache per output folder of a project, see {@link CompilationCaches}.
+ */
+public final class CompilationCache {
+
+    private static final String CACHE_FILE = "compilation.cache";
+
+    @NotNull private final File myCacheFile;
+    @NotNull private final Map<String, String> myFingerprints = new HashMap<>();
+    private boolean myLoaded;
+    private boolean myModified;
+
+    CompilationCache(@NotNull File outputFolder) {
+        myCacheFile = new File(outputFolder, CACHE_FILE);
+    }
+
+    public static @NotNull CompilationCache getInstance(@NotNull Project project, @NotNull File outputFolder) {
+        return CompilationCaches.getInstance(project).get(outputFolder);
+    }
+
+    /**
+     * @return true if the file was compiled with this fingerprint, and the output folder wasn't removed since.
+     */
+    public synchronized boolean isUpToDate(@NotNull String relativePath, @NotNull String fingerprint) {
+        load();
+        return fingerprint.equals(myFingerprints.get(relativePath));
+    }
+
+    public synchronized void update(@NotNull String relativePath, @Nullable String fingerprint) {
+        load();
+        String previous = fingerprint == null ? myFingerprints.remove(relativePath) : myFingerprints.put(relativePath, fingerprint);
+        if (previous == null ? fingerprint != null : !previous.equals(fingerprint)) {
+            myModified = true;
+        }
+    }
+
+    public synchronized void save(@NotNull Logger log) {
+        if (!myModified) return;
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, String> entry : myFingerprints.entrySet()) {
+            lines.add(entry.getValue() + "\t" + entry.getKey());
+        }
+        try {
+            Files.write(myCacheFile.toPath(), lines, StandardCharsets.UTF_8);
+            myModified = false;
+        } catch (IOException e) {
+            log.warn("Couldn't save '" + myCacheFile + "' (" + e.getMessage() + ").");
+        }
+    }
+
+    private void load() {
+        // the output folder was removed: every file must be compiled again
+        if (!myCacheFile.exists()) {
+            if (myLoaded && !myModified) myFingerprints.clear();
+            myLoaded = true;
+            return;
+        }
+        if (myLoaded) return;
+        myLoaded = true;
+        try {
+            for (String line : Files.readAllLines(myCacheFile.toPath(), StandardCharsets.UTF_8)) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) myFingerprints.put(line.substring(tab + 1), line.substring(0, tab));
+            }
+        } catch (IOException e) {
+            // the files will be compiled again
+            myFingerprints.clear();
+        }
+    }
+
+    /**
+     * @return a SHA-1 of the values
+     */
+    public static @NotNull String fingerprint(@NotNull String... values) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (String value : values) {
+                digest.update(value.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always available
+            throw new IllegalStateException(e);
+        }
+    }
+}
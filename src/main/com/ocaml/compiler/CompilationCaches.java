@@ -0,0 +1,26 @@
+package com.ocaml.compiler;
+
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link CompilationCache} of each output folder of a project.
+ * The caches are released with the project.
+ */
+public final class CompilationCaches {
+
+    // absolute path of the output folder -> cache
+    private final Map<String, CompilationCache> myCaches = new ConcurrentHashMap<>();
+
+    public static @NotNull CompilationCaches getInstance(@NotNull Project project) {
+        return project.getService(CompilationCaches.class);
+    }
+
+    public @NotNull CompilationCache get(@NotNull File outputFolder) {
+        return myCaches.computeIfAbsent(outputFolder.getAbsolutePath(), k -> new CompilationCache(outputFolder));
+    }
+}
@@ -0,0 +1,176 @@
+package com.ocaml.compiler;
+
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.ocaml.utils.files.OCamlStagingArea;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * A dependency that must be compiled before the file of the annotator.
+ * The content of the file is read once, and used both to compute the fingerprint
+ * of the file, and to create the copy that will be compiled.
+ * <p>
+ * The units are created inside a read action, but the fingerprints are computed
+ * later, using {@link #computeFingerprints(List, String)}, outside the read action.
+ */
+final class CompilationUnit {
+
+    @NotNull final String myRelativePath; // path to the file, relative to the output folder
+    @NotNull final String myDirectory; // parent of the relative path, empty at the root
+    @Nullable final VirtualFile myFile;
+    @NotNull final String myName; // module name, lower case
+    @NotNull final OCamlStagingArea.Source mySource;
+    @NotNull final String myText;
+    @NotNull final Set<String> myDependencyNames;
+    @NotNull final List<CompilationUnit> myDependencies = new ArrayList<>();
+    @NotNull String myFingerprint = "";
+
+    private CompilationUnit(@NotNull String relativePath, @NotNull PsiFile file) {
+        myRelativePath = relativePath;
+        int separator = relativePath.lastIndexOf('/');
+        myDirectory = separator < 0 ? "" : relativePath.substring(0, separator);
+        myFile = file.getVirtualFile();
+        myName = file.getVirtualFile().getNameWithoutExtension().toLowerCase();
+        mySource = OCamlStagingArea.snapshot(file);
+        myText = mySource.getText();
+        myDependencyNames = OCamlDependencyGraph.getInstance(file.getProject()).getDependencies(file);
+    }
+
+    /**
+     * Must be called inside a read action.
+     * Two files may define a module with the same name, if they are in different folders.
+     * @param dependencies the dependencies of the file
+     * @return the units, sorted in topological order (each unit is after its dependencies).
+     * Units that are part of a cycle are added at the end.
+     */
+    static @NotNull List<CompilationUnit> createUnits(@NotNull Collection<Pair<String, PsiFile>> dependencies) {
+        Map<String, CompilationUnit> units = new LinkedHashMap<>();
+        for (Pair<String, PsiFile> dependency : dependencies) {
+            units.computeIfAbsent(dependency.first, relativePath -> new CompilationUnit(relativePath, dependency.second));
+        }
+
+        Map<String, List<CompilationUnit>> unitsPerName = groupByName(units.values());
+        for (CompilationUnit unit : units.values()) {
+            unit.addDependencies(unitsPerName);
+        }
+
+        return sort(units.values());
+    }
+
+    static @NotNull CompilationUnit create(@NotNull String relativePath, @NotNull PsiFile file,
+                                           @NotNull List<CompilationUnit> units) {
+        CompilationUnit unit = new CompilationUnit(relativePath, file);
+        unit.addDependencies(groupByName(units));
+        for (CompilationUnit dependency : units) {
+            // a .ml is compiled after its .mli
+            if (unit.myName.equals(dependency.myName) && unit.myDirectory.equals(dependency.myDirectory)
+                    && !unit.myDependencies.contains(dependency))
+                unit.myDependencies.add(dependency);
+        }
+        return unit;
+    }
+
+    /**
+     * The file of the annotator, it's compiled after all the units.
+     * Its fingerprint changes if the file, or one of the units, changed.
+     */
+    static @NotNull CompilationUnit createTarget(@NotNull String relativePath, @NotNull PsiFile file,
+                                                 @NotNull List<CompilationUnit> units) {
+        CompilationUnit unit = new CompilationUnit(relativePath, file);
+        unit.myDependencies.addAll(units);
+        return unit;
+    }
+
+    /**
+     * Doesn't need a read action, the content of the files was read when the units were created.
+     * @param units    the units, each unit after its dependencies
+     * @param homePath the SDK used to compile the files
+     */
+    static void computeFingerprints(@NotNull List<CompilationUnit> units, @NotNull String homePath) {
+        for (CompilationUnit unit : units) {
+            unit.computeFingerprint(homePath);
+        }
+    }
+
+    private static @NotNull Map<String, List<CompilationUnit>> groupByName(@NotNull Collection<CompilationUnit> units) {
+        Map<String, List<CompilationUnit>> unitsPerName = new HashMap<>();
+        for (CompilationUnit unit : units) {
+            unitsPerName.computeIfAbsent(unit.myName, k -> new ArrayList<>()).add(unit);
+        }
+        return unitsPerName;
+    }
+
+    /**
+     * A module is resolved to the files of the folder of this unit. If there is none,
+     * the unit depends on every file defining this module, as we can't know which one is used.
+     */
+    private void addDependencies(@NotNull Map<String, List<CompilationUnit>> unitsPerName) {
+        for (String dependencyName : myDependencyNames) {
+            List<CompilationUnit> candidates = unitsPerName.getOrDefault(dependencyName, Collections.emptyList());
+            List<CompilationUnit> sameDirectory = new ArrayList<>();
+            for (CompilationUnit candidate : candidates) {
+                if (candidate.myDirectory.equals(myDirectory)) sameDirectory.add(candidate);
+            }
+            for (CompilationUnit dependency : sameDirectory.isEmpty() ? candidates : sameDirectory) {
+                if (dependency != this) myDependencies.add(dependency);
+            }
+        }
+    }
+
+    // Kahn's algorithm
+    private static @NotNull List<CompilationUnit> sort(@NotNull Collection<CompilationUnit> units) {
+        Map<CompilationUnit, Integer> remainingDependencies = new HashMap<>();
+        Map<CompilationUnit, List<CompilationUnit>> dependents = new HashMap<>();
+        Deque<CompilationUnit> ready = new ArrayDeque<>();
+        for (CompilationUnit unit : units) {
+            remainingDependencies.put(unit, unit.myDependencies.size());
+            for (CompilationUnit dependency : unit.myDependencies) {
+                dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(unit);
+            }
+            if (unit.myDependencies.isEmpty()) ready.add(unit);
+        }
+
+        List<CompilationUnit> sorted = new ArrayList<>(units.size());
+        while (!ready.isEmpty()) {
+            CompilationUnit unit = ready.poll();
+            sorted.add(unit);
+            for (CompilationUnit dependent : dependents.getOrDefault(unit, Collections.emptyList())) {
+                int remaining = remainingDependencies.merge(dependent, -1, Integer::sum);
+                if (remaining == 0) ready.add(dependent);
+            }
+        }
+
+        // cycles, the compiler will report them
+        if (sorted.size() != units.size()) {
+            for (CompilationUnit unit : units) {
+                if (remainingDependencies.get(unit) != 0) sorted.add(unit);
+            }
+        }
+        return sorted;
+    }
+
+    private void computeFingerprint(@NotNull String homePath) {
+        // a file must be compiled again if one of its dependencies changed
+        String[] values = new String[myDependencies.size() + 3];
+        values[0] = homePath;
+        values[1] = myRelativePath;
+        values[2] = myText;
+        List<String> dependencyFingerprints = new ArrayList<>();
+        for (CompilationUnit dependency : myDependencies) {
+            dependencyFingerprints.add(dependency.myRelativePath + ":" + dependency.myFingerprint);
+        }
+        Collections.sort(dependencyFingerprints);
+        for (int i = 0; i < dependencyFingerprints.size(); i++) {
+            values[i + 3] = dependencyFingerprints.get(i);
+        }
+        myFingerprint = CompilationCache.fingerprint(values);
+    }
+
+    @Override public String toString() {
+        return "CompilationUnit{" + myRelativePath + "}";
+    }
+}
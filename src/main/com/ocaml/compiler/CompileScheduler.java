@@ -0,0 +1,231 @@
+package com.ocaml.compiler;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.ocaml.utils.logs.OCamlLogger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Schedule the compilations requested by the annotator. The daemon is restarted
+ * after each modification, so the compilations requested while the user is typing
+ * are mostly stale before they are done.
+ * <ul>
+ *     <li>a compilation is only started after a delay, and dropped if the file was modified
+ *     in the meantime (using the modification stamp of the document)</li>
+ *     <li>a compilation for a version of a file that is already compiled, is sharing the result
+ *     of the running compilation</li>
+ *     <li>the number of compilations running at the same time is bounded</li>
+ * </ul>
+ * The state of the queue can be read using {@link #getMetrics()}, and is logged in debug.
+ */
+public final class CompileScheduler {
+
+    private static final Logger LOG = OCamlLogger.getSdkInstance("scheduler");
+    private static final long DEBOUNCE_DELAY_MS = 300;
+    private static final long CANCEL_CHECK_INTERVAL_MS = 50;
+
+    private final Map<String, Job> myJobs = new ConcurrentHashMap<>();
+    private final Semaphore mySlots;
+    private final long myDebounceDelay;
+
+    // metrics
+    private final AtomicInteger myQueueDepth = new AtomicInteger();
+    private final AtomicInteger myRunning = new AtomicInteger();
+    private final AtomicLong myCompleted = new AtomicLong();
+    private final AtomicLong mySuperseded = new AtomicLong();
+    private final AtomicLong myCancelled = new AtomicLong();
+    private final AtomicLong myShared = new AtomicLong();
+
+    @SuppressWarnings("unused") // service
+    public CompileScheduler(@NotNull Project project) {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), DEBOUNCE_DELAY_MS);
+    }
+
+    CompileScheduler(int maxRunning, long debounceDelay) {
+        mySlots = new Semaphore(maxRunning);
+        myDebounceDelay = debounceDelay;
+    }
+
+    public static @NotNull CompileScheduler getInstance(@NotNull Project project) {
+        return project.getService(CompileScheduler.class);
+    }
+
+    /**
+     * Must be called from a background thread, the current thread is waiting
+     * for the compilation.
+     * @param path         the path of the file
+     * @param stamp        the modification stamp of the document that will be compiled
+     * @param currentStamp the current modification stamp of the document
+     * @param compile      compile the file
+     * @return the result of the compilation, or null if the file was modified before the compilation
+     * @throws ProcessCanceledException if the annotator was cancelled
+     */
+    public <T> @Nullable T schedule(@NotNull String path, long stamp, @NotNull LongSupplier currentStamp,
+                                    @NotNull Supplier<T> compile) {
+        Job job = new Job(stamp);
+        Job[] previous = new Job[1];
+        Job current = myJobs.compute(path, (k, old) -> {
+            previous[0] = old;
+            return old != null && old.myStamp == stamp && !old.isFailed() ? old : job;
+        });
+        if (current != job) {
+            // the same version of the file is already compiled
+            myShared.incrementAndGet();
+            return await(current);
+        }
+        if (previous[0] != null) previous[0].mySuperseded = true;
+
+        myQueueDepth.incrementAndGet();
+        logMetrics();
+        boolean queued = true;
+        try {
+            waitFor(job, myDebounceDelay);
+            while (!mySlots.tryAcquire(CANCEL_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                checkCanceled(job);
+            }
+            myQueueDepth.decrementAndGet();
+            queued = false;
+            try {
+                // the document may have been modified, without a new request yet
+                if (job.mySuperseded || currentStamp.getAsLong() != stamp) {
+                    return superseded(path, job);
+                }
+                myRunning.incrementAndGet();
+                logMetrics();
+                try {
+                    T result = compile.get();
+                    myCompleted.incrementAndGet();
+                    job.myResult.complete(result);
+                    return result;
+                } finally {
+                    myRunning.decrementAndGet();
+                }
+            } finally {
+                mySlots.release();
+            }
+        } catch (Superseded e) {
+            return superseded(path, job);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw cancelled(job, new ProcessCanceledException(e));
+        } catch (ProcessCanceledException e) {
+            throw cancelled(job, e);
+        } catch (RuntimeException | Error e) {
+            job.myResult.completeExceptionally(e);
+            throw e;
+        } finally {
+            if (queued) myQueueDepth.decrementAndGet();
+            myJobs.remove(path, job);
+            logMetrics();
+        }
+    }
+
+    public @NotNull Metrics getMetrics() {
+        return new Metrics(myQueueDepth.get(), myRunning.get(), myCompleted.get(),
+                mySuperseded.get(), myCancelled.get(), myShared.get());
+    }
+
+    private <T> @Nullable T superseded(@NotNull String path, @NotNull Job job) {
+        LOG.trace("Superseded: " + path);
+        mySuperseded.incrementAndGet();
+        job.myResult.complete(null);
+        return null;
+    }
+
+    private @NotNull ProcessCanceledException cancelled(@NotNull Job job, @NotNull ProcessCanceledException e) {
+        myCancelled.incrementAndGet();
+        job.myResult.completeExceptionally(e);
+        return e;
+    }
+
+    private static void waitFor(@NotNull Job job, long delay) throws InterruptedException {
+        long end = System.currentTimeMillis() + delay;
+        long remaining;
+        while ((remaining = end - System.currentTimeMillis()) > 0) {
+            checkCanceled(job);
+            //noinspection BusyWait
+            Thread.sleep(Math.min(remaining, CANCEL_CHECK_INTERVAL_MS));
+        }
+        checkCanceled(job);
+    }
+
+    private static void checkCanceled(@NotNull Job job) {
+        ProgressManager.checkCanceled();
+        if (job.mySuperseded) throw new Superseded();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> @Nullable T await(@NotNull Job job) {
+        while (true) {
+            try {
+                return (T) job.myResult.get(CANCEL_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                ProgressManager.checkCanceled();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessCanceledException(e);
+            } catch (ExecutionException e) {
+                // the compilation that we were waiting for was cancelled
+                if (e.getCause() instanceof ProcessCanceledException) throw (ProcessCanceledException) e.getCause();
+                throw new ProcessCanceledException(e.getCause());
+            }
+        }
+    }
+
+    private void logMetrics() {
+        if (LOG.isDebugEnabled()) LOG.debug(getMetrics().toString());
+    }
+
+    private static final class Job {
+        private final long myStamp;
+        private final CompletableFuture<Object> myResult = new CompletableFuture<>();
+        private volatile boolean mySuperseded;
+
+        private Job(long stamp) {
+            myStamp = stamp;
+        }
+
+        private boolean isFailed() {
+            return myResult.isCompletedExceptionally();
+        }
+    }
+
+    private static final class Superseded extends RuntimeException {
+        private Superseded() {
+            super(null, null, false, false);
+        }
+    }
+
+    public static final class Metrics {
+        public final int queueDepth; // waiting for the delay, or for a slot
+        public final int running;
+        public final long completed;
+        public final long superseded; // dropped because the file was modified
+        public final long cancelled; // cancelled by the daemon
+        public final long shared; // reused the result of another compilation
+
+        Metrics(int queueDepth, int running, long completed, long superseded, long cancelled, long shared) {
+            this.queueDepth = queueDepth;
+            this.running = running;
+            this.completed = completed;
+            this.superseded = superseded;
+            this.cancelled = cancelled;
+            this.shared = shared;
+        }
+
+        @Override public String toString() {
+            return "Metrics{queueDepth=" + queueDepth + ", running=" + running + ", completed=" + completed +
+                    ", superseded=" + superseded + ", cancelled=" + cancelled + ", shared=" + shared + "}";
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.ocaml.compiler;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.Consumer;
+import com.ocaml.ide.settings.OCamlSettings;
+import com.ocaml.sdk.output.CompilerOutputParser;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Set;
+
+/**
+ * Run the compiler, either in a new process, or on a worker of the
+ * {@link CompilerWorkerPool} if the compile server is enabled in the settings.
+ */
+public final class CompilerRunner {
+
+    private static final CompilerRunner PROCESS_RUNNER = new CompilerRunner(null);
+
+    @Nullable private final CompilerWorkerPool myPool;
+
+    CompilerRunner(@Nullable CompilerWorkerPool pool) {
+        myPool = pool;
+    }
+
+    public static @NotNull CompilerRunner getInstance(@NotNull Project project) {
+        return OCamlSettings.getInstance(project).useCompileServer
+                ? new CompilerRunner(CompilerWorkerPool.getInstance())
+                : PROCESS_RUNNER;
+    }
+
+    /**
+     * @param output  called for each line of the output (stdout and stderr)
+     * @param running the process running the command is added to this set while it's running,
+     *                destroying it is stopping the command.
+     * @return the exit code
+     */
+    public int run(@NotNull GeneralCommandLine cli, @NotNull Consumer<String> output,
+                   @Nullable Set<Process> running) throws ExecutionException, IOException, InterruptedException {
+        if (myPool != null && CompilerWorkerPool.canRun(cli)) {
+            return myPool.run(cli, output, running);
+        }
+
+        Process process = cli.createProcess();
+        if (running != null) running.add(process);
+        try (BufferedReader stdin = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = stdin.readLine()) != null) {
+                output.consume(line);
+            }
+            return process.waitFor();
+        } finally {
+            if (running != null) running.remove(process);
+        }
+    }
+
+    /**
+     * Same as {@link #run(GeneralCommandLine, Consumer, Set)}, but the output is streamed
+     * to the parser, instead of being read line by line. The parser must be completed
+     * using {@link CompilerOutputParser#inputDone()}.
+     */
+    public int run(@NotNull GeneralCommandLine cli, @NotNull CompilerOutputParser parser,
+                   @Nullable Set<Process> running) throws ExecutionException, IOException, InterruptedException {
+        if (myPool != null && CompilerWorkerPool.canRun(cli)) {
+            // the output of a worker is read line by line, to find the end of the command
+            return myPool.run(cli, parser::parseLine, running);
+        }
+
+        Process process = cli.createProcess();
+        if (running != null) running.add(process);
+        try (Reader reader = new InputStreamReader(process.getInputStream(), cli.getCharset())) {
+            parser.parse(reader);
+            return process.waitFor();
+        } finally {
+            if (running != null) running.remove(process);
+        }
+    }
+}
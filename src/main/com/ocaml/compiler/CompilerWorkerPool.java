@@ -0,0 +1,243 @@
+package com.ocaml.compiler;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.execution.process.OSProcessUtil;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.util.Consumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of long-lived compiler workers.
+ * <p>
+ * ocamlc can't be kept alive between two compilations, so a worker is a shell
+ * reading compile jobs on its input, and running them one after the other. This is
+ * removing the cost of creating a process from the IDE for each file (environment,
+ * pipes, threads reading the output), but ocamlc is still started for each file.
+ * <p>
+ * A worker is writing the output of a job, then a line with a marker and the exit code.
+ * Jobs can be sent in batch to a worker, the results are read in the same order.
+ * Workers need a POSIX shell, so they are not available on Windows.
+ */
+public final class CompilerWorkerPool implements Disposable {
+
+    private static final long CANCEL_CHECK_INTERVAL_MS = 50;
+
+    // job: <work directory> <env count> <KEY=VALUE...> <arg count> <args...>, one value per line
+    private static final String WORKER_SCRIPT =
+            "marker=\"$1\"\n" +
+            "while IFS= read -r workdir; do\n" +
+            "  (\n" +
+            "    IFS= read -r count; i=0\n" +
+            "    while [ \"$i\" -lt \"$count\" ]; do IFS= read -r kv; export \"$kv\"; i=$((i+1)); done\n" +
+            "    IFS= read -r count; i=0; set --\n" +
+            "    while [ \"$i\" -lt \"$count\" ]; do IFS= read -r arg; set -- \"$@\" \"$arg\"; i=$((i+1)); done\n" +
+            "    cd \"$workdir\" && \"$@\" </dev/null 2>&1\n" +
+            "  )\n" +
+            "  echo \"$marker $?\"\n" +
+            "done\n";
+
+    private final LinkedBlockingDeque<Worker> myIdleWorkers = new LinkedBlockingDeque<>();
+    private final Semaphore mySlots;
+    private volatile boolean myDisposed;
+
+    public CompilerWorkerPool() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public CompilerWorkerPool(int size) {
+        mySlots = new Semaphore(size);
+    }
+
+    public static @NotNull CompilerWorkerPool getInstance() {
+        return ApplicationManager.getApplication().getService(CompilerWorkerPool.class);
+    }
+
+    /**
+     * @return true if the command can be sent to a worker
+     */
+    public static boolean canRun(@NotNull GeneralCommandLine cli) {
+        if (SystemInfo.isWindows) return false;
+        // values are sent line by line
+        List<String> values = new ArrayList<>(cli.getParametersList().getList());
+        values.add(cli.getExePath());
+        if (cli.getWorkDirectory() != null) values.add(cli.getWorkDirectory().getPath());
+        for (Map.Entry<String, String> entry : cli.getEnvironment().entrySet()) {
+            values.add(entry.getKey());
+            values.add(entry.getValue());
+        }
+        for (String value : values) {
+            if (value.indexOf('\n') != -1 || value.indexOf('\r') != -1) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Run a command on a worker. The worker is added to running while the
+     * command is running: destroying it is stopping the command.
+     * @return the exit code, or -1 if the worker was destroyed
+     */
+    public int run(@NotNull GeneralCommandLine cli, @NotNull Consumer<String> output,
+                   @Nullable Set<Process> running) throws ExecutionException, InterruptedException {
+        return runBatch(List.of(cli), (index, line) -> output.consume(line), running)[0];
+    }
+
+    /**
+     * Send the commands to a worker, and read the results in the same order.
+     * The output of the batch is decoded using the charset of the first command.
+     * @return the exit codes, -1 for the commands that weren't run because the worker was destroyed
+     */
+    public @NotNull int[] runBatch(@NotNull List<GeneralCommandLine> clis, @NotNull BatchOutput output,
+                                   @Nullable Set<Process> running) throws ExecutionException, InterruptedException {
+        int[] exitCodes = new int[clis.size()];
+        Arrays.fill(exitCodes, -1);
+        if (clis.isEmpty()) return exitCodes;
+        // waiting for a worker can be cancelled
+        while (!mySlots.tryAcquire(CANCEL_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+            ProgressManager.checkCanceled();
+        }
+        Worker worker = null;
+        try {
+            worker = acquireWorker(clis.get(0).getCharset());
+            if (running != null) running.add(worker.myProcess);
+            try {
+                for (GeneralCommandLine cli : clis) {
+                    worker.send(cli);
+                }
+                worker.flush();
+                for (int i = 0; i < clis.size(); i++) {
+                    int index = i;
+                    exitCodes[i] = worker.receive(line -> output.onLine(index, line));
+                }
+            } catch (IOException e) {
+                // the worker died, or was destroyed
+                worker.destroy();
+            } finally {
+                if (running != null) running.remove(worker.myProcess);
+            }
+            return exitCodes;
+        } finally {
+            if (worker != null) releaseWorker(worker);
+            mySlots.release();
+        }
+    }
+
+    private @NotNull Worker acquireWorker(@NotNull Charset charset) throws ExecutionException {
+        Iterator<Worker> iterator = myIdleWorkers.iterator();
+        while (iterator.hasNext()) {
+            Worker worker = iterator.next();
+            if (!worker.isAlive()) {
+                if (myIdleWorkers.removeFirstOccurrence(worker)) worker.destroy();
+            } else if (worker.myCharset.equals(charset) && myIdleWorkers.removeFirstOccurrence(worker)) {
+                // not used by another thread
+                return worker;
+            }
+        }
+        return new Worker(charset);
+    }
+
+    private void releaseWorker(@NotNull Worker worker) {
+        if (myDisposed || !worker.isAlive()) {
+            worker.destroy();
+        } else {
+            myIdleWorkers.push(worker);
+        }
+    }
+
+    @Override public void dispose() {
+        myDisposed = true;
+        Worker worker;
+        while ((worker = myIdleWorkers.poll()) != null) {
+            worker.destroy();
+        }
+    }
+
+    public interface BatchOutput {
+        void onLine(int index, @NotNull String line);
+    }
+
+    private static final class Worker {
+        @NotNull private final String myMarker = UUID.randomUUID().toString();
+        @NotNull private final Charset myCharset;
+        @NotNull private final Process myProcess;
+        @NotNull private final Writer myInput;
+        @NotNull private final BufferedReader myOutput;
+
+        Worker(@NotNull Charset charset) throws ExecutionException {
+            GeneralCommandLine cli = new GeneralCommandLine("/bin/sh", "-c", WORKER_SCRIPT, "ocaml-compiler-worker", myMarker);
+            cli.setRedirectErrorStream(true);
+            cli.setCharset(charset);
+            myCharset = cli.getCharset();
+            myProcess = cli.createProcess();
+            myInput = new BufferedWriter(new OutputStreamWriter(myProcess.getOutputStream(), cli.getCharset()));
+            myOutput = new BufferedReader(new InputStreamReader(myProcess.getInputStream(), cli.getCharset()));
+        }
+
+        boolean isAlive() {
+            return myProcess.isAlive();
+        }
+
+        void send(@NotNull GeneralCommandLine cli) throws IOException {
+            File workDirectory = cli.getWorkDirectory();
+            writeLine(workDirectory == null ? "." : workDirectory.getPath());
+            Map<String, String> environment = cli.getEnvironment();
+            writeLine(String.valueOf(environment.size()));
+            for (Map.Entry<String, String> entry : environment.entrySet()) {
+                writeLine(entry.getKey() + "=" + entry.getValue());
+            }
+            List<String> parameters = cli.getParametersList().getList();
+            writeLine(String.valueOf(parameters.size() + 1));
+            writeLine(cli.getExePath());
+            for (String parameter : parameters) {
+                writeLine(parameter);
+            }
+        }
+
+        void flush() throws IOException {
+            myInput.flush();
+        }
+
+        int receive(@NotNull Consumer<String> output) throws IOException {
+            String prefix = myMarker + " ";
+            String line;
+            while ((line = myOutput.readLine()) != null) {
+                if (line.startsWith(prefix)) {
+                    try {
+                        return Integer.parseInt(line.substring(prefix.length()).trim());
+                    } catch (NumberFormatException e) {
+                        return -1;
+                    }
+                }
+                output.consume(line);
+            }
+            throw new IOException("The compiler worker exited.");
+        }
+
+        void destroy() {
+            // the shell, and the compiler it's running
+            OSProcessUtil.killProcessTree(myProcess);
+        }
+
+        private void writeLine(@NotNull String value) throws IOException {
+            myInput.write(value);
+            myInput.write('\n');
+        }
+    }
+}
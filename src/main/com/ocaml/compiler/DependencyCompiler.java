@@ -0,0 +1,196 @@
+package com.ocaml.compiler;
+
+import com.intellij.execution.process.OSProcessUtil;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.util.io.FileUtilRt;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.ocaml.sdk.output.CompilerOutputMessage;
+import com.ocaml.sdk.providers.OCamlSdkProvidersManager;
+import com.ocaml.sdk.providers.utils.CompileWithCmtInfo;
+import com.ocaml.utils.files.OCamlStagingArea;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Compile the dependencies of a file. A dependency is compiled once all of its own
+ * dependencies were compiled, so independent dependencies are compiled concurrently,
+ * on a pool bounded by the number of cores.
+ * <p>
+ * The compilation is stopped when the annotator is cancelled: the dependencies
+ * that are waiting are skipped, and the running processes are destroyed.
+ * <p>
+ * If a {@link Listener} is set, every unit is compiled, even if it's up-to-date,
+ * and the messages of the compiler are sent to the listener.
+ */
+final class DependencyCompiler {
+
+    private static final ExecutorService ourExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor(
+            "OCaml Dependencies Compiler", Runtime.getRuntime().availableProcessors());
+    private static final long CANCEL_CHECK_INTERVAL_MS = 50;
+
+    @NotNull private final String myHomePath;
+    @NotNull private final File myOutputFolder;
+    @NotNull private final CompilationCache myCache;
+    @NotNull private final CompilerRunner myRunner;
+    @NotNull private final Logger myLog;
+    @NotNull private final Set<Process> myProcesses = ConcurrentHashMap.newKeySet();
+    @Nullable private Listener myListener;
+    private boolean myBinaryAnnotations;
+    private volatile boolean myCancelled;
+
+    DependencyCompiler(@NotNull String homePath, @NotNull File outputFolder,
+                       @NotNull CompilationCache cache, @NotNull CompilerRunner runner, @NotNull Logger log) {
+        myHomePath = homePath;
+        myOutputFolder = outputFolder;
+        myCache = cache;
+        myRunner = runner;
+        myLog = log;
+    }
+
+    @NotNull DependencyCompiler withListener(@NotNull Listener listener) {
+        myListener = listener;
+        return this;
+    }
+
+    /**
+     * @param binaryAnnotations generate a .cmt instead of a .annot
+     */
+    @NotNull DependencyCompiler withBinaryAnnotations(boolean binaryAnnotations) {
+        myBinaryAnnotations = binaryAnnotations;
+        return this;
+    }
+
+    /**
+     * @param units the units, sorted in topological order
+     */
+    void compile(@NotNull List<CompilationUnit> units) {
+        Map<CompilationUnit, CompletableFuture<Void>> futures = new HashMap<>();
+        for (CompilationUnit unit : units) {
+            List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+            for (CompilationUnit dependency : unit.myDependencies) {
+                // not found if the dependency is part of a cycle
+                CompletableFuture<Void> future = futures.get(dependency);
+                if (future != null) dependencies.add(future);
+            }
+            CompletableFuture<Void> future = CompletableFuture
+                    .allOf(dependencies.toArray(new CompletableFuture[0]))
+                    // a dependency that failed will be reported by the compiler
+                    .handle((result, throwable) -> null)
+                    .thenRunAsync(() -> compileUnit(unit), ourExecutor);
+            futures.put(unit, future);
+        }
+
+        CompletableFuture<Void> all = CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]));
+        try {
+            while (true) {
+                try {
+                    all.get(CANCEL_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    ProgressManager.checkCanceled();
+                }
+            }
+        } catch (ProcessCanceledException e) {
+            cancel();
+            throw e;
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new ProcessCanceledException(e);
+        } catch (ExecutionException e) {
+            myLog.warn("Compiling the dependencies failed (" + e.getMessage() + ").");
+        }
+    }
+
+    private void cancel() {
+        myCancelled = true;
+        for (Process process : myProcesses) {
+            // a worker of the compile server is a shell running the compiler
+            OSProcessUtil.killProcessTree(process);
+        }
+    }
+
+    private void compileUnit(@NotNull CompilationUnit unit) {
+        if (myCancelled) return;
+        // a dependency is only compiled again if its content, or the content of its dependencies, changed
+        if (myListener == null && myCache.isUpToDate(unit.myRelativePath, unit.myFingerprint)) {
+            myLog.trace("Up-to-date: " + unit.myRelativePath);
+            return;
+        }
+        List<CompilerOutputMessage> messages = myListener == null ? null : new ArrayList<>();
+        // target folder
+        File localTargetFolder = new File(myOutputFolder, unit.myRelativePath).getParentFile();
+        Integer exitCode = null;
+        if (localTargetFolder.exists() || localTargetFolder.mkdirs()) {
+            try {
+                exitCode = compileFile(localTargetFolder, unit, messages);
+            } catch (Exception e) {
+                myLog.warn("Compiling '" + unit.myRelativePath + "' failed (" + e.getMessage() + ").");
+            }
+        }
+        boolean compiled = exitCode != null && exitCode == 0;
+        myCache.update(unit.myRelativePath, compiled && !myCancelled ? unit.myFingerprint : null);
+        if (myListener != null && !myCancelled) {
+            String annotFile = FileUtilRt.getNameWithoutExtension(unit.myRelativePath) + (myBinaryAnnotations ? ".cmt" : ".annot");
+            myListener.onCompiled(unit, messages, new File(myOutputFolder, annotFile), exitCode != null);
+        }
+    }
+
+    /**
+     * @return the exit code of the compiler, or null if the compiler wasn't run
+     */
+    private @Nullable Integer compileFile(@NotNull File targetFolder, @NotNull CompilationUnit unit,
+                                          @Nullable List<CompilerOutputMessage> messages) throws Exception {
+        String fileName = new File(unit.myRelativePath).getName();
+        File tempFile = OCamlStagingArea.stage(targetFolder, fileName, unit.mySource, myLog);
+        if (tempFile == null) return null;
+
+        // compile .mli
+        // get compiler
+        CompileWithCmtInfo compiler = OCamlSdkProvidersManager.INSTANCE.getCompileCommandWithCmt(
+                myHomePath,
+                myOutputFolder.getAbsolutePath(),
+                tempFile.getPath(),
+                targetFolder.getAbsolutePath(),
+                FileUtilRt.getNameWithoutExtension(fileName),
+                myBinaryAnnotations
+        );
+        if (compiler == null) {
+            myLog.error("No cli found for " + myHomePath + " (mli).");
+            return null;
+        }
+        if (myCancelled) return null;
+        if (messages == null) {
+            // the output is ignored, errors will be reported when compiling the file of the annotator
+            return myRunner.run(compiler.cli, line -> {}, myProcesses);
+        }
+        AnnotatorOutputParser parser = new AnnotatorOutputParser(compiler.rootFolderForTempering, myLog);
+        try {
+            return myRunner.run(compiler.cli, parser, myProcesses);
+        } finally {
+            parser.inputDone();
+            messages.addAll(parser.myMessages);
+        }
+    }
+
+    interface Listener {
+        /**
+         * Called from the threads of the compiler, after a unit was compiled.
+         * @param annotFile the .annot (or the .cmt) of the unit, it may not exist
+         * @param compilerRan false if the compiler couldn't be run (ex: the file couldn't be staged),
+         *                    the messages are empty, but the unit wasn't checked
+         */
+        void onCompiled(@NotNull CompilationUnit unit, @NotNull List<CompilerOutputMessage> messages,
+                        @NotNull File annotFile, boolean compilerRan);
+    }
+}
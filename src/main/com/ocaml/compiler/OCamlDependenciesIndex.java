@@ -0,0 +1,69 @@
+package com.ocaml.compiler;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.indexing.*;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.KeyDescriptor;
+import com.ocaml.ide.files.OCamlFileType;
+import com.ocaml.ide.files.OCamlInterfaceFileType;
+import com.ocaml.lang.utils.OCamlResolveDependencies;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index the modules referenced by each file (open, include, Module.element),
+ * as found by {@link OCamlResolveDependencies#findDependencies}.
+ * The keys are the names of the referenced modules, in lower case.
+ */
+public class OCamlDependenciesIndex extends ScalarIndexExtension<String> {
+
+    static final ID<String, Void> NAME = ID.create("ocaml.module.dependencies");
+    private static final int VERSION = 1;
+
+    /**
+     * @return the files referencing the module
+     */
+    public static @NotNull Collection<VirtualFile> getDependents(@NotNull String dependency, @NotNull GlobalSearchScope scope) {
+        return FileBasedIndex.getInstance().getContainingFiles(NAME, dependency, scope);
+    }
+
+    @Override
+    public @NotNull ID<String, Void> getName() {
+        return NAME;
+    }
+
+    @Override
+    public @NotNull DataIndexer<String, Void, FileContent> getIndexer() {
+        return inputData -> {
+            Map<String, Void> map = new HashMap<>();
+            for (String dependency : OCamlResolveDependencies.findDependencies(inputData.getPsiFile())) {
+                map.put(dependency, null);
+            }
+            return map;
+        };
+    }
+
+    @Override
+    public @NotNull KeyDescriptor<String> getKeyDescriptor() {
+        return EnumeratorStringDescriptor.INSTANCE;
+    }
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public @NotNull FileBasedIndex.InputFilter getInputFilter() {
+        return new DefaultFileTypeSpecificInputFilter(OCamlFileType.INSTANCE, OCamlInterfaceFileType.INSTANCE);
+    }
+
+    @Override
+    public boolean dependsOnFileContent() {
+        return true;
+    }
+}
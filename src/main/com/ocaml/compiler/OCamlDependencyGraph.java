@@ -0,0 +1,80 @@
+package com.ocaml.compiler;
+
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.ocaml.lang.utils.OCamlResolveDependencies;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Dependency graph of the OCaml files of the project, read from the {@link OCamlDependenciesIndex}.
+ * The index is updated by the platform when a file changes, so only the modified files
+ * are read again.
+ * <ul>
+ *     <li>forward: the modules referenced by a file</li>
+ *     <li>reverse: the files referencing a module, and the files that must be compiled again
+ *     when a file changed</li>
+ * </ul>
+ * Modules are identified by their file name, without the extension, in lower case.
+ */
+public final class OCamlDependencyGraph {
+
+    @NotNull private final Project myProject;
+
+    public OCamlDependencyGraph(@NotNull Project project) {
+        myProject = project;
+    }
+
+    public static @NotNull OCamlDependencyGraph getInstance(@NotNull Project project) {
+        return project.getService(OCamlDependencyGraph.class);
+    }
+
+    public static @NotNull String getModuleName(@NotNull VirtualFile file) {
+        return file.getNameWithoutExtension().toLowerCase();
+    }
+
+    /**
+     * @return the modules referenced by the file, sorted.
+     * The PSI of the file is used if the indexes are not ready.
+     */
+    public @NotNull Set<String> getDependencies(@NotNull PsiFile file) {
+        VirtualFile virtualFile = file.getVirtualFile();
+        if (virtualFile == null || DumbService.isDumb(myProject)) {
+            return new TreeSet<>(OCamlResolveDependencies.findDependencies(file));
+        }
+        return new TreeSet<>(FileBasedIndex.getInstance().getFileData(OCamlDependenciesIndex.NAME, virtualFile, myProject).keySet());
+    }
+
+    /**
+     * @return the files referencing the module of this file
+     */
+    public @NotNull Collection<VirtualFile> getDependents(@NotNull VirtualFile file, @NotNull GlobalSearchScope scope) {
+        return OCamlDependenciesIndex.getDependents(getModuleName(file), scope);
+    }
+
+    /**
+     * The indexes must be ready.
+     * @return the files that are using, directly or not, the module of this file,
+     * and must be compiled again when the file changed.
+     */
+    public @NotNull Set<VirtualFile> getFilesToRecompile(@NotNull VirtualFile file, @NotNull GlobalSearchScope scope) {
+        Set<VirtualFile> result = new LinkedHashSet<>();
+        Set<String> visited = new HashSet<>();
+        Deque<String> modules = new ArrayDeque<>();
+        modules.add(getModuleName(file));
+        while (!modules.isEmpty()) {
+            String module = modules.poll();
+            if (!visited.add(module)) continue;
+            for (VirtualFile dependent : OCamlDependenciesIndex.getDependents(module, scope)) {
+                if (dependent.equals(file)) continue;
+                if (result.add(dependent)) modules.add(getModuleName(dependent));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,171 @@
+package com.ocaml.compiler;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.problems.Problem;
+import com.intellij.problems.WolfTheProblemSolver;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.search.FileTypeIndex;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.ocaml.ide.files.OCamlFileType;
+import com.ocaml.ide.files.OCamlInterfaceFileType;
+import com.ocaml.ide.highlight.intentions.OCamlIntention;
+import com.ocaml.ide.highlight.intentions.OCamlMessageAdaptor;
+import com.ocaml.ide.insight.OCamlAnnotResultsService;
+import com.ocaml.ide.settings.OCamlSettings;
+import com.ocaml.sdk.output.CompilerOutputMessage;
+import com.ocaml.utils.logs.OCamlLogger;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compile every OCaml file of a scope, in the order given by the dependencies
+ * of the files, using the same commands as the annotator. The files that are
+ * independent are compiled concurrently.
+ * <p>
+ * The results are reported as soon as a file is compiled: the errors are sent to the
+ * {@link WolfTheProblemSolver} (shown in the Problems view, and in the project view),
+ * and the .annot (or the .cmt) of the files without errors are loaded in the
+ * {@link OCamlAnnotResultsService}. Only the problems are reported in the EDT.
+ */
+public final class ProjectCheck {
+
+    private static final Logger LOG = OCamlLogger.getSdkInstance("check");
+
+    @NotNull private final Project myProject;
+    @NotNull private final GlobalSearchScope myScope;
+    @NotNull private final String myHomePath;
+    @NotNull private final File myOutputFolder;
+    @NotNull private final CompilerRunner myRunner;
+
+    public ProjectCheck(@NotNull Project project, @NotNull GlobalSearchScope scope, @NotNull String homePath,
+                        @NotNull File outputFolder, @NotNull CompilerRunner runner) {
+        myProject = project;
+        myScope = scope;
+        myHomePath = homePath;
+        myOutputFolder = outputFolder;
+        myRunner = runner;
+    }
+
+    /**
+     * Must be called from a background thread.
+     * @return the messages of the compiler, for each file that was compiled
+     * @throws com.intellij.openapi.progress.ProcessCanceledException if the indicator was cancelled
+     */
+    public @NotNull Map<VirtualFile, List<CompilerOutputMessage>> run(@NotNull ProgressIndicator indicator) {
+        indicator.setIndeterminate(true);
+        indicator.setText2("Reading files");
+        List<CompilationUnit> units = DumbService.getInstance(myProject).runReadActionInSmartMode(this::createUnits);
+        CompilationUnit.computeFingerprints(units, myHomePath);
+
+        if (!myOutputFolder.exists() && !myOutputFolder.mkdirs()) {
+            LOG.warn("Couldn't create '" + myOutputFolder + "'");
+            return Collections.emptyMap();
+        }
+
+        Map<VirtualFile, List<CompilerOutputMessage>> results = new ConcurrentHashMap<>();
+        AtomicInteger compiled = new AtomicInteger();
+        indicator.setIndeterminate(false);
+        indicator.setFraction(0);
+
+        CompilationCache cache = CompilationCache.getInstance(myProject, myOutputFolder);
+        new DependencyCompiler(myHomePath, myOutputFolder, cache, myRunner, LOG)
+                .withBinaryAnnotations(OCamlSettings.getInstance(myProject).useBinaryAnnotations)
+                .withListener((unit, messages, annotFile, compilerRan) -> {
+                    indicator.setFraction((double) compiled.incrementAndGet() / units.size());
+                    indicator.setText2(unit.myRelativePath);
+                    // the previous problems of the file are kept
+                    if (unit.myFile == null || !compilerRan) return;
+                    results.put(unit.myFile, messages);
+                    report(unit.myFile, messages, annotFile);
+                })
+                .compile(units);
+        cache.save(LOG);
+        return results;
+    }
+
+    /**
+     * Each module is compiled using its .mli, or its .ml if there is no .mli,
+     * then the .ml that have a .mli are compiled.
+     * @return the units, each unit after its dependencies
+     */
+    private @NotNull List<CompilationUnit> createUnits() {
+        ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(myProject);
+        PsiManager psiManager = PsiManager.getInstance(myProject);
+        Map<String, Pair<String, PsiFile>> interfaces = new TreeMap<>();
+        List<Pair<String, PsiFile>> implementations = new ArrayList<>();
+
+        List<VirtualFile> files = new ArrayList<>(FileTypeIndex.getFiles(OCamlInterfaceFileType.INSTANCE, myScope));
+        files.addAll(FileTypeIndex.getFiles(OCamlFileType.INSTANCE, myScope));
+        for (VirtualFile file : files) {
+            VirtualFile root = fileIndex.getContentRootForFile(file);
+            PsiFile psiFile = psiManager.findFile(file);
+            if (root == null || psiFile == null) continue;
+            String relativePath = VfsUtil.getRelativePath(file, root);
+            if (relativePath == null) continue;
+            // the .mli were added first, a module may be defined in more than one folder
+            Pair<String, PsiFile> unit = new Pair<>(relativePath, psiFile);
+            String folder = relativePath.substring(0, relativePath.length() - file.getName().length());
+            if (interfaces.putIfAbsent(folder + OCamlDependencyGraph.getModuleName(file), unit) != null) {
+                implementations.add(unit);
+            }
+        }
+
+        List<CompilationUnit> units = CompilationUnit.createUnits(interfaces.values());
+        List<CompilationUnit> interfaceUnits = new ArrayList<>(units);
+        for (Pair<String, PsiFile> implementation : implementations) {
+            units.add(CompilationUnit.create(implementation.first, implementation.second, interfaceUnits));
+        }
+        return units;
+    }
+
+    /**
+     * Called from the threads of the compiler. The .annot are parsed in the calling thread,
+     * only the problems are reported in the EDT.
+     */
+    private void report(@NotNull VirtualFile file, @NotNull List<CompilerOutputMessage> messages,
+                        @NotNull File annotFile) {
+        WolfTheProblemSolver wolfTheProblemSolver = WolfTheProblemSolver.getInstance(myProject);
+        List<Problem> problems = new ArrayList<>();
+        for (CompilerOutputMessage m : messages) {
+            OCamlIntention message = OCamlMessageAdaptor.temper(m);
+            if (!message.isError()) continue;
+            problems.add(wolfTheProblemSolver.convertToProblem(
+                    file, message.startLine, message.startColumn,
+                    message.content.split("\n")
+            ));
+        }
+
+        OCamlAnnotResultsService annotResultsService = myProject.getService(OCamlAnnotResultsService.class);
+        if (!problems.isEmpty()) {
+            annotResultsService.clearForFile(file.getPath());
+            ApplicationManager.getApplication().invokeLater(
+                    () -> wolfTheProblemSolver.reportProblems(file, problems), myProject.getDisposed());
+            return;
+        }
+
+        // the signatures are not saved: the dependencies of a unit are not the ones of the annotator,
+        // so the fingerprints are not the same as the ones used to load the signatures
+        if (OCamlFileType.isFile(file.getName()) && annotFile.exists()) {
+            if (annotFile.getName().endsWith(".cmt")) {
+                annotResultsService.updateForFileFromCmt(file.getPath(), annotFile, myHomePath, null);
+            } else {
+                annotResultsService.updateForFile(file.getPath(), annotFile, null);
+            }
+        }
+        ApplicationManager.getApplication().invokeLater(
+                () -> wolfTheProblemSolver.clearProblems(file), myProject.getDisposed());
+    }
+}
@@ -0,0 +1,51 @@
+package com.ocaml.ide.actions;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.ocaml.OCamlBundle;
+import com.ocaml.compiler.CompilerRunner;
+import com.ocaml.compiler.ProjectCheck;
+import com.ocaml.ide.highlight.intentions.CompilerOutputAnnotator;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+
+/**
+ * Compile every OCaml file of the project in the background,
+ * and report the errors in the Problems view.
+ */
+public class OCamlCheckProjectAction extends AnAction {
+
+    @Override public void update(@NotNull AnActionEvent e) {
+        e.getPresentation().setEnabledAndVisible(e.getProject() != null);
+    }
+
+    @Override public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) return;
+        new Task.Backgroundable(project, OCamlBundle.message("action.check.project.progress"), true) {
+            @Override public void run(@NotNull ProgressIndicator indicator) {
+                CompilerRunner runner = CompilerRunner.getInstance(project);
+                for (Module module : ModuleManager.getInstance(project).getModules()) {
+                    indicator.checkCanceled();
+                    ModuleRootManager moduleRootManager = ModuleRootManager.getInstance(module);
+                    String homePath = ReadAction.compute(() -> CompilerOutputAnnotator.findHomePath(moduleRootManager, project));
+                    // not an OCaml module
+                    if (homePath == null) continue;
+                    String outputFolder = ReadAction.compute(() -> CompilerOutputAnnotator.findOutputFolder(moduleRootManager, project));
+                    indicator.setText(OCamlBundle.message("action.check.project.module", module.getName()));
+                    new ProjectCheck(project, GlobalSearchScope.moduleScope(module), homePath,
+                            new File(outputFolder), runner).run(indicator);
+                }
+            }
+        }.queue();
+    }
+}
@@ -6,6 +6,7 @@ import com.intellij.lang.annotation.AnnotationHolder;
 import com.intellij.lang.annotation.ExternalAnnotator;
 import com.intellij.lang.annotation.HighlightSeverity;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleUtil;
@@ -20,8 +21,8 @@ import com.intellij.problems.WolfTheProblemSolver;
 import com.intellij.psi.PsiFile;
 import com.ocaml.ide.insight.OCamlAnnotResultsService;
 import com.ocaml.compiler.BasicExternalAnnotator;
+import com.ocaml.compiler.CompileScheduler;
 import com.ocaml.sdk.OCamlSdkType;
-import com.ocaml.sdk.output.CompilerOutputMessage;
 import com.ocaml.utils.OCamlPlatformUtils;
 import com.ocaml.utils.logs.OCamlLogger;
 import org.jetbrains.annotations.NotNull;
@@ -56,14 +57,17 @@ public class CompilerOutputAnnotator extends ExternalAnnotator<CompilerOutputPro
         String homePath = findHomePath(moduleRootManager, project);
         if (homePath == null) return null;
 
-        String outputFolder = OCamlPlatformUtils.findOutputFolder(moduleRootManager, project) + TEMP_COMPILATION_FOLDER;
+        String outputFolder = findOutputFolder(moduleRootManager, project);
 
         LOG.trace("Working on file:" + sourceFile.getPath());
 
         return findCollector(file, editor, homePath, moduleRootManager, outputFolder);
     }
 
-    @Nullable private String findHomePath(ModuleRootManager moduleRootManager, Project project) {
+    /**
+     * @return the home of the OCaml SDK of the module, or null
+     */
+    public static @Nullable String findHomePath(ModuleRootManager moduleRootManager, Project project) {
         if (OCamlPlatformUtils.isJavaPluginAvailable()) {
             Sdk sdk = moduleRootManager.getSdk();
             if (sdk == null || !(sdk.getSdkType() instanceof OCamlSdkType)) return null;
@@ -77,12 +81,44 @@ public class CompilerOutputAnnotator extends ExternalAnnotator<CompilerOutputPro
         }
     }
 
+    private static @Nullable String findHomePath(@NotNull Project project, @NotNull VirtualFile file) {
+        Module module = ModuleUtil.findModuleForFile(file, project);
+        return module == null ? null : findHomePath(ModuleRootManager.getInstance(module), project);
+    }
+
+    /**
+     * @return the folder in which the files of the module are compiled
+     */
+    public static @NotNull String findOutputFolder(ModuleRootManager moduleRootManager, Project project) {
+        return OCamlPlatformUtils.findOutputFolder(moduleRootManager, project) + TEMP_COMPILATION_FOLDER;
+    }
+
     private CompilerOutputProvider.CollectedInfo findCollector(PsiFile file, Editor editor, String homePath, ModuleRootManager moduleRootManager, String outputFolder) {
         return new BasicExternalAnnotator().collectInformation(file, editor, homePath, moduleRootManager, outputFolder);
     }
 
     @Override public @Nullable CompilerOutputProvider.ExternalCompilerResult doAnnotate(@NotNull CompilerOutputProvider.CollectedInfo collectedInfo) {
-        return collectedInfo.myAnnotator.doAnnotate(collectedInfo, LOG);
+        Project project = collectedInfo.mySourcePsiFile.getProject();
+        String path = collectedInfo.mySourcePsiFile.getVirtualFile().getPath();
+        String fingerprint = collectedInfo.getFingerprint();
+
+        // this version of the file was already compiled
+        CompilerResultsCache cache = CompilerResultsCache.getInstance(project);
+        if (fingerprint != null) {
+            CompilerOutputProvider.ExternalCompilerResult result = cache.get(path, fingerprint, collectedInfo.myEditor);
+            if (result != null) {
+                LOG.trace("Restored:" + path);
+                return result;
+            }
+        }
+
+        // compilations of outdated versions of the file are dropped
+        Document document = collectedInfo.myEditor.getDocument();
+        CompilerOutputProvider.ExternalCompilerResult result = CompileScheduler.getInstance(project).schedule(path,
+                collectedInfo.myModificationStamp, document::getModificationStamp,
+                () -> collectedInfo.myAnnotator.doAnnotate(collectedInfo, LOG));
+        if (result != null && fingerprint != null) cache.put(path, fingerprint, result);
+        return result;
     }
 
     @Override
@@ -95,8 +131,8 @@ public class CompilerOutputAnnotator extends ExternalAnnotator<CompilerOutputPro
         WolfTheProblemSolver wolfTheProblemSolver = WolfTheProblemSolver.getInstance(project);
         ArrayList<Problem> problems = new ArrayList<>();
 
-        for (CompilerOutputMessage m : externalCompilerResult.myOutputInfo) {
-            OCamlIntention message = OCamlMessageAdaptor.temper(m);
+        // the messages are only tempered once, even if the result was cached
+        for (OCamlIntention message : externalCompilerResult.getIntentions()) {
 //            System.out.println("for "+message.header.replace("\n", "\\n")+" at "+message.startLine);
 
             // type
@@ -145,9 +181,23 @@ public class CompilerOutputAnnotator extends ExternalAnnotator<CompilerOutputPro
         if (!problems.isEmpty()) {
             wolfTheProblemSolver.reportProblems(virtualFile, problems);
             annotResultsService.clearForFile(virtualFile.getPath());
+        } else if (externalCompilerResult.myAnnotFile == null) {
+            // the result was cached, but the file was compiled again since
+            wolfTheProblemSolver.clearProblems(virtualFile);
+            annotResultsService.clearForFile(virtualFile.getPath());
         } else {
             wolfTheProblemSolver.clearProblems(virtualFile);
-            annotResultsService.updateForFile(virtualFile.getPath(), externalCompilerResult.myAnnotFile);
+            // the signatures are saved with the version of the file, and of its dependencies, that was compiled
+            String key = externalCompilerResult.myFingerprint;
+            if (externalCompilerResult.myAnnotFile.getName().endsWith(".cmt")) {
+                // the signatures are only extracted when they are needed
+                String homePath = findHomePath(project, virtualFile);
+                if (homePath == null) annotResultsService.clearForFile(virtualFile.getPath());
+                else annotResultsService.updateForFileFromCmt(virtualFile.getPath(),
+                        externalCompilerResult.myAnnotFile, homePath, key);
+            } else {
+                annotResultsService.updateForFile(virtualFile.getPath(), externalCompilerResult.myAnnotFile, key);
+            }
         }
     }
 }
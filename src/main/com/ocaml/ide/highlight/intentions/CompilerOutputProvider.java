@@ -4,12 +4,15 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.roots.ModuleRootManager;
 import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.Ref;
 import com.intellij.psi.PsiFile;
 import com.ocaml.sdk.output.CompilerOutputMessage;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -45,6 +48,7 @@ public interface CompilerOutputProvider {
         @Nullable public final PsiFile myTargetMli;
         @NotNull public final Set<Pair<String, PsiFile>> myDependencies;
         @NotNull public final String myOutputFolder;
+        public final long myModificationStamp; // version of the document that is compiled
 
         public CollectedInfo(@NotNull CompilerOutputProvider annotator, @NotNull PsiFile sourcePsiFile,
                              @NotNull Editor editor, @NotNull String homePath,
@@ -58,6 +62,15 @@ public interface CompilerOutputProvider {
             myTargetMli = mli;
             myDependencies = deps;
             myOutputFolder = outputFolder;
+            myModificationStamp = editor.getDocument().getModificationStamp();
+        }
+
+        /**
+         * Called outside of the read action, before {@link #doAnnotate}.
+         * @return hash of the content of the file, and of its dependencies, null if the result can't be cached
+         */
+        public @Nullable String getFingerprint() {
+            return null;
         }
     }
 
@@ -65,11 +78,52 @@ public interface CompilerOutputProvider {
         public final List<CompilerOutputMessage> myOutputInfo;
         public final Editor myEditor;
         public final File myAnnotFile;
+        // the version of the file, and of its dependencies, that was compiled, or null
+        @Nullable public final String myFingerprint;
+        // computed once, shared by the copies of this result
+        @NotNull private final Ref<List<OCamlIntention>> myIntentions;
 
         public ExternalCompilerResult(List<CompilerOutputMessage> outputInfo, Editor editor, File annotFile) {
+            this(outputInfo, editor, annotFile, null);
+        }
+
+        public ExternalCompilerResult(List<CompilerOutputMessage> outputInfo, Editor editor, File annotFile,
+                                      @Nullable String fingerprint) {
+            this(outputInfo, editor, annotFile, fingerprint, new Ref<>());
+        }
+
+        private ExternalCompilerResult(List<CompilerOutputMessage> outputInfo, Editor editor, File annotFile,
+                                       @Nullable String fingerprint, @NotNull Ref<List<OCamlIntention>> intentions) {
             myOutputInfo = outputInfo;
             myEditor = editor;
             myAnnotFile = annotFile;
+            myFingerprint = fingerprint;
+            myIntentions = intentions;
+        }
+
+        /**
+         * @return the messages, tempered using {@link OCamlMessageAdaptor#temper(CompilerOutputMessage)}
+         */
+        public @NotNull List<OCamlIntention> getIntentions() {
+            synchronized (myIntentions) {
+                List<OCamlIntention> intentions = myIntentions.get();
+                if (intentions == null) {
+                    intentions = new ArrayList<>(myOutputInfo.size());
+                    for (CompilerOutputMessage message : myOutputInfo) {
+                        intentions.add(OCamlMessageAdaptor.temper(message));
+                    }
+                    intentions = Collections.unmodifiableList(intentions);
+                    myIntentions.set(intentions);
+                }
+                return intentions;
+            }
+        }
+
+        /**
+         * @return the same result, shown in another editor
+         */
+        public @NotNull ExternalCompilerResult copy(@Nullable Editor editor, @Nullable File annotFile) {
+            return new ExternalCompilerResult(myOutputInfo, editor, annotFile, myFingerprint, myIntentions);
         }
     }
 }
@@ -0,0 +1,107 @@
+package com.ocaml.ide.highlight.intentions;
+
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.project.Project;
+import com.ocaml.sdk.output.CompilerOutputMessage;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Results of the compiler, for each version of a file (the fingerprint of the file, and of its
+ * dependencies). A file that was already compiled, for instance when the file is opened again,
+ * or when a modification was undone, is annotated without being compiled again.
+ * <p>
+ * The least recently used results are removed if there are more than {@link #MAX_ENTRIES}
+ * results, or if the size of the results is above {@link #MAX_SIZE}.
+ */
+public final class CompilerResultsCache {
+
+    static final int MAX_ENTRIES = 256;
+    static final long MAX_SIZE = 8 * 1024 * 1024; // estimated, in bytes
+
+    private final LinkedHashMap<String, Entry> myEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final int myMaxEntries;
+    private final long myMaxSize;
+    private long mySize;
+
+    @SuppressWarnings("unused") // service
+    public CompilerResultsCache(@NotNull Project project) {
+        this(MAX_ENTRIES, MAX_SIZE);
+    }
+
+    CompilerResultsCache(int maxEntries, long maxSize) {
+        myMaxEntries = maxEntries;
+        myMaxSize = maxSize;
+    }
+
+    public static @NotNull CompilerResultsCache getInstance(@NotNull Project project) {
+        return project.getService(CompilerResultsCache.class);
+    }
+
+    /**
+     * @return the result of the compilation of this version of the file, shown in the editor.
+     * The .annot file is only returned if it wasn't modified since, as it's replaced
+     * when another version of the file is compiled.
+     */
+    public synchronized @Nullable CompilerOutputProvider.ExternalCompilerResult get(@NotNull String path,
+                                                                                 @NotNull String fingerprint,
+                                                                                 @NotNull Editor editor) {
+        Entry entry = myEntries.get(key(path, fingerprint));
+        if (entry == null) return null;
+        File annotFile = entry.myResult.myAnnotFile;
+        if (annotFile != null && annotFile.lastModified() != entry.myAnnotLastModified) annotFile = null;
+        return entry.myResult.copy(editor, annotFile);
+    }
+
+    public synchronized void put(@NotNull String path, @NotNull String fingerprint,
+                                 @NotNull CompilerOutputProvider.ExternalCompilerResult result) {
+        Entry entry = new Entry(result);
+        Entry previous = myEntries.put(key(path, fingerprint), entry);
+        if (previous != null) mySize -= previous.mySize;
+        mySize += entry.mySize;
+
+        // least recently used first
+        Iterator<Entry> iterator = myEntries.values().iterator();
+        while ((myEntries.size() > myMaxEntries || mySize > myMaxSize) && iterator.hasNext()) {
+            Entry removed = iterator.next();
+            // keep the result that was just added
+            if (removed == entry) break;
+            iterator.remove();
+            mySize -= removed.mySize;
+        }
+    }
+
+    public synchronized int size() {
+        return myEntries.size();
+    }
+
+    private static @NotNull String key(@NotNull String path, @NotNull String fingerprint) {
+        return path + '\0' + fingerprint;
+    }
+
+    private static final class Entry {
+        @NotNull private final CompilerOutputProvider.ExternalCompilerResult myResult;
+        private final long myAnnotLastModified;
+        private final long mySize;
+
+        private Entry(@NotNull CompilerOutputProvider.ExternalCompilerResult result) {
+            // the editor may be closed, it must not be kept
+            myResult = result.copy(null, result.myAnnotFile);
+            myAnnotLastModified = result.myAnnotFile == null ? 0 : result.myAnnotFile.lastModified();
+            // chars are 2 bytes, plus the objects
+            long size = 64;
+            for (CompilerOutputMessage message : result.myOutputInfo) {
+                size += 128 + 2L * (length(message.content) + length(message.context));
+            }
+            mySize = size;
+        }
+
+        private static int length(@Nullable String s) {
+            return s == null ? 0 : s.length();
+        }
+    }
+}
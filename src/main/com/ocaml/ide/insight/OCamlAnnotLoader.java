@@ -0,0 +1,35 @@
+package com.ocaml.ide.insight;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.FileEditorManagerListener;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.ocaml.compiler.BasicExternalAnnotator;
+import com.ocaml.ide.files.OCamlFileType;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Load the signatures that were saved for a file when the file is opened,
+ * so the types are available before the file is compiled.
+ * The signatures are only loaded if the file, and its dependencies, are the same
+ * as when the file was compiled.
+ * @see OCamlAnnotResultsService#loadForFile(String, String)
+ */
+public class OCamlAnnotLoader implements FileEditorManagerListener {
+
+    @Override public void fileOpened(@NotNull FileEditorManager source, @NotNull VirtualFile file) {
+        // only the .ml have a .annot
+        if (!OCamlFileType.isFile(file.getName())) return;
+        OCamlAnnotResultsService annot = source.getProject().getService(OCamlAnnotResultsService.class);
+        String path = file.getPath();
+        if (annot.getIndex(path) != null) return;
+        PsiFile psiFile = PsiManager.getInstance(source.getProject()).findFile(file);
+        if (psiFile == null) return;
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            String key = BasicExternalAnnotator.computeFingerprint(psiFile);
+            if (key != null) annot.loadForFile(path, key);
+        });
+    }
+}
@@ -1,28 +1,82 @@
 package com.ocaml.ide.insight;
 
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
-import com.intellij.openapi.editor.Editor;
-import com.intellij.openapi.editor.LogicalPosition;
-import com.intellij.openapi.editor.ex.EditorEx;
-import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.ocaml.compiler.CompilationCache;
+import com.ocaml.sdk.annot.OCamlAnnotIndex;
 import com.ocaml.sdk.annot.OCamlAnnotParser;
+import com.ocaml.sdk.annot.OCamlAnnotStore;
+import com.ocaml.sdk.annot.OCamlCmtReader;
 import com.ocaml.sdk.annot.OCamlInferredSignature;
-import com.ocaml.utils.editor.LogicalSection;
+import com.ocaml.utils.logs.OCamlLogger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * The signatures of the files that were compiled, read from their .annot.
+ * <p>
+ * The signatures of a file are replaced at once, and never modified, so the readers
+ * are either using the previous, or the new signatures of a file. The signatures of
+ * the least recently used files are removed if there are more than {@link #MAX_FILES}
+ * files, or if the size of the signatures is above {@link #MAX_SIZE}. They are loaded
+ * again when the file is compiled. The files with a .cmt that wasn't read yet are
+ * counted too.
+ * <p>
+ * The signatures of the last version of each file that was compiled are saved in the system
+ * folder, with the fingerprint of the file and of its dependencies. When a file is opened, they
+ * are loaded if the fingerprint is the same, so there is no need to compile the file.
+ * <p>
+ * If the files are compiled with -bin-annot, the signatures are only extracted from the .cmt
+ * of a file when they are needed, using {@link OCamlCmtReader}.
+ */
 public final class OCamlAnnotResultsService {
-    public final HashMap<String, HashMap<LogicalSection, OCamlInferredSignature>> results = new HashMap<>();
-    public final HashMap<String, HashMap<TextRange, OCamlInferredSignature>> resultsAlt = new HashMap<>();
+
+    static final int MAX_FILES = 128;
+    static final long MAX_SIZE = 32 * 1024 * 1024; // estimated, in bytes
+    private static final String STORE_FOLDER = "ocaml/signatures/";
+    private static final String STORE_EXTENSION = ".sig";
+
+    private static final Logger LOG = OCamlLogger.getSdkInstance("annot");
+
+    // file -> signatures, or .cmt of the file if the signatures were not extracted yet
+    private final LinkedHashMap<String, Entry> myEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final int myMaxFiles;
+    private final long myMaxSize;
+    private long mySize;
+    @Nullable private final File myStoreFolder;
+    // file -> key of the signatures that were saved
+    private final Map<String, String> mySavedKeys = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unused") // service
+    public OCamlAnnotResultsService(@NotNull Project project) {
+        this(MAX_FILES, MAX_SIZE, new File(PathManager.getSystemPath(), STORE_FOLDER + project.getLocationHash()));
+    }
+
+    OCamlAnnotResultsService(int maxFiles, long maxSize) {
+        this(maxFiles, maxSize, null);
+    }
+
+    OCamlAnnotResultsService(int maxFiles, long maxSize, @Nullable File storeFolder) {
+        myMaxFiles = maxFiles;
+        myMaxSize = maxSize;
+        myStoreFolder = storeFolder;
+    }
 
     /**
      * Update the list of annotation of a file, given its associated annotFile
@@ -30,117 +84,296 @@ public final class OCamlAnnotResultsService {
      * @param annotFile the annot file associated with the file
      */
     public void updateForFile(String file, File annotFile) {
-        try (BufferedReader r = new BufferedReader(new FileReader(annotFile))) {
-            // read
-            StringBuilder b = new StringBuilder();
-            String s;
-            while ((s = r.readLine()) != null) b.append(s).append('\n');
-            // parse
-            OCamlAnnotParser parser = new OCamlAnnotParser(b.toString());
-            results.put(file, parser.getIndexedByPosition());
-            resultsAlt.put(file, new HashMap<>()); // reset and create
+        updateForFile(file, annotFile, null);
+    }
+
+    /**
+     * Update the list of annotation of a file, given its associated annotFile.
+     * The signatures are saved in the background, to be loaded after a restart.
+     * @param file      the file associated with the annotFile
+     * @param annotFile the annot file associated with the file
+     * @param key       the fingerprint of the version of the file that was compiled,
+     *                  the signatures are not saved if null
+     */
+    public void updateForFile(String file, File annotFile, @Nullable String key) {
+        List<OCamlInferredSignature> signatures;
+        try {
+            signatures = OCamlAnnotParser.fromFile(annotFile).get();
         } catch (IOException | IllegalStateException e) {
-            // todo: log
             // may occur if the file is removed because a new one will be generated
-            System.out.println("warn:" + e);
+            LOG.debug("Couldn't read '" + annotFile + "' (" + e.getMessage() + ").");
+            return;
+        }
+        put(file, new Entry(new OCamlAnnotIndex(signatures)));
+        if (key != null && myStoreFolder != null) {
+            ApplicationManager.getApplication().executeOnPooledThread(() -> save(file, key, signatures));
         }
     }
 
+    /**
+     * Same as {@link #updateForFile(String, File, String)}, but the signatures are only
+     * extracted from the .cmt when they are requested.
+     * @param file     the file associated with the cmtFile
+     * @param cmtFile  the .cmt associated with the file
+     * @param homePath the home of the SDK that generated the .cmt
+     * @param key      the fingerprint of the version of the file that was compiled,
+     *                 the signatures are not saved if null
+     */
+    public void updateForFileFromCmt(String file, File cmtFile, String homePath, @Nullable String key) {
+        put(file, new Entry(new PendingCmt(file, cmtFile, homePath, key)));
+    }
+
+    /**
+     * Load the signatures that were saved for this version of the file, if the file
+     * has no signatures. May be called from any thread, but not from the EDT.
+     * @param file the path to the file
+     * @param key  the fingerprint of the file, and of its dependencies
+     * @return true if the signatures were loaded
+     */
+    public boolean loadForFile(@NotNull String file, @NotNull String key) {
+        if (myStoreFolder == null || hasEntry(file)) return false;
+        List<OCamlInferredSignature> signatures;
+        try {
+            signatures = OCamlAnnotStore.load(getStoreFile(file), key);
+        } catch (IOException e) {
+            LOG.debug("Couldn't load the signatures of '" + file + "' (" + e.getMessage() + ").");
+            return false;
+        }
+        if (signatures == null) return false;
+        mySavedKeys.put(file, key);
+        synchronized (this) {
+            // the file was compiled in the meantime
+            if (myEntries.containsKey(file)) return false;
+            put(file, new Entry(new OCamlAnnotIndex(signatures)));
+        }
+        return true;
+    }
+
+    private void save(@NotNull String file, @NotNull String key, @NotNull List<OCamlInferredSignature> signatures) {
+        // ex: the result was restored by the annotator
+        if (key.equals(mySavedKeys.put(file, key))) return;
+        try {
+            OCamlAnnotStore.save(getStoreFile(file), key, signatures);
+        } catch (IOException e) {
+            mySavedKeys.remove(file);
+            LOG.warn("Couldn't save the signatures of '" + file + "' (" + e.getMessage() + ").");
+        }
+    }
+
+    // one file per source file, only the last version is kept
+    private @NotNull File getStoreFile(@NotNull String file) {
+        assert myStoreFolder != null;
+        return new File(myStoreFolder, CompilationCache.fingerprint(file) + STORE_EXTENSION);
+    }
+
+    private synchronized void put(@NotNull String file, @NotNull Entry entry) {
+        Entry previous = myEntries.put(file, entry);
+        if (previous != null) mySize -= previous.mySize;
+        mySize += entry.mySize;
+
+        // least recently used first
+        Iterator<Entry> iterator = myEntries.values().iterator();
+        while ((myEntries.size() > myMaxFiles || mySize > myMaxSize) && iterator.hasNext()) {
+            Entry removed = iterator.next();
+            // keep the file that was just compiled
+            if (removed == entry) break;
+            iterator.remove();
+            mySize -= removed.mySize;
+        }
+    }
+
+    private synchronized boolean hasEntry(@NotNull String file) {
+        return myEntries.containsKey(file);
+    }
+
+    // doesn't change the order of the entries
+    private synchronized @Nullable PendingCmt getPending(@NotNull String file) {
+        Entry entry = myEntries.containsKey(file) ? myEntries.get(file) : null;
+        return entry == null ? null : entry.myPending;
+    }
+
     /**
      * Clear results for a file, for example, if they are assumed
      * to be invalid.
      * @param path the file that was provided in updateFile
      */
-    public void clearForFile(String path) {
-        results.remove(path);
+    public synchronized void clearForFile(String path) {
+        Entry removed = myEntries.remove(path);
+        if (removed != null) mySize -= removed.mySize;
+    }
+
+    /**
+     * @return the signatures of the file, or null if the file wasn't compiled,
+     * or if its signatures were removed
+     */
+    public synchronized @Nullable OCamlAnnotIndex getIndex(@NotNull String path) {
+        Entry entry = myEntries.get(path);
+        return entry == null ? null : entry.myIndex;
+    }
+
+    synchronized int size() {
+        return myEntries.size();
+    }
+
+    /**
+     * Same as {@link #getIndex(String)}, but the signatures of a .cmt are extracted if needed.
+     * They are always extracted in the background, and null is returned until they are: the callers
+     * are in a read action, and ocamlcmt mustn't be run while holding it.
+     */
+    @Nullable OCamlAnnotIndex getOrLoadIndex(@NotNull String path) {
+        Entry entry;
+        synchronized (this) {
+            entry = myEntries.get(path);
+        }
+        if (entry == null) return null;
+        if (entry.myIndex != null) return entry.myIndex;
+        PendingCmt pending = entry.myPending;
+        assert pending != null;
+        // the .cmt is only read once, even if the signatures are requested many times
+        if (pending.myScheduled.compareAndSet(false, true)) {
+            ApplicationManager.getApplication().executeOnPooledThread(() -> loadFromCmt(path, pending));
+        }
+        return null;
+    }
+
+    private void loadFromCmt(@NotNull String path, @NotNull PendingCmt pending) {
+        if (getPending(path) != pending) return;
+        List<OCamlInferredSignature> signatures = OCamlCmtReader.read(pending.myHomePath, pending.myCmtFile);
+        synchronized (this) {
+            // the file was compiled again, or its entry was removed, in the meantime
+            if (getPending(path) != pending) return;
+            if (signatures == null) {
+                clearForFile(path);
+                return;
+            }
+            put(path, new Entry(new OCamlAnnotIndex(signatures)));
+        }
+        // the signatures are not saved with the key if the file was compiled again since
+        if (pending.myKey != null && myStoreFolder != null
+                && pending.myCmtFile.lastModified() == pending.myLastModified) {
+            save(path, pending.myKey, signatures);
+        }
     }
 
-    // we cannot use getLogicalPosition, so we can't use the first HashMap
     @Deprecated(forRemoval = true)
     public @Nullable OCamlInferredSignature findAnnotationFor(@NotNull PsiElement element) {
         return findAnnotationFor(element, true);
     }
 
-    // we cannot use getLogicalPosition, so we can't use the first HashMap
+    /**
+     * Look for the signature of the section of the element. The sections of the compiler
+     * may not be the same as the ones of the PSI, for instance, depending on the version,
+     * the parentheses around an expression are a part of its section or not.
+     * @param element an element of a file that was compiled
+     * @param shouldLoadIfNeeded if false, only a signature of the same section is returned,
+     *                           otherwise, a signature with a section that is only different by
+     *                           some parentheses or spaces is returned too.
+     */
     public @Nullable OCamlInferredSignature findAnnotationFor(@NotNull PsiElement element, boolean shouldLoadIfNeeded) {
-        // else, use the "normal" way
-        String path = element.getContainingFile().getVirtualFile().getPath();
-        HashMap<TextRange, OCamlInferredSignature> rangeToSignature = resultsAlt.get(path);
-        // should not occur
-        if (rangeToSignature == null) return null;
-        // return annotation
-        OCamlInferredSignature signature = rangeToSignature.get(element.getTextRange());
-        // may load
-        if (signature == null && shouldLoadIfNeeded) {
-            signature = getInfoForElement(element);
+        PsiFile file = element.getContainingFile();
+        VirtualFile virtualFile = file.getVirtualFile();
+        if (virtualFile == null) return null;
+        OCamlAnnotIndex index = getOrLoadIndex(virtualFile.getPath());
+        // compiled?
+        if (index == null) return null;
+        Document document = file.getViewProvider().getDocument();
+        if (document == null) return null;
+
+        TextRange range = element.getTextRange();
+        // not committed
+        if (range.getEndOffset() > document.getTextLength()) return null;
+        OCamlInferredSignature signature = index.findExact(toPosition(document, range.getStartOffset()),
+                toPosition(document, range.getEndOffset()));
+        if (signature != null || !shouldLoadIfNeeded) return signature;
+
+        // remove the parentheses and the spaces around the element
+        CharSequence text = document.getImmutableCharSequence();
+        int start = range.getStartOffset();
+        int end = range.getEndOffset();
+        while (start < end && isSkipped(text.charAt(start))) start++;
+        while (start < end && isSkipped(text.charAt(end - 1))) end--;
+        if (start == end) {
+            // ex: "()"
+            start = range.getStartOffset();
+            end = range.getEndOffset();
         }
-        return signature;
-    }
 
-    private @Nullable LogicalSection getLogicalPosition(@NotNull PsiElement element) {
-        Editor fileEditor = FileEditorManager.getInstance(element.getProject()).getSelectedTextEditor();
-        if (!(fileEditor instanceof EditorEx)) return null;
-        EditorEx editor = (EditorEx) fileEditor;
-        int textOffset = element.getTextOffset();
-        LogicalPosition start = editor.offsetToLogicalPosition(textOffset);
-        LogicalPosition end = editor.offsetToLogicalPosition(textOffset + element.getTextLength());
-        return new LogicalSection(start, end);
+        signature = index.findInnermost(toPosition(document, start), toPosition(document, end));
+        if (signature == null) return null;
+        // the section of the signature must only have parentheses and spaces around the element
+        int signatureStart = toOffset(document, signature.position.getStartLine(), signature.position.getStartColumn());
+        int signatureEnd = toOffset(document, signature.position.getEndLine(), signature.position.getEndColumn());
+        if (signatureStart < 0 || signatureEnd < 0) return null;
+        if (!onlySkipped(text, signatureStart, start) || !onlySkipped(text, end, signatureEnd)) return null;
+        return signature;
     }
 
     public boolean hasInfoForElement(@NotNull PsiElement element) {
         return findAnnotationFor(element, true) != null;
     }
 
-    private @Nullable OCamlInferredSignature getInfoForElement(@NotNull PsiElement element) {
-        String path = element.getContainingFile().getVirtualFile().getPath();
-        HashMap<LogicalSection, OCamlInferredSignature> rangeToSignature = results.get(path);
+    // lines are starting from 1 in the .annot
+    private static long toPosition(@NotNull Document document, int offset) {
+        int line = document.getLineNumber(offset);
+        return OCamlAnnotIndex.pack(line + 1, offset - document.getLineStartOffset(line));
+    }
 
-        // compiled?
-        if (rangeToSignature == null) return null;
-
-        // get logical position
-        LogicalSection logicalSection;
-
-        // Tricks to get the logicalSection when we can't ask the editor
-        // todo: the class OCamlParameterInfo can provide an editor
-        //  should we do something or the code bellow is enough?
-        if (!ApplicationManager.getApplication().isDispatchThread()) {
-            Document document = element.getContainingFile().getViewProvider().getDocument();
-            int textOffset = element.getTextOffset();
-            int textOffsetEnd = textOffset + element.getTextLength();
-            int lineStart = document.getLineNumber(textOffset);
-            int lineEnd = document.getLineNumber(textOffsetEnd);
-            int offsetStart = document.getLineStartOffset(lineStart);
-
-            int startColumn = textOffset - offsetStart;
-            String[] lines = element.getText().split("\n");
-            int endColumn;
-            if (lines.length <= 1) { // one line
-                endColumn = startColumn + element.getTextLength();
-            } else {
-                endColumn = lines[lines.length - 1].length();
-            }
+    private static int toOffset(@NotNull Document document, int line, int column) {
+        if (line < 1 || line > document.getLineCount()) return -1;
+        int offset = document.getLineStartOffset(line - 1) + column;
+        return offset > document.getLineEndOffset(line - 1) ? -1 : offset;
+    }
 
-            logicalSection = new LogicalSection(
-                    lineStart + 1, startColumn,
-                    lineEnd + 1, endColumn);
-        } else {
-            // get logical position
-            logicalSection = getLogicalPosition(element);
+    private static boolean onlySkipped(@NotNull CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isSkipped(text.charAt(i))) return false;
         }
+        return true;
+    }
 
-//        System.out.println("  "+logicalSection);
-        if (logicalSection == null) return null;
+    private static boolean isSkipped(char c) {
+        return c == '(' || c == ')' || Character.isWhitespace(c);
+    }
 
-        // get signature
-        OCamlInferredSignature signature = rangeToSignature.get(logicalSection);
-        if (signature == null) return null;
+    private static final class Entry {
+        @Nullable private final OCamlAnnotIndex myIndex;
+        @Nullable private final PendingCmt myPending;
+        private final long mySize; // estimated, in bytes
 
-        // re-index by range, properly this time
-        HashMap<TextRange, OCamlInferredSignature> ranges = resultsAlt.get(path);
-        signature.range = element.getTextRange();
-        ranges.put(element.getTextRange(), signature);
-        resultsAlt.put(path, ranges);
-        return signature;
+        private Entry(@NotNull OCamlAnnotIndex index) {
+            myIndex = index;
+            myPending = null;
+            mySize = index.getEstimatedSize();
+        }
+
+        private Entry(@NotNull PendingCmt pending) {
+            myIndex = null;
+            myPending = pending;
+            mySize = pending.getEstimatedSize();
+        }
+    }
+
+    // only the paths and the key are kept, not the content of the file
+    private static final class PendingCmt {
+        @NotNull private final String myFile;
+        @NotNull private final File myCmtFile;
+        @NotNull private final String myHomePath;
+        @Nullable private final String myKey;
+        private final long myLastModified;
+        @NotNull private final AtomicBoolean myScheduled = new AtomicBoolean();
+
+        private PendingCmt(@NotNull String file, @NotNull File cmtFile, @NotNull String homePath, @Nullable String key) {
+            myFile = file;
+            myCmtFile = cmtFile;
+            myHomePath = homePath;
+            myKey = key;
+            myLastModified = cmtFile.lastModified();
+        }
+
+        private long getEstimatedSize() {
+            // chars are 2 bytes, plus the objects
+            return 128 + 2L * (myFile.length() + myCmtFile.getPath().length() + myHomePath.length()
+                    + (myKey == null ? 0 : myKey.length()));
+        }
     }
 }
@@ -26,11 +26,25 @@ public class OCamlSettings implements PersistentStateComponent<OCamlSettings> {
      */
     public String outputFolderName = "out/";
 
+    /**
+     * Send the files compiled by the annotator to long-lived workers,
+     * instead of creating a process for each file (not available on Windows).
+     */
+    public boolean useCompileServer = false;
+
+    /**
+     * Generate a .cmt instead of a .annot when compiling. The types are
+     * extracted from the .cmt using ocamlcmt, when they are needed.
+     */
+    public boolean useBinaryAnnotations = false;
+
     @Override public @Nullable OCamlSettings getState() {
         return this;
     }
 
     @Override public void loadState(@NotNull OCamlSettings state) {
         outputFolderName = state.outputFolderName;
+        useCompileServer = state.useCompileServer;
+        useBinaryAnnotations = state.useBinaryAnnotations;
     }
 }
\ No newline at end of file
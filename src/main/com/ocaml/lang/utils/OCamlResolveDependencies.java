@@ -1,6 +1,9 @@
 package com.ocaml.lang.utils;
 
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.roots.ProjectRootModificationTracker;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -8,17 +11,24 @@ import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import com.intellij.psi.PsiWhiteSpace;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.GlobalSearchScopesCore;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
+import com.ocaml.compiler.OCamlDependencyGraph;
 import com.ocaml.ide.files.OCamlFileType;
 import com.ocaml.ide.files.OCamlInterfaceFileType;
+import com.or.ide.search.index.FileModuleIndex;
 import com.or.lang.OCamlTypes;
+import com.or.lang.core.ORUtil;
 import com.or.lang.core.psi.PsiInclude;
 import com.or.lang.core.psi.PsiOpen;
 import com.or.lang.core.psi.PsiUpperSymbol;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
 
 public class OCamlResolveDependencies {
 
@@ -57,14 +67,99 @@ public class OCamlResolveDependencies {
     }
 
     /**
+     * The modules used by a file are read from the {@link OCamlDependencyGraph}, their files are found
+     * using the FileModuleIndex (module name to file), and the
+     * transitive closure is cached until the PSI or the roots are modified.
+     * A file is visited once, so cycles are ignored.
      * @param file              the file for which we need the dependencies
      * @param moduleRootManager used to get the content roots
-     * @return a set of paths and the psiFile, that are the dependencies of the given file
+     * @return a set of paths and the psiFile, that are the dependencies of the given file.
+     * A dependency is always after its own dependencies.
      */
     public static Set<Pair<String, PsiFile>> resolveForFile(PsiFile file, ModuleRootManager moduleRootManager) {
+        Project project = file.getProject();
+        // the index can't be used while indexing
+        if (DumbService.isDumb(project)) return resolveForFileWithoutIndex(file, moduleRootManager);
+
+        return CachedValuesManager.getCachedValue(file, () -> CachedValueProvider.Result.create(
+                Collections.unmodifiableSet(resolveTransitiveDependencies(file, moduleRootManager)),
+                PsiModificationTracker.MODIFICATION_COUNT, ProjectRootModificationTracker.getInstance(project)
+        ));
+    }
+
+    private static @NotNull Set<Pair<String, PsiFile>> resolveTransitiveDependencies(@NotNull PsiFile file, @NotNull ModuleRootManager moduleRootManager) {
+        VirtualFile[] roots = moduleRootManager.getContentRoots();
+        Set<Pair<String, PsiFile>> psiDeps = new LinkedHashSet<>();
+        if (roots.length == 0) return psiDeps;
+
+        // may not be in a source folder
+        GlobalSearchScope scope = GlobalSearchScopesCore.directoriesScope(file.getProject(), true, roots);
+        Set<String> visited = new HashSet<>();
+        visited.add(file.getVirtualFile().getNameWithoutExtension().toLowerCase());
+        collectDependencies(file, roots, scope, visited, psiDeps);
+        return psiDeps;
+    }
+
+    private static void collectDependencies(@NotNull PsiFile file, @NotNull VirtualFile[] roots, @NotNull GlobalSearchScope scope,
+                                            @NotNull Set<String> visited, @NotNull Set<Pair<String, PsiFile>> psiDeps) {
+        PsiManager psiManager = PsiManager.getInstance(file.getProject());
+        OCamlDependencyGraph dependencyGraph = OCamlDependencyGraph.getInstance(file.getProject());
+        for (String dependency : dependencyGraph.getDependencies(file)) {
+            if (!visited.add(dependency)) continue;
+            for (VirtualFile dependencyFile : findDependencyFiles(dependency, scope)) {
+                PsiFile psiFile = psiManager.findFile(dependencyFile);
+                String relativePath = getRelativePath(dependencyFile, roots);
+                if (psiFile == null || relativePath == null) continue;
+                // its dependencies are compiled first
+                collectDependencies(psiFile, roots, scope, visited, psiDeps);
+                psiDeps.add(new Pair<>(relativePath, psiFile));
+            }
+        }
+    }
+
+    /**
+     * @return the .mli of the module, or the .ml if there is no .mli in the same folder
+     */
+    private static @NotNull List<VirtualFile> findDependencyFiles(@NotNull String dependency, @NotNull GlobalSearchScope scope) {
+        // file names are in lower case, modules are capitalized
+        String moduleName = ORUtil.fileNameToModuleName(dependency);
+        List<VirtualFile> files = new ArrayList<>();
+        for (VirtualFile f : FileModuleIndex.getContainingFiles(moduleName, scope)) {
+            // is in the list of dependencies?
+            if (!dependency.equals(f.getNameWithoutExtension())) continue;
+            if (OCamlInterfaceFileType.isFile(f.getPath())) {
+                files.add(f);
+            } else if (OCamlFileType.isFile(f.getPath())) {
+                // we are adding the interface instead
+                VirtualFile parent = f.getParent();
+                if (parent == null || parent.findChild(OCamlInterfaceFileType.fromSource(f.getName())) == null) {
+                    files.add(f);
+                }
+            }
+        }
+        files.sort(Comparator.comparing(VirtualFile::getPath));
+        return files;
+    }
+
+    private static @Nullable String getRelativePath(@NotNull VirtualFile f, @NotNull VirtualFile[] roots) {
+        for (VirtualFile root : roots) {
+            // fix 98: using the parent of the root
+            if (VfsUtil.isAncestor(root, f, false)) return VfsUtil.getRelativePath(f, root);
+        }
+        return null;
+    }
+
+    /**
+     * Look for the dependencies in every content root, used while the indexes are not ready.
+     */
+    private static Set<Pair<String, PsiFile>> resolveForFileWithoutIndex(PsiFile file, ModuleRootManager moduleRootManager) {
+        return resolveForFileWithoutIndex(file, moduleRootManager, new HashSet<>());
+    }
+
+    private static Set<Pair<String, PsiFile>> resolveForFileWithoutIndex(PsiFile file, ModuleRootManager moduleRootManager, Set<PsiFile> visited) {
         Set<String> dependencies = findDependencies(file);
         // small optimisation
-        if (dependencies.isEmpty()) return Set.of();
+        if (dependencies.isEmpty() || !visited.add(file)) return Set.of();
 
         Set<Pair<String, VirtualFile>> deps = new HashSet<>();
         // look into every source folder
@@ -75,15 +170,12 @@ public class OCamlResolveDependencies {
             exploreFolder(root, root, potential, deps, dependencies);
         }
         deps.addAll(potential.values());
-        // there is no dependency graph
-        // they should be sorted by dependency
-        // is it needed trough? (we are using -c)
-        Set<Pair<String, PsiFile>> psiDeps = new HashSet<>();
+        Set<Pair<String, PsiFile>> psiDeps = new LinkedHashSet<>();
         for (Pair<String, VirtualFile> dep : deps) {
             PsiFile psiFile = PsiManager.getInstance(file.getProject()).findFile(dep.second);
             if (psiFile == null) continue;
+            psiDeps.addAll(resolveForFileWithoutIndex(psiFile, moduleRootManager, visited));
             psiDeps.add(new Pair<>(dep.first, psiFile));
-            psiDeps.addAll(resolveForFile(psiFile, moduleRootManager));
         }
         return psiDeps;
     }
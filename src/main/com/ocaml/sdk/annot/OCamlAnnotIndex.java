@@ -0,0 +1,138 @@
+package com.ocaml.sdk.annot;
+
+import com.intellij.build.FilePosition;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The signatures of a .annot, sorted by position, to look for the signatures
+ * covering a position, or inside a section of the file.
+ * <p>
+ * A position is a line (starting from 1) and a column, as given by the compiler, packed
+ * in a long using {@link #pack(int, int)}. The sections of the compiler are nested
+ * (or disjoint), so each signature knows the innermost signature containing it, and
+ * looking for the innermost signature covering a position only walks up from the
+ * last signature starting before the position.
+ */
+public final class OCamlAnnotIndex {
+
+    public static final OCamlAnnotIndex EMPTY = new OCamlAnnotIndex(List.of());
+
+    // sorted by start, then by end (the larger first)
+    private final long[] myStarts;
+    private final long[] myEnds;
+    private final int[] myParents;
+    private final OCamlInferredSignature[] mySignatures;
+    private final long mySize;
+
+    public OCamlAnnotIndex(@NotNull List<OCamlInferredSignature> signatures) {
+        int size = signatures.size();
+        Integer[] order = new Integer[size];
+        long[] starts = new long[size];
+        long[] ends = new long[size];
+        for (int i = 0; i < size; i++) {
+            FilePosition position = signatures.get(i).position;
+            order[i] = i;
+            starts[i] = pack(position.getStartLine(), position.getStartColumn());
+            ends[i] = pack(position.getEndLine(), position.getEndColumn());
+        }
+        // stable: if a section has many signatures, the last one is returned by findExact
+        Arrays.sort(order, Comparator.<Integer>comparingLong(i -> starts[i])
+                .thenComparingLong(i -> -ends[i]));
+
+        myStarts = new long[size];
+        myEnds = new long[size];
+        myParents = new int[size];
+        mySignatures = new OCamlInferredSignature[size];
+        // estimated, in bytes: the arrays, and the signatures (chars are 2 bytes)
+        long estimatedSize = 64 + 24L * size;
+        int[] stack = new int[size];
+        int top = -1;
+        for (int i = 0; i < size; i++) {
+            myStarts[i] = starts[order[i]];
+            myEnds[i] = ends[order[i]];
+            mySignatures[i] = signatures.get(order[i]);
+            estimatedSize += 96 + 2L * (mySignatures[i].type.length()
+                    + (mySignatures[i].name == null ? 0 : mySignatures[i].name.length()));
+            // the sections that are ending before this one are not containing it
+            while (top >= 0 && myEnds[stack[top]] < myEnds[i]) top--;
+            myParents[i] = top >= 0 ? stack[top] : -1;
+            stack[++top] = i;
+        }
+        mySize = estimatedSize;
+    }
+
+    public static long pack(int line, int column) {
+        return ((long) line << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    public int size() {
+        return mySignatures.length;
+    }
+
+    /**
+     * @return the estimated memory used by the index, in bytes
+     */
+    public long getEstimatedSize() {
+        return mySize;
+    }
+
+    /**
+     * @return the last signature of the section starting and ending at the given positions
+     */
+    public @Nullable OCamlInferredSignature findExact(long start, long end) {
+        OCamlInferredSignature found = null;
+        for (int i = lowerBound(start); i < myStarts.length && myStarts[i] == start; i++) {
+            if (myEnds[i] == end) found = mySignatures[i];
+            else if (myEnds[i] < end) break;
+        }
+        return found;
+    }
+
+    /**
+     * @return the signature of the smallest section containing the whole section
+     * from start to end (included), or null if there is none
+     */
+    public @Nullable OCamlInferredSignature findInnermost(long start, long end) {
+        // the last section starting before start
+        int i = lowerBound(start + 1) - 1;
+        while (i >= 0 && myEnds[i] < end) i = myParents[i];
+        return i < 0 ? null : mySignatures[i];
+    }
+
+    /**
+     * @return the signature of the smallest section containing the position
+     */
+    public @Nullable OCamlInferredSignature findInnermost(long position) {
+        return findInnermost(position, position);
+    }
+
+    /**
+     * @return the signatures of the sections inside the section from start to end (included),
+     * sorted by position
+     */
+    public @NotNull List<OCamlInferredSignature> findInRange(long start, long end) {
+        List<OCamlInferredSignature> signatures = new ArrayList<>();
+        for (int i = lowerBound(start); i < myStarts.length && myStarts[i] <= end; i++) {
+            if (myEnds[i] <= end) signatures.add(mySignatures[i]);
+        }
+        return signatures;
+    }
+
+    // index of the first section starting at position, or after
+    private int lowerBound(long position) {
+        int low = 0;
+        int high = myStarts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (myStarts[mid] < position) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+}
@@ -2,19 +2,30 @@ package com.ocaml.sdk.annot;
 
 import com.intellij.build.FilePosition;
 import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.util.text.StringUtil;
 import com.ocaml.utils.editor.LogicalSection;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+/**
+ * Parse a .annot, one signature at a time. The input is read line by line, without
+ * creating the lines, and the positions are read without using regexes.
+ * <p>
+ * The format of a position is {@code "file" line bol cnum "file" line bol cnum},
+ * with bol the offset of the start of the line, and cnum the offset of the position.
+ */
 public class OCamlAnnotParser {
-    private static final Pattern FILE_POSITION = Pattern.compile("\"([^\"]+)\" (\\d+) (\\d+) (\\d+) \"[^\"]+\" (\\d+) (\\d+) (\\d+).*");
     // tested: same values for 4.05 to 4.14
     private static final String TYPE_START = "type(";
     private static final String IDENT_START = "ident(";
@@ -25,31 +36,64 @@ public class OCamlAnnotParser {
     // a variable can't be named like this
     private static final String INVALID_CHARACTER = "*sth*";
 
-    private final String[] lines;
-    private int pos;
-
-    public OCamlAnnotParser(@NotNull String input) {
-        this.lines = input.isEmpty() ? new String[0] : input.split("\n");
+    private final CharSequence input;
+    private int pos; // start of the next line
+    private int previousPos; // start of the current line, to read it again
+    // the current line, without the line separator
+    private int lineStart;
+    private int lineEnd;
+    private int column; // while reading a position
+    // types on many lines
+    private final StringBuilder buffer = new StringBuilder();
+    // the file is the same for almost every signature
+    private String fileName;
+    private File file;
+
+    public OCamlAnnotParser(@NotNull CharSequence input) {
+        this.input = input;
         this.pos = 0;
     }
 
+    /**
+     * The file is decoded in a buffer of the size of the file, without
+     * creating a String.
+     */
+    public static @NotNull OCamlAnnotParser fromFile(@NotNull File annotFile) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(annotFile), StandardCharsets.UTF_8)) {
+            // there are fewer chars than bytes in UTF-8
+            CharBuffer buffer = CharBuffer.allocate((int) Math.min(Integer.MAX_VALUE - 8, annotFile.length() + 1));
+            while (buffer.hasRemaining() && reader.read(buffer) != -1) {
+                // read until the end
+            }
+            buffer.flip();
+            return new OCamlAnnotParser(buffer);
+        }
+    }
+
     /**
      * Parse and return the result of the parsing
      * @return list of signature that were found in the file
      */
     public ArrayList<OCamlInferredSignature> get() {
         ArrayList<OCamlInferredSignature> elements = new ArrayList<>();
-        if (this.lines.length == 0) return elements; // fix empty .annot
-        AnnotParserState state = parseInstruction();
-        while (state != null) {
-            // add if not skipped
-            if (!state.skip) elements.add(createAnnotResult(state));
-            // continue reading
-            state = parseInstruction();
-        }
+        OCamlInferredSignature signature;
+        while ((signature = next()) != null) elements.add(signature);
         return elements;
     }
 
+    /**
+     * @return the next signature of the file, or null if every signature was read
+     * @throws IllegalStateException if the file is not a valid .annot
+     */
+    public @Nullable OCamlInferredSignature next() {
+        AnnotParserState state;
+        do {
+            state = parseInstruction();
+            if (state == null) return null;
+        } while (state.skip); // skipped
+        return createAnnotResult(state);
+    }
+
     public HashMap<LogicalSection, OCamlInferredSignature> getIndexedByPosition() {
         // Fix error, the values are not unsorted in the hashmap
         // So, we are doing the job in "get", and indexing here.
@@ -64,26 +108,24 @@ public class OCamlAnnotParser {
     }
 
     private @Nullable AnnotParserState parseInstruction() {
-        if (pos == lines.length) return null;
-        Matcher matcher = FILE_POSITION.matcher(readLine());
-        if (!matcher.matches())
-            throw new IllegalStateException("Missing file position for:'" + previousLine() + "'.");
-        AnnotParserState state = new AnnotParserState(matcher.group(1), matcher.group(2),
-                matcher.group(3), matcher.group(4),
-                matcher.group(5),
-                matcher.group(6), matcher.group(7)
-        );
-        String line = readLine();
+        // fix empty .annot, and empty lines at the end
+        do {
+            if (!tryReadLine()) return null;
+        } while (trimStart() == trimEnd());
+        AnnotParserState state = parsePosition();
+        if (state == null)
+            throw new IllegalStateException("Missing file position for:'" + line() + "'.");
+        readLine();
         // it's a module
-        if (!line.startsWith(TYPE_START)) {
-            if (line.startsWith(IDENT_START)) {
-                line = readLine().trim(); // look for module name
-                state.name = line.substring(getStartingPosition(line), line.indexOf("\"") - 1);
-                pos++; // skip )
-            } else if (line.startsWith(CALL_START)) {
+        if (!lineStartsWith(TYPE_START)) {
+            if (lineStartsWith(IDENT_START)) {
+                readLine(); // look for module name
+                state.name = parseName(input.subSequence(trimStart(), trimEnd()));
+                tryReadLine(); // skip )
+            } else if (lineStartsWith(CALL_START)) {
                 parseCall(state);
             } else {
-                throw new IllegalStateException("Unsupported:'" + previousLine() + "'. Please, fill a bug.");
+                throw new IllegalStateException("Unsupported:'" + line() + "'. Please, fill a bug.");
             }
         } else {
             parseType(state);
@@ -93,80 +135,161 @@ public class OCamlAnnotParser {
 
     // parser
 
+    private @Nullable AnnotParserState parsePosition() {
+        column = lineStart;
+        String fileName = readFileName(true);
+        int startLine, startOffset, startColumnWithOffset, endLine, endOffset, endColumnWithOffset;
+        if (fileName == null
+                || (startLine = readNumber(true)) < 0
+                || (startOffset = readNumber(true)) < 0
+                || (startColumnWithOffset = readNumber(true)) < 0
+                || readFileName(false) == null
+                || (endLine = readNumber(true)) < 0
+                || (endOffset = readNumber(true)) < 0
+                || (endColumnWithOffset = readNumber(false)) < 0)
+            return null;
+        return new AnnotParserState(fileName, startLine, startOffset, startColumnWithOffset,
+                endLine, endOffset, endColumnWithOffset);
+    }
+
     private void parseCall(@NotNull AnnotParserState state) {
         state.skip = true; // skip
-        consumeLParen(""); // skip value and ')'
-        String line = tryReadLine();
+        skipLParen(); // skip value and ')'
         // this may be a type
-        if (line != null && line.startsWith(TYPE_START)) {
-            state.skip = false;
-            parseType(state);
+        if (tryReadLine()) {
+            if (lineStartsWith(TYPE_START)) {
+                state.skip = false;
+                parseType(state);
+            } else {
+                previousLine();
+            }
         }
     }
 
     private void parseType(@NotNull AnnotParserState state) {
         // it's a variable
         // next is the type
-        state.type = consumeLParen(readLine().trim());
+        readLine();
+        state.type = consumeLParen().toString();
 
         // if we got multiple "types"
-        String line = handleMultipleTypes(state);
-
-        if (line != null && line.startsWith(IDENT_START)) { // variable
-            line = consumeLParen(readLine().trim()); // look for variable name
-            if (!line.contains(INVALID_CHARACTER)) {
-                int end = line.indexOf("\"");
-                int start = getStartingPosition(line);
-                line = line.substring(start, end - 1);
-                state.name = line;
+        boolean hasLine = handleMultipleTypes(state);
+
+        if (hasLine && lineStartsWith(IDENT_START)) { // variable
+            readLine(); // look for variable name
+            CharSequence ident = consumeLParen();
+            if (!StringUtil.contains(ident, INVALID_CHARACTER)) {
+                state.name = parseName(ident);
                 state.kind = AnnotParserState.AnnotKind.VARIABLE;
             } else {
                 // this is a value
                 state.kind = AnnotParserState.AnnotKind.VALUE;
                 // and, we may have to consume types again
-                line = handleMultipleTypes(state);
+                hasLine = handleMultipleTypes(state);
                 // read the other ident, and don't parse
-                if (line != null && line.startsWith(IDENT_START))
-                    consumeLParen(readLine().trim());
-                else if (line != null) pos--;
+                if (hasLine && lineStartsWith(IDENT_START)) {
+                    readLine();
+                    skipLParen();
+                } else if (hasLine) previousLine();
             }
         } else {
             // this is a value
             state.kind = AnnotParserState.AnnotKind.VALUE;
 
             // we need to offset the "tryReadLine"
-            if (line != null) pos--; // whoops, go back
+            if (hasLine) previousLine(); // whoops, go back
         }
     }
 
     // utils
 
-    private String handleMultipleTypes(AnnotParserState state) {
-        String line = tryReadLine();
-        while (line != null && line.startsWith(TYPE_START)) {
-            state.type = consumeLParen(readLine().trim());
-            line = tryReadLine();
+    // true if a line that isn't a type was read
+    private boolean handleMultipleTypes(AnnotParserState state) {
+        boolean hasLine = tryReadLine();
+        while (hasLine && lineStartsWith(TYPE_START)) {
+            readLine();
+            state.type = consumeLParen().toString();
+            hasLine = tryReadLine();
         }
-        return line;
+        return hasLine;
     }
 
-    private @NotNull String consumeLParen(String base) {
-        StringBuilder b = new StringBuilder(base);
-        String next = readLine(); // look for the closing ')'
-        while (!next.trim().equals(LPAREN)) {
-            // bug (fixed) may be on multiple lines
-            b.append(' ').append(next.trim());
-            next = readLine();
-        }
-        return b.toString();
+    /**
+     * The current line, and the next lines until the closing ')', trimmed and joined.
+     * The result is only valid until the next call.
+     */
+    private @NotNull CharSequence consumeLParen() {
+        int start = trimStart();
+        int end = trimEnd();
+        readLine(); // look for the closing ')'
+        if (isLParen()) return input.subSequence(start, end);
+        // bug (fixed) may be on multiple lines
+        buffer.setLength(0);
+        buffer.append(input, start, end);
+        do {
+            buffer.append(' ').append(input, trimStart(), trimEnd());
+            readLine();
+        } while (!isLParen());
+        return buffer;
+    }
+
+    // skip the lines until the closing ')'
+    private void skipLParen() {
+        do {
+            readLine();
+        } while (!isLParen());
+    }
+
+    private boolean isLParen() {
+        int start = trimStart();
+        return trimEnd() - start == LPAREN.length() && input.charAt(start) == LPAREN.charAt(0);
     }
 
-    private int getStartingPosition(@NotNull String line) {
-        if (!line.startsWith(VARIABLE_DEF)) {
-            return line.indexOf(VARIABLE_REF) + VARIABLE_REF.length() + 1; // ex: 'ref ' => 3+1
+    // ex: 'def x "test.ml" 1 0 4 "test.ml" 1 0 5', or 'int_ref x "test.ml" 1 0 4 "test.ml" 1 0 5'
+    private static @NotNull String parseName(@NotNull CharSequence ident) {
+        int start;
+        if (!StringUtil.startsWith(ident, VARIABLE_DEF)) {
+            start = StringUtil.indexOf(ident, VARIABLE_REF) + VARIABLE_REF.length() + 1; // ex: 'ref ' => 3+1
         } else {
-            return VARIABLE_DEF.length() + 1; // ex: 'def ' => 3 + 1
+            start = VARIABLE_DEF.length() + 1; // ex: 'def ' => 3 + 1
         }
+        int end = StringUtil.indexOf(ident, '"', start) - 1;
+        // ex: 'ext_ref Stdlib.print_string', without a position
+        if (end < start) end = ident.length();
+        return ident.subSequence(Math.min(start, end), end).toString();
+    }
+
+    private @Nullable String readFileName(boolean keep) {
+        if (column >= lineEnd || input.charAt(column) != '"') return null;
+        int start = ++column;
+        while (column < lineEnd && input.charAt(column) != '"') column++;
+        int end = column;
+        if (end == start || end >= lineEnd) return null;
+        column++; // '"'
+        if (column >= lineEnd || input.charAt(column++) != ' ') return null;
+        if (!keep) return "";
+        if (fileName == null || fileName.length() != end - start
+                || !StringUtil.startsWith(input, start, fileName)) {
+            fileName = input.subSequence(start, end).toString();
+            file = new File(fileName);
+        }
+        return fileName;
+    }
+
+    // -1 if there is no number
+    private int readNumber(boolean separator) {
+        int start = column;
+        long value = 0;
+        while (column < lineEnd) {
+            char c = input.charAt(column);
+            if (c < '0' || c > '9') break;
+            value = value * 10 + (c - '0');
+            if (value > Integer.MAX_VALUE) return -1;
+            column++;
+        }
+        if (column == start) return -1;
+        if (separator && (column >= lineEnd || input.charAt(column++) != ' ')) return -1;
+        return (int) value;
     }
 
     private @NotNull OCamlInferredSignature createAnnotResult(@NotNull AnnotParserState state) {
@@ -177,9 +300,9 @@ public class OCamlAnnotParser {
         annotatedElement.name = state.name; // may be null for values
         annotatedElement.kind = isVariable ? OCamlInferredSignature.Kind.VARIABLE :
                 isValue ? OCamlInferredSignature.Kind.VALUE : OCamlInferredSignature.Kind.MODULE;
-        annotatedElement.type = state.type;
+        annotatedElement.type = state.type == null ? "" : state.type; // no type for modules
         annotatedElement.position = new FilePosition(
-                new File(state.fileName),
+                state.fileName.equals(fileName) ? file : new File(state.fileName),
                 state.startLine, state.startColumn, state.endLine, state.endColumn
         );
         annotatedElement.range = new TextRange(state.startOffset, state.endOffset);
@@ -192,17 +315,44 @@ public class OCamlAnnotParser {
     //
 
     // read AND move to the next line
-    private @NotNull String readLine() {
-        return lines[pos++];
+    private void readLine() {
+        if (!tryReadLine()) throw new IllegalStateException("Unexpected end of file after:'" + line() + "'.");
+    }
+
+    private boolean tryReadLine() {
+        if (pos >= input.length()) return false;
+        previousPos = pos;
+        lineStart = pos;
+        int i = pos;
+        while (i < input.length() && input.charAt(i) != '\n') i++;
+        pos = i < input.length() ? i + 1 : i;
+        lineEnd = i > lineStart && input.charAt(i - 1) == '\r' ? i - 1 : i;
+        return true;
+    }
+
+    // the current line will be read again
+    private void previousLine() {
+        pos = previousPos;
     }
 
-    private @Nullable String tryReadLine() {
-        if (pos >= lines.length) return null;
-        return lines[pos++];
+    private boolean lineStartsWith(@NotNull String prefix) {
+        return lineEnd - lineStart >= prefix.length() && StringUtil.startsWith(input, lineStart, prefix);
     }
 
-    private String previousLine() {
-        return lines[--pos];
+    private int trimStart() {
+        int start = lineStart;
+        while (start < lineEnd && input.charAt(start) <= ' ') start++;
+        return start;
+    }
+
+    private int trimEnd() {
+        int end = lineEnd;
+        while (end > lineStart && input.charAt(end - 1) <= ' ') end--;
+        return end;
+    }
+
+    private @NotNull String line() {
+        return input.subSequence(lineStart, lineEnd).toString();
     }
 
     /**
@@ -225,19 +375,16 @@ public class OCamlAnnotParser {
         }
         public AnnotKind kind;
 
-        public AnnotParserState(String fileName, String startLine, String startOffset,
-                                String startColumnWithOffset, String endLine,
-                                String endOffset, String endColumnWithOffset) {
-            int offsetStart = Integer.parseInt(startOffset);
-            int offsetEnd = Integer.parseInt(endOffset);
-
+        public AnnotParserState(String fileName, int startLine, int startOffset,
+                                int startColumnWithOffset, int endLine,
+                                int endOffset, int endColumnWithOffset) {
             this.fileName = fileName;
-            this.startOffset = Integer.parseInt(startColumnWithOffset);
-            this.endOffset = Integer.parseInt(endColumnWithOffset);
-            this.startLine = Integer.parseInt(startLine);
-            this.startColumn = this.startOffset - offsetStart;
-            this.endLine = Integer.parseInt(endLine);
-            this.endColumn = this.endOffset - offsetEnd;
+            this.startOffset = startColumnWithOffset;
+            this.endOffset = endColumnWithOffset;
+            this.startLine = startLine;
+            this.startColumn = this.startOffset - startOffset;
+            this.endLine = endLine;
+            this.endColumn = this.endOffset - endOffset;
         }
 
         @Contract(pure = true)
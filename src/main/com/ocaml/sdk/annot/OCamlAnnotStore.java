@@ -0,0 +1,206 @@
+package com.ocaml.sdk.annot;
+
+import com.intellij.build.FilePosition;
+import com.intellij.openapi.util.TextRange;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Save the signatures of a .annot in a binary file, to load them without compiling the file.
+ * The file starts with a key (ex: the hash of the content of the source), and a signature
+ * is only loaded if the key is the same.
+ * <p>
+ * Format: the magic number, the version, and the key, then the strings (types, names, and files),
+ * then the signatures. The strings are only written once, and the signatures are using their index.
+ * The positions are written as differences with the previous signature, using varints.
+ */
+public final class OCamlAnnotStore {
+
+    private static final int MAGIC = 0x4F414E4E; // OANN
+    private static final int VERSION = 1;
+    private static final OCamlInferredSignature.Kind[] KINDS = OCamlInferredSignature.Kind.values();
+
+    private OCamlAnnotStore() {
+    }
+
+    /**
+     * Write the signatures in a temporary file, then replace the file,
+     * so a file is never read while it's written.
+     */
+    public static void save(@NotNull File file, @NotNull String key,
+                            @NotNull List<OCamlInferredSignature> signatures) throws IOException {
+        File folder = file.getParentFile();
+        if (folder != null && !folder.exists() && !folder.mkdirs() && !folder.exists())
+            throw new IOException("Couldn't create '" + folder + "'");
+        File temp = File.createTempFile(file.getName(), ".tmp", folder);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                write(out, key, signatures);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // if the file couldn't be written
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * Only the key is read if the key is not the same.
+     * @return the signatures, or null if the file doesn't exist, or if the key is not the same
+     * @throws IOException if the file couldn't be read, or if the file is invalid
+     */
+    public static @Nullable List<OCamlInferredSignature> load(@NotNull File file, @NotNull String key) throws IOException {
+        if (!file.exists()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return read(in, key);
+        } catch (EOFException e) {
+            throw new IOException("Truncated file '" + file + "'", e);
+        }
+    }
+
+    static void write(@NotNull DataOutputStream out, @NotNull String key,
+                      @NotNull List<OCamlInferredSignature> signatures) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeUTF(key);
+
+        // strings
+        Map<String, Integer> indexes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (OCamlInferredSignature signature : signatures) {
+            index(indexes, strings, signature.type);
+            if (signature.name != null) index(indexes, strings, signature.name);
+            index(indexes, strings, getFile(signature));
+        }
+        writeVarInt(out, strings.size());
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+
+        // signatures
+        writeVarInt(out, signatures.size());
+        int line = 0;
+        int offset = 0;
+        for (OCamlInferredSignature signature : signatures) {
+            FilePosition position = signature.position;
+            out.writeByte(signature.kind.ordinal());
+            writeVarInt(out, indexes.get(signature.type));
+            writeVarInt(out, signature.name == null ? 0 : indexes.get(signature.name) + 1);
+            writeVarInt(out, indexes.get(getFile(signature)));
+            writeSignedVarInt(out, position.getStartLine() - line);
+            writeSignedVarInt(out, position.getStartColumn());
+            writeSignedVarInt(out, position.getEndLine() - position.getStartLine());
+            writeSignedVarInt(out, position.getEndColumn());
+            writeSignedVarInt(out, signature.range.getStartOffset() - offset);
+            writeSignedVarInt(out, signature.range.getLength());
+            line = position.getStartLine();
+            offset = signature.range.getStartOffset();
+        }
+    }
+
+    static @Nullable List<OCamlInferredSignature> read(@NotNull DataInputStream in, @NotNull String key) throws IOException {
+        if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) return null;
+        if (!key.equals(in.readUTF())) return null;
+
+        int count = readLength(in);
+        String[] strings = new String[count];
+        File[] files = new File[count];
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < count; i++) {
+            int length = readLength(in);
+            if (length > bytes.length) bytes = new byte[length];
+            in.readFully(bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        count = readLength(in);
+        List<OCamlInferredSignature> signatures = new ArrayList<>(Math.min(count, 1024));
+        int line = 0;
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            OCamlInferredSignature signature = new OCamlInferredSignature();
+            int kind = in.readUnsignedByte();
+            if (kind >= KINDS.length) throw new IOException("Invalid kind: " + kind);
+            signature.kind = KINDS[kind];
+            signature.type = string(strings, readVarInt(in));
+            int name = readVarInt(in);
+            signature.name = name == 0 ? null : string(strings, name - 1);
+            int file = readVarInt(in);
+            string(strings, file); // checked
+            if (files[file] == null) files[file] = new File(strings[file]);
+
+            line += readSignedVarInt(in);
+            int startColumn = readSignedVarInt(in);
+            int endLine = line + readSignedVarInt(in);
+            int endColumn = readSignedVarInt(in);
+            offset += readSignedVarInt(in);
+            int length = readSignedVarInt(in);
+            if (offset < 0 || length < 0) throw new IOException("Invalid range: " + offset + "+" + length);
+            signature.position = new FilePosition(files[file], line, startColumn, endLine, endColumn);
+            signature.range = new TextRange(offset, offset + length);
+            signatures.add(signature);
+        }
+        return signatures;
+    }
+
+    private static void index(@NotNull Map<String, Integer> indexes, @NotNull List<String> strings, @NotNull String s) {
+        if (indexes.putIfAbsent(s, strings.size()) == null) strings.add(s);
+    }
+
+    private static @NotNull String getFile(@NotNull OCamlInferredSignature signature) {
+        File file = signature.position.getFile();
+        return file == null ? "" : file.getPath();
+    }
+
+    private static @NotNull String string(@NotNull String[] strings, int index) throws IOException {
+        if (index < 0 || index >= strings.length) throw new IOException("Invalid string: " + index);
+        return strings[index];
+    }
+
+    // varints: 7 bits per byte, the highest bit is set if there are more bytes
+
+    private static void writeVarInt(@NotNull DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    // zigzag: small negative values are using a few bytes too
+    private static void writeSignedVarInt(@NotNull DataOutput out, int value) throws IOException {
+        writeVarInt(out, (value << 1) ^ (value >> 31));
+    }
+
+    private static int readVarInt(@NotNull DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Invalid varint");
+    }
+
+    private static int readLength(@NotNull DataInput in) throws IOException {
+        int length = readVarInt(in);
+        if (length < 0) throw new IOException("Invalid length: " + length);
+        return length;
+    }
+
+    private static int readSignedVarInt(@NotNull DataInput in) throws IOException {
+        int value = readVarInt(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,64 @@
+package com.ocaml.sdk.annot;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.execution.process.CapturingProcessHandler;
+import com.intellij.execution.process.ProcessOutput;
+import com.intellij.openapi.diagnostic.Logger;
+import com.ocaml.sdk.providers.OCamlSdkProvidersManager;
+import com.ocaml.utils.logs.OCamlLogger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Read the signatures of a .cmt, generated by the compiler with -bin-annot.
+ * <p>
+ * A .cmt is the typed tree of the compiler, marshalled, so its format depends on the
+ * version of the compiler. The SDK is converting it to a .annot using ocamlcmt, and the
+ * .annot is parsed using {@link OCamlAnnotParser}. Nothing is written on the disk.
+ */
+public final class OCamlCmtReader {
+
+    private static final Logger LOG = OCamlLogger.getSdkInstance("cmt");
+    private static final int TIMEOUT = 30_000; // ms
+
+    private OCamlCmtReader() {
+    }
+
+    /**
+     * Must be called from a background thread.
+     * @param homePath the home of the SDK that generated the .cmt
+     * @param cmtFile  the .cmt
+     * @return the signatures, or null if they couldn't be read
+     */
+    public static @Nullable List<OCamlInferredSignature> read(@NotNull String homePath, @NotNull File cmtFile) {
+        if (!cmtFile.exists()) return null;
+        GeneralCommandLine cli = OCamlSdkProvidersManager.INSTANCE.getCmtToAnnotCommand(homePath, cmtFile.getPath());
+        if (cli == null) {
+            LOG.warn("No ocamlcmt found for " + homePath + ".");
+            return null;
+        }
+
+        ProcessOutput output;
+        try {
+            output = new CapturingProcessHandler(cli).runProcess(TIMEOUT);
+        } catch (ExecutionException e) {
+            LOG.warn("Couldn't run '" + cli.getCommandLineString() + "' (" + e.getMessage() + ").");
+            return null;
+        }
+        if (output.isTimeout() || output.getExitCode() != 0) {
+            LOG.debug("Couldn't read '" + cmtFile + "' (" + output.getStderr().trim() + ").");
+            return null;
+        }
+
+        try {
+            return new OCamlAnnotParser(output.getStdout()).get();
+        } catch (IllegalStateException e) {
+            LOG.debug("Invalid output for '" + cmtFile + "' (" + e.getMessage() + ").");
+            return null;
+        }
+    }
+}
@@ -1,23 +1,45 @@
 package com.ocaml.sdk.output;
 
 import com.intellij.build.FilePosition;
+import com.intellij.openapi.diagnostic.Logger;
+import com.ocaml.utils.logs.OCamlLogger;
 import com.ocaml.utils.strings.StringsUtil;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.IOException;
+import java.io.Reader;
 
 /**
  * Parse the compiler output,
  * it should work for any versions after 4.06.0.
+ * <p>
+ * The output can be given line by line using {@link #parseLine(String)},
+ * or streamed using {@link #parse(Reader)} and {@link #parse(char[], int, int)}.
+ * When streaming, the characters are stored in a buffer until the end of the line,
+ * and the line is parsed directly from the buffer. A message is sent to
+ * {@link #onMessageReady(CompilerOutputMessage)} when the location of the next
+ * message is read, or when the input is done.
+ * <p>
+ * Lines that couldn't be parsed are ignored and counted,
+ * see {@link #getMalformedLines()} and {@link #getMalformedMessages()}.
  */
 public abstract class CompilerOutputParser {
 
+    private static final Logger LOG = OCamlLogger.getSdkInstance("output");
+    private static final int BUFFER_SIZE = 8192;
+
     /** if we are reading data, then this is not null. **/
     private @Nullable CompilerState currentState = null;
+    /** the line that is being read, when streaming **/
+    private final StringBuilder myLine = new StringBuilder();
+    /** end of the location, set by {@link #parseLocation(CharSequence)} **/
+    private int myPosition;
+
+    private int myMalformedLines;
+    private int myMalformedMessages;
 
     public CompilerOutputParser() {
     }
@@ -27,7 +49,8 @@ public abstract class CompilerOutputParser {
         try {
             onMessageReady(createMessage(currentState));
         } catch (IllegalStateException e) {
-            System.out.println("todo: log " + e.getMessage());
+            myMalformedMessages++;
+            LOG.debug("Invalid message: " + e.getMessage());
         }
         currentState = null;
     }
@@ -40,7 +63,7 @@ public abstract class CompilerOutputParser {
         message.kind = currentState.kind;
 
         // the message
-        message.content = StringsUtil.capitalize(currentState.messageRaw);
+        message.content = StringsUtil.capitalize(currentState.messageRaw.toString());
 
         // file position
         message.filePosition = new FilePosition(
@@ -51,7 +74,7 @@ public abstract class CompilerOutputParser {
                 currentState.endColumn
         );
         // context
-        message.context = currentState.context;
+        message.context = currentState.context.toString();
         return message;
     }
 
@@ -67,6 +90,56 @@ public abstract class CompilerOutputParser {
      */
     protected abstract void onMessageReady(@NotNull CompilerOutputMessage message);
 
+    /**
+     * @return the number of lines that were expected to be a location, but weren't
+     */
+    public int getMalformedLines() {
+        return myMalformedLines;
+    }
+
+    /**
+     * @return the number of messages that were ignored, because they were incomplete
+     */
+    public int getMalformedMessages() {
+        return myMalformedMessages;
+    }
+
+    /**
+     * Read the whole output. DO NOT FORGET TO CALL {@link #inputDone()} after.
+     */
+    public void parse(@NotNull Reader reader) throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            parse(buffer, 0, read);
+        }
+    }
+
+    /**
+     * Read a part of the output, lines may be split between two calls.
+     * DO NOT FORGET TO CALL {@link #inputDone()} after you submitted the
+     * last characters.
+     */
+    public void parse(char @NotNull [] buffer, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            char c = buffer[i];
+            if (c == '\n') {
+                lineDone();
+            } else {
+                myLine.append(c);
+            }
+        }
+    }
+
+    private void lineDone() {
+        int length = myLine.length();
+        // \r\n
+        if (length > 0 && myLine.charAt(length - 1) == '\r') myLine.setLength(length - 1);
+        parseLine(myLine);
+        myLine.setLength(0);
+    }
+
     /**
      * DO NOT FORGET TO CALL {@link #inputDone()} after you submitted the
      * last line.
@@ -74,44 +147,44 @@ public abstract class CompilerOutputParser {
      * @param line a line of the output of the compiler
      */
     public void parseLine(@NotNull String line) {
-        if (line.startsWith("File")) // we are done with the previous message
+        parseLine((CharSequence) line);
+    }
+
+    private void parseLine(@NotNull CharSequence line) {
+        if (startsWith(line, "File")) // we are done with the previous message
             messageReady();
 
         // parse the row
         if (currentState == null) {
-            parseLocation(line);
+            if (!parseLocation(line)) {
+                myMalformedLines++;
+                if (LOG.isTraceEnabled()) LOG.trace("Was expecting a location, got '" + line + "'.");
+            }
             return;
         }
 
         // find the type, if needed
         if (currentState.kind == null) {
-            if (line.startsWith("Warning")) currentState.kind = CompilerOutputMessage.Kind.WARNING;
-            else if (line.startsWith("Error")) currentState.kind = CompilerOutputMessage.Kind.ERROR;
-            else if (line.startsWith("Alert")) currentState.kind = CompilerOutputMessage.Kind.ALERT;
+            if (startsWith(line, "Warning")) currentState.kind = CompilerOutputMessage.Kind.WARNING;
+            else if (startsWith(line, "Error")) currentState.kind = CompilerOutputMessage.Kind.ERROR;
+            else if (startsWith(line, "Alert")) currentState.kind = CompilerOutputMessage.Kind.ALERT;
             else {
-                currentState.context += line + "\n";
+                currentState.context.append(line).append('\n');
+                return;
+            }
+            int sep = indexOf(line, ':', 0, line.length());
+            int mnemonic = sep == -1 ? -1 : indexOf(line, '[', 0, sep);
+            if (mnemonic > 0) {
+                // line without the mnemonic, " ["
+                currentState.messageRaw.append(line, 0, mnemonic - 1).append(line, sep, line.length()).append('\n');
                 return;
             }
-            int sep = line.indexOf(':');
-            assert sep != -1;
-            String firstPart = line.substring(0, sep);
-            String secondPart = line.substring(sep + 1);
-
-            int mnemonic = firstPart.indexOf('[');
-            if (mnemonic != -1)
-                firstPart = firstPart.substring(0, mnemonic - 1); // " ["
-
-            // line without the mnemonic
-            line = firstPart + ":" + secondPart;
         }
 
         // change: we are now keeping the indents
-        currentState.messageRaw += line + "\n";
+        currentState.messageRaw.append(line).append('\n');
     }
 
-    public static final Pattern FILE_LOCATION = Pattern.compile("File \"([^\"]+)\", lines? ([^,]+), characters ([^-]+)-([0-9]+):(.*)");
-    public static final Pattern FILE_LOCATION_LINE = Pattern.compile("File \"([^\"]+)\", line ([^,]+):(.*)");
-
     /**
      * The first line. Usually something like
      * "<code>File "file.ml", line 1, characters 0-18:</code>".<br>
@@ -123,42 +196,89 @@ public abstract class CompilerOutputParser {
      * </ul>
      *
      * @param line we are expecting a location.
-     * @throws IllegalStateException if this line couldn't be parsed
+     * @return false if this line couldn't be parsed
      */
-    private void parseLocation(String line) {
-        boolean wholeLine = false;
-        Matcher matcher = FILE_LOCATION.matcher(line);
+    private boolean parseLocation(@NotNull CharSequence line) {
+        int length = line.length();
+        if (!startsWith(line, "File \"")) return false;
+        int close = indexOf(line, '"', 6, length);
+        if (close == -1) return false;
+        myPosition = close + 1;
+        if (!expect(line, ", line")) return false;
+        if (myPosition < length && line.charAt(myPosition) == 's') myPosition++;
+        if (!expect(line, " ")) return false;
 
-        if (!matcher.matches()) { // there is no "characters"
-            matcher = FILE_LOCATION_LINE.matcher(line);
-            wholeLine = true;
+        // line
+        int startLine = parseInt(line);
+        if (startLine == -1) return false;
+        int endLine = startLine;
+        if (expect(line, "-")) {
+            endLine = parseInt(line);
+            if (endLine == -1) return false;
         }
-        if (!matcher.matches())
-            throw new IllegalStateException("Was expecting a location, got '" + line + "'.");
-        currentState = new CompilerState(matcher.group(1));
 
-        // line
-        String lineInterval = matcher.group(2);
-        int startLine, endLine;
-        int dash = lineInterval.indexOf('-');
-        if (dash == -1) endLine = (startLine = Integer.parseInt(lineInterval));
-        else {
-            startLine = Integer.parseInt(lineInterval.substring(0, dash));
-            endLine = Integer.parseInt(lineInterval.substring(dash + 1));
+        // columns, there is no "characters" if the whole line is concerned
+        int startColumn = -1, endColumn = -1;
+        if (!expect(line, ":")) {
+            if (!expect(line, ", characters ")) return false;
+            startColumn = parseInt(line);
+            if (startColumn == -1 || !expect(line, "-")) return false;
+            endColumn = parseInt(line);
+            if (endColumn == -1 || !expect(line, ":")) return false;
         }
+
+        currentState = new CompilerState(line.subSequence(6, close).toString());
         currentState.startLine = startLine;
         currentState.endLine = endLine;
+        currentState.startColumn = startColumn;
+        currentState.endColumn = endColumn;
+        return true;
+    }
+
+    /** @return the number at {@link #myPosition}, or -1 **/
+    private int parseInt(@NotNull CharSequence line) {
+        int value = 0;
+        int start = myPosition;
+        while (myPosition < line.length()) {
+            char c = line.charAt(myPosition);
+            if (c < '0' || c > '9') break;
+            value = value * 10 + (c - '0');
+            myPosition++;
+        }
+        return myPosition == start ? -1 : value;
+    }
+
+    /** move {@link #myPosition} after the expected text, if it's present **/
+    private boolean expect(@NotNull CharSequence line, @NotNull String expected) {
+        if (!regionMatches(line, myPosition, expected)) return false;
+        myPosition += expected.length();
+        return true;
+    }
+
+    private static boolean startsWith(@NotNull CharSequence line, @NotNull String prefix) {
+        return regionMatches(line, 0, prefix);
+    }
+
+    private static boolean regionMatches(@NotNull CharSequence line, int start, @NotNull String expected) {
+        if (start + expected.length() > line.length()) return false;
+        for (int i = 0; i < expected.length(); i++) {
+            if (line.charAt(start + i) != expected.charAt(i)) return false;
+        }
+        return true;
+    }
 
-        if (!wholeLine) { // add the columns
-            currentState.startColumn = Integer.parseInt(matcher.group(3));
-            currentState.endColumn = Integer.parseInt(matcher.group(4));
+    private static int indexOf(@NotNull CharSequence line, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (line.charAt(i) == c) return i;
         }
+        return -1;
     }
 
     /**
      * must be called after every call to parseLocation
      **/
     public void inputDone() {
+        if (myLine.length() > 0) lineDone();
         messageReady();
     }
 }
@@ -4,8 +4,8 @@ public final class CompilerState {
     public int startLine, endLine;
     public int startColumn = -1, endColumn = -1;
     public String filePath;
-    public String messageRaw = "";
-    public String context = "";
+    public final StringBuilder messageRaw = new StringBuilder();
+    public final StringBuilder context = new StringBuilder();
     public CompilerOutputMessage.Kind kind;
 
     public CompilerState(String filePath) {
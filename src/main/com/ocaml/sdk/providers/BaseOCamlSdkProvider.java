@@ -267,18 +267,24 @@ public class BaseOCamlSdkProvider implements OCamlSdkProvider {
     }
 
     @Override
-    public @Nullable CompileWithCmtInfo getCompileCommandWithCmt(String sdkHomePath, String rootFolderForTempering, String file, String outputDirectory, String executableName) {
+    public @Nullable CompileWithCmtInfo getCompileCommandWithCmt(String sdkHomePath, String rootFolderForTempering, String file, String outputDirectory, String executableName, boolean binaryAnnotations) {
         if (!canUseProviderForHome(sdkHomePath)) return null;
         return new CompileWithCmtInfo(
                 CompileWithCmtInfo.createAnnotatorCommand(
                         sdkHomePath + "/bin/ocamlc", file,
                         outputDirectory + "/" + executableName,
-                        outputDirectory, outputDirectory
+                        outputDirectory, outputDirectory, binaryAnnotations
                 ), // nothing to change
-                rootFolderForTempering
+                rootFolderForTempering,
+                binaryAnnotations
         );
     }
 
+    @Override public @Nullable GeneralCommandLine getCmtToAnnotCommand(String sdkHomePath, String cmtFile) {
+        if (!canUseProviderForHome(sdkHomePath)) return null;
+        return CompileWithCmtInfo.createCmtToAnnotCommand(sdkHomePath + "/bin/ocamlcmt", cmtFile);
+    }
+
     @Override public @Nullable String getDuneVersion(String sdkHomePath) {
         if (!canUseProviderForHome(sdkHomePath)) return null;
         try {
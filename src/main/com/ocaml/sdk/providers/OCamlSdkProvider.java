@@ -142,13 +142,22 @@ public interface OCamlSdkProvider {
      * @param file                   the file we are compiling
      * @param outputDirectory        the output directory
      * @param executableName         the name of the generated executable
+     * @param binaryAnnotations      generate a .cmt (-bin-annot) instead of a .annot (-annot)
      * @return the command line with the root for tempering paths, or null
      */
     @Nullable CompileWithCmtInfo getCompileCommandWithCmt(String sdkHomePath,
                                                           String rootFolderForTempering,
                                                           String file,
                                                           String outputDirectory,
-                                                          String executableName);
+                                                          String executableName,
+                                                          boolean binaryAnnotations);
+
+    /**
+     * @param sdkHomePath path to the SDK home
+     * @param cmtFile     a .cmt generated by the compiler
+     * @return "ocamlcmt -annot -o - file.cmt", the .annot is written in the output
+     */
+    @Nullable GeneralCommandLine getCmtToAnnotCommand(String sdkHomePath, String cmtFile);
 
     //
     // DUNE
@@ -90,8 +90,12 @@ public final class OCamlSdkProvidersManager implements OCamlSdkProvider {
     }
 
     @Override
-    public @Nullable CompileWithCmtInfo getCompileCommandWithCmt(String sdkHomePath, String rootFolderForTempering, String file, String outputDirectory, String executableName) {
-        return callProvidersValue(provider -> provider.getCompileCommandWithCmt(sdkHomePath, rootFolderForTempering, file, outputDirectory, executableName));
+    public @Nullable CompileWithCmtInfo getCompileCommandWithCmt(String sdkHomePath, String rootFolderForTempering, String file, String outputDirectory, String executableName, boolean binaryAnnotations) {
+        return callProvidersValue(provider -> provider.getCompileCommandWithCmt(sdkHomePath, rootFolderForTempering, file, outputDirectory, executableName, binaryAnnotations));
+    }
+
+    @Override public @Nullable GeneralCommandLine getCmtToAnnotCommand(String sdkHomePath, String cmtFile) {
+        return callProvidersValue(provider -> provider.getCmtToAnnotCommand(sdkHomePath, cmtFile));
     }
 
     @Override public @NotNull Set<String> getInstallationFolders() {
@@ -22,7 +22,7 @@ public final class CompileWithCmtInfo {
      * -I $outputDirectory
      * -w +A
      * -color=never
-     * -annot
+     * -annot (or -bin-annot)
      */
     @NotNull public final GeneralCommandLine cli;
 
@@ -32,9 +32,16 @@ public final class CompileWithCmtInfo {
      */
     @NotNull public final String rootFolderForTempering;
 
+    /**
+     * The compiler is generating a .cmt instead of a .annot
+     */
+    public final boolean binaryAnnotations;
+
     public CompileWithCmtInfo(@NotNull GeneralCommandLine cli,
-                              @NotNull String rootFolderForTempering) {
+                              @NotNull String rootFolderForTempering,
+                              boolean binaryAnnotations) {
         this.cli = cli;
+        this.binaryAnnotations = binaryAnnotations;
 
         // must ends with a trailing slash
         if (!rootFolderForTempering.endsWith("/") && !rootFolderForTempering.endsWith("\\"))
@@ -50,17 +57,18 @@ public final class CompileWithCmtInfo {
      * -I $outputDirectory
      * -w +A
      * -color=never
-     * -annot
+     * -annot (or -bin-annot if binaryAnnotations)
      */
     public static @NotNull GeneralCommandLine createAnnotatorCommand(String compiler, @NotNull String file, String outputFile,
-                                                                     String outputDirectory, String workingDirectory) {
+                                                                     String outputDirectory, String workingDirectory,
+                                                                     boolean binaryAnnotations) {
         GeneralCommandLine cli = new GeneralCommandLine(compiler);
         if (file.endsWith(".mli")) cli.addParameter("-c");
         // compile everything else
         // fix #71: adding extension
         cli.addParameters(file, "-o", outputFile + OUTPUT_EXTENSION,
                 "-I", outputDirectory,
-                "-w", "+A", "-color=never", "-annot");
+                "-w", "+A", "-color=never", binaryAnnotations ? "-bin-annot" : "-annot");
         // fix issue -I is adding, so the current directory
         // is included, and this may lead to problems later (ex: a file.cmi may be
         // used instead of the one in the output directory, because we found one in the
@@ -71,17 +79,31 @@ public final class CompileWithCmtInfo {
         return cli;
     }
 
+    /**
+     * ocamlcmt
+     * -annot
+     * -o - (the output)
+     * $cmtFile
+     */
+    public static @NotNull GeneralCommandLine createCmtToAnnotCommand(String ocamlcmt, @NotNull String cmtFile) {
+        GeneralCommandLine cli = new GeneralCommandLine(ocamlcmt, "-annot", "-o", "-", cmtFile);
+        // the messages are not mixed with the .annot
+        cli.setRedirectErrorStream(false);
+        return cli;
+    }
+
     /**
      * @return the extension of the annotation file, without the dot (".").
      */
     @Contract(pure = true) public @NotNull String getAnnotationFileExtension() {
-        return "annot";
+        return binaryAnnotations ? "cmt" : "annot";
     }
 
     @Override public String toString() {
         return "CompileWithCmtInfo{" +
                 "cli=" + cli.getCommandLineString() +
                 ", rootFolderForTempering='" + rootFolderForTempering + '\'' +
+                ", binaryAnnotations=" + binaryAnnotations +
                 '}';
     }
 }
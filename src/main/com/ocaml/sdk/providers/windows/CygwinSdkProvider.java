@@ -78,7 +78,7 @@ public class CygwinSdkProvider extends AbstractWindowsBaseProvider {
     }
 
     @Override
-    public @Nullable CompileWithCmtInfo getCompileCommandWithCmt(String sdkHomePath, String rootFolderForTempering, String file, String outputDirectory, String executableName) {
+    public @Nullable CompileWithCmtInfo getCompileCommandWithCmt(String sdkHomePath, String rootFolderForTempering, String file, String outputDirectory, String executableName, boolean binaryAnnotations) {
         if (!canUseProviderForHome(sdkHomePath)) return null;
         Path homePath = Path.of(sdkHomePath);
         // look for a compiler
@@ -88,16 +88,23 @@ public class CygwinSdkProvider extends AbstractWindowsBaseProvider {
             GeneralCommandLine cli = CompileWithCmtInfo.createAnnotatorCommand(
                     sdkHomePath + "\\bin\\" + compilerName,
                     file, outputDirectory + "\\" + executableName,
-                    outputDirectory, outputDirectory
+                    outputDirectory, outputDirectory, binaryAnnotations
             );
             cli.withEnvironment("OCAMLLIB", sdkHomePath + "\\lib\\ocaml");
-            return new CompileWithCmtInfo(cli, rootFolderForTempering);
+            return new CompileWithCmtInfo(cli, rootFolderForTempering, binaryAnnotations);
         }
 
         LOG.warn("No compiler found for cygwin in " + sdkHomePath + ".");
         return null;
     }
 
+    @Override public @Nullable GeneralCommandLine getCmtToAnnotCommand(String sdkHomePath, String cmtFile) {
+        if (!canUseProviderForHome(sdkHomePath)) return null;
+        GeneralCommandLine cli = CompileWithCmtInfo.createCmtToAnnotCommand(sdkHomePath + "\\bin\\ocamlcmt.exe", cmtFile);
+        cli.withEnvironment("OCAMLLIB", sdkHomePath + "\\lib\\ocaml");
+        return cli;
+    }
+
     @Override protected @NotNull String getDuneExecutable(String sdkHomePath) {
         return sdkHomePath + "\\bin\\dune.exe";
     }
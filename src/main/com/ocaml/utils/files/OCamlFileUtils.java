@@ -1,16 +1,15 @@
 package com.ocaml.utils.files;
 
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
-import com.ocaml.utils.adaptor.UntilIdeVersion;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -50,36 +49,25 @@ public final class OCamlFileUtils {
         }
     }
 
+    /**
+     * Must be called inside a read action, see {@link OCamlStagingArea} to write the copy
+     * outside the read action.
+     */
     @Nullable
     public static File copyToTempFile(@NotNull File tempCompilationDirectory, @NotNull PsiFile psiFile,
                                       @NotNull String name, Logger logger) {
-        File sourceTempFile;
-
-        try {
-            sourceTempFile = new File(tempCompilationDirectory, name);
-            boolean created = sourceTempFile.createNewFile();
-            // FIX avoid "deadlock" if the file already exists
-            if (!created && !sourceTempFile.exists())
-                throw new IOException("Could not create '" + sourceTempFile + "'.");
-        } catch (IOException e) {
-            logger.info("Temporary file creation failed", e); // log error but do not show it in UI
-            return null;
-        }
-
-        try {
-            @UntilIdeVersion(release = "203", note = "We can't pass the charset to writeToFile in 203.")
-            // use the charset of the original file
-            String text = new String(psiFile.getText().getBytes(
-                    psiFile.getVirtualFile().getCharset()
-            ), psiFile.getVirtualFile().getCharset());
-            FileUtil.writeToFile(sourceTempFile, text);
-        } catch (IOException e) {
-            // Sometimes, file is locked by another process, not a big deal, skip it
-            logger.trace("Write failed: " + e.getLocalizedMessage());
-            return null;
-        }
+        return OCamlStagingArea.stage(tempCompilationDirectory, name, OCamlStagingArea.snapshot(psiFile), logger);
+    }
 
-        return sourceTempFile;
+    /**
+     * Same as {@link #copyToTempFile(File, PsiFile, String, Logger)}, but with a text
+     * that was already read. Can be called outside a read action.
+     */
+    @Nullable
+    public static File writeToTempFile(@NotNull File tempCompilationDirectory, @NotNull String name,
+                                       @NotNull String text, Logger logger) {
+        OCamlStagingArea.Source source = new OCamlStagingArea.Source(text, StandardCharsets.UTF_8, null);
+        return OCamlStagingArea.stage(tempCompilationDirectory, name, source, logger);
     }
 
     public static void deleteDirectory(@NotNull String file) {
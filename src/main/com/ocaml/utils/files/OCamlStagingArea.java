@@ -0,0 +1,175 @@
+package com.ocaml.utils.files;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Copies of the files that are compiled by the annotator.
+ * <ul>
+ *     <li>the hash of the content of each copy is kept, a copy is only written again
+ *     if the content changed, or if the copy was modified/removed</li>
+ *     <li>if the document was saved, the copy is a link to the file on the disk
+ *     (hard link, or symbolic link if a hard link can't be created)</li>
+ *     <li>the content is read inside a read action using {@link #snapshot(PsiFile)},
+ *     and the copy is written outside the read action using {@link #stage}</li>
+ * </ul>
+ * A copy is always removed before being written, so that the file that it
+ * may be linked to is never modified. Only the hashes of the {@link #MAX_STAGED}
+ * most recently staged copies are kept, the other copies are written again.
+ */
+public final class OCamlStagingArea {
+
+    static final int MAX_STAGED = 1024;
+
+    // copy -> hash of its content, least recently used first
+    private static final Map<String, Staged> ourStaged = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override protected boolean removeEldestEntry(Map.Entry<String, Staged> eldest) {
+                    return size() > MAX_STAGED;
+                }
+            });
+
+    private OCamlStagingArea() {
+    }
+
+    /**
+     * Must be called inside a read action.
+     * @return the content of the file, as it will be compiled
+     */
+    public static @NotNull Source snapshot(@NotNull PsiFile psiFile) {
+        VirtualFile virtualFile = psiFile.getVirtualFile();
+        String text = psiFile.getText();
+        if (virtualFile == null) return new Source(text, StandardCharsets.UTF_8, null);
+        // the file on the disk is only used if the document was saved
+        File diskFile = null;
+        if (virtualFile.isInLocalFileSystem() && !FileDocumentManager.getInstance().isFileModified(virtualFile)) {
+            diskFile = new File(virtualFile.getPath());
+        }
+        return new Source(text, virtualFile.getCharset(), diskFile);
+    }
+
+    /**
+     * Create, or update, the copy of a file. Can be called outside a read action.
+     * @return the copy, or null if it couldn't be written
+     */
+    public static @Nullable File stage(@NotNull File directory, @NotNull String name,
+                                       @NotNull Source source, @NotNull Logger logger) {
+        File target = new File(directory, name);
+        String key = target.getAbsolutePath();
+        byte[] content = source.myText.getBytes(source.myCharset);
+        byte[] hash = hash(content);
+
+        // there may be two annotators working on the same file
+        Staged staged = ourStaged.computeIfAbsent(key, k -> new Staged());
+        //noinspection SynchronizationOnLocalVariableOrMethodParameter
+        synchronized (staged) {
+            if (staged.isUpToDate(target, hash)) return target;
+            staged.myHash = null;
+            try {
+                Path path = target.toPath();
+                Files.deleteIfExists(path);
+                if (!link(path, source, content.length, hash)) write(path, content);
+            } catch (IOException e) {
+                // Sometimes, file is locked by another process, not a big deal, skip it
+                logger.trace("Write failed: " + e.getLocalizedMessage());
+                return null;
+            }
+            staged.myHash = hash;
+            staged.mySize = target.length();
+            staged.myLastModified = target.lastModified();
+            return target;
+        }
+    }
+
+    private static boolean link(@NotNull Path target, @NotNull Source source, int size, byte @NotNull [] hash) {
+        if (source.myDiskFile == null || source.myDiskFile.length() != size) return false;
+        Path existing = source.myDiskFile.toPath();
+        // ex: the line separators, or the encoding, are not the same
+        try {
+            if (!Arrays.equals(hash(Files.readAllBytes(existing)), hash)) return false;
+        } catch (IOException e) {
+            return false;
+        }
+        try {
+            Files.createLink(target, existing);
+            return true;
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            // another file system, or links are not supported
+        }
+        try {
+            Files.createSymbolicLink(target, existing.toAbsolutePath());
+            return true;
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            return false;
+        }
+    }
+
+    private static void write(@NotNull Path target, byte @NotNull [] content) throws IOException {
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private static byte @NotNull [] hash(byte @NotNull [] content) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always available
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The content of a file, read inside a read action.
+     */
+    public static final class Source {
+        @NotNull private final String myText;
+        @NotNull private final Charset myCharset;
+        @Nullable private final File myDiskFile; // the file on the disk, if it has the same content
+
+        public Source(@NotNull String text, @NotNull Charset charset, @Nullable File diskFile) {
+            myText = text;
+            myCharset = charset;
+            myDiskFile = diskFile;
+        }
+
+        public @NotNull String getText() {
+            return myText;
+        }
+    }
+
+    private static final class Staged {
+        private byte[] myHash;
+        private long mySize;
+        private long myLastModified;
+
+        private boolean isUpToDate(@NotNull File target, byte @NotNull [] hash) {
+            // the copy may have been removed, with the output folder
+            return myHash != null && Arrays.equals(myHash, hash)
+                    && target.length() == mySize && target.lastModified() == myLastModified;
+        }
+    }
+}
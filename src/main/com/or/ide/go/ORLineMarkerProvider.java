@@ -57,14 +57,14 @@ public class ORLineMarkerProvider extends RelatedItemLineMarkerProvider {
                 }
                 final String qName = qNameLet;
 
-                Collection<PsiVal> vals = ValFqnIndex.getElements(qName.hashCode(), project, scope);
+                Collection<PsiVal> vals = ValFqnIndex.getElements(qName, project, scope);
                 vals.stream()
                         .filter(isInterface ? PSI_IMPL_PREDICATE : PSI_INTF_PREDICATE)
                         .findFirst()
                         .ifPresentOrElse(psiVal ->
                                         result.add(createGutterIcon(element, isInterface, "method", (FileBase) psiVal.getContainingFile(), psiVal))
                                 , () -> {
-                                    Collection<PsiLet> lets = LetFqnIndex.getElements(qName.hashCode(), project, scope);
+                                    Collection<PsiLet> lets = LetFqnIndex.getElements(qName, project, scope);
                                     lets.stream()
                                             .filter(isInterface ? PSI_IMPL_PREDICATE : PSI_INTF_PREDICATE)
                                             .findFirst()
@@ -74,7 +74,7 @@ public class ORLineMarkerProvider extends RelatedItemLineMarkerProvider {
                                 });
             } else if (parent instanceof PsiExternal) {
                 String externalQName = ((PsiExternalImpl) parent).getQualifiedName();
-                Collection<PsiExternal> elements = ExternalFqnIndex.getElements(externalQName.hashCode(), project, scope);
+                Collection<PsiExternal> elements = ExternalFqnIndex.getElements(externalQName, project, scope);
                 elements.stream()
                         .filter(isInterface ? PSI_IMPL_PREDICATE : PSI_INTF_PREDICATE)
                         .findFirst()
@@ -83,7 +83,7 @@ public class ORLineMarkerProvider extends RelatedItemLineMarkerProvider {
                         );
             } else if (parent instanceof PsiValImpl) {
                 String valQName = ((PsiValImpl) parent).getQualifiedName();
-                Collection<PsiLet> elements = LetFqnIndex.getElements(valQName.hashCode(), project, scope);
+                Collection<PsiLet> elements = LetFqnIndex.getElements(valQName, project, scope);
                 elements.stream()
                         .filter(PSI_IMPL_PREDICATE)
                         .findFirst()
@@ -93,7 +93,7 @@ public class ORLineMarkerProvider extends RelatedItemLineMarkerProvider {
             } else {
                 if (parent instanceof PsiType) {
                     String valQName = ((PsiTypeImpl) parent).getQualifiedName();
-                    Collection<PsiType> elements = TypeFqnIndex.getElements(valQName.hashCode(), project, scope);
+                    Collection<PsiType> elements = TypeFqnIndex.getElements(valQName, project, scope);
                     elements.stream()
                             .filter(isInterface ? PSI_IMPL_PREDICATE : PSI_INTF_PREDICATE)
                             .findFirst()
@@ -102,7 +102,7 @@ public class ORLineMarkerProvider extends RelatedItemLineMarkerProvider {
                             );
                 } else if (parent instanceof PsiKlass) {
                     String qName = ((PsiKlassImpl) parent).getQualifiedName();
-                    Collection<PsiKlass> elements = KlassFqnIndex.getElements(qName.hashCode(), project, scope);
+                    Collection<PsiKlass> elements = KlassFqnIndex.getElements(qName, project, scope);
                     elements.stream()
                             .filter(isInterface ? PSI_IMPL_PREDICATE : PSI_INTF_PREDICATE)
                             .findFirst()
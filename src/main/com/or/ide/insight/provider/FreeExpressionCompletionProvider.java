@@ -4,10 +4,15 @@ import com.intellij.codeInsight.completion.CompletionResultSet;
 import com.intellij.codeInsight.completion.InsertionContext;
 import com.intellij.codeInsight.lookup.LookupElement;
 import com.intellij.codeInsight.lookup.LookupElementBuilder;
+import com.intellij.codeInsight.lookup.LookupElementPresentation;
+import com.intellij.codeInsight.lookup.LookupElementRenderer;
+import com.intellij.navigation.ItemPresentation;
+import com.intellij.navigation.PsiElementNavigationItem;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.EditorModificationUtil;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.pom.Navigatable;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
@@ -15,11 +20,15 @@ import com.intellij.psi.PsiNamedElement;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.util.PsiIconUtil;
 import com.ocaml.icons.OCamlIcons;
+import com.ocaml.ide.files.FileHelper;
 import com.or.ide.IconProvider;
 import com.or.ide.files.FileBase;
 import com.or.ide.search.FileModuleIndexService;
+import com.or.ide.search.ModuleExports;
+import com.or.ide.search.index.ModuleExportsIndex;
 import com.or.ide.search.index.ModuleFqnIndex;
 import com.or.ide.search.index.ModuleTopLevelIndex;
+import com.or.lang.core.ORUtil;
 import com.or.lang.core.psi.*;
 import com.or.lang.core.signature.PsiSignatureUtil;
 import com.or.lang.utils.ORLanguageProperties;
@@ -27,7 +36,9 @@ import com.or.lang.utils.QNameFinder;
 import com.or.utils.Log;
 import com.or.utils.Platform;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import javax.swing.*;
 import java.util.Collection;
 import java.util.Set;
 
@@ -36,6 +47,17 @@ import static com.or.lang.core.psi.ExpressionScope.pub;
 
 public class FreeExpressionCompletionProvider {
     private static final Log LOG = Log.create("insight.free");
+    // same icon as the elements read from the PSI, computed in the background
+    private static final LookupElementRenderer<LookupElement> EXPORT_RENDERER = new LookupElementRenderer<>() {
+        @Override
+        public void renderElement(LookupElement element, LookupElementPresentation presentation) {
+            PsiElement psiElement = element.getPsiElement();
+            Icon icon = psiElement == null ? null : PsiIconUtil.getProvidersIcon(psiElement, 0);
+            if (icon != null) {
+                presentation.setIcon(icon);
+            }
+        }
+    };
 
     private FreeExpressionCompletionProvider() {
     }
@@ -77,26 +99,33 @@ public class FreeExpressionCompletionProvider {
         LOG.debug("potential paths", paths);
 
         // Add paths (opens and local opens for example)
+        // The export tables are read from the index, the PSI is only loaded for modules that depend on other modules
+        ORLanguageProperties language = ORLanguageProperties.cast(element.getLanguage());
         for (String path : paths) {
-            Collection<PsiModule> modulesFromQn = ModuleFqnIndex.getElements(path, project, scope);
-            for (PsiModule module : modulesFromQn) {
-                if (module.getContainingFile().equals(containingFile)) {
+            ModuleExportsIndex.processExports(path, scope, (file, exports) -> {
+                if (isContainingFile(file, containingFile)) {
                     // if the module is already the containing file, we do nothing,
                     // local expressions will be added after
-                    continue;
+                    return true;
                 }
 
-                Collection<PsiNamedElement> expressions = module.getExpressions(pub, NO_FILTER);
-                for (PsiNamedElement expression : expressions) {
-                    if (!(expression instanceof PsiAnnotation)) {
+                if (exports.isComplete()) {
+                    for (ModuleExports.Export export : exports.getExports()) {
+                        // the element is only searched for the documentation, the navigation, and the icon
                         resultSet.addElement(
-                                LookupElementBuilder.create(expression)
-                                        .withTypeText(PsiSignatureUtil.getSignature(expression, ORLanguageProperties.cast(element.getLanguage())))
-                                        .withIcon(PsiIconUtil.getProvidersIcon(expression, 0))
-                                        .withInsertHandler(FreeExpressionCompletionProvider::insertExpression));
+                                LookupElementBuilder.create(new ExportElement(project, file, path, export.getName()), export.getName())
+                                        .withTypeText(export.getSignature())
+                                        .withIcon(getExportIcon(export.getKind()))
+                                        .withExpensiveRenderer(EXPORT_RENDERER)
+                                        .withInsertHandler(export.getKind() == ModuleExports.Kind.FUNCTION ? FreeExpressionCompletionProvider::insertFunction : null));
+                    }
+                } else {
+                    for (PsiModule module : ModuleFqnIndex.getElements(path, project, GlobalSearchScope.fileScope(project, file))) {
+                        addModuleExpressions(module, language, resultSet);
                     }
                 }
-            }
+                return true;
+            });
         }
 
         // Add all local expressions
@@ -141,6 +170,52 @@ public class FreeExpressionCompletionProvider {
         }
     }
 
+    private static void addModuleExpressions(@NotNull PsiModule module, @Nullable ORLanguageProperties language, @NotNull CompletionResultSet resultSet) {
+        Collection<PsiNamedElement> expressions = module.getExpressions(pub, NO_FILTER);
+        for (PsiNamedElement expression : expressions) {
+            if (!(expression instanceof PsiAnnotation)) {
+                resultSet.addElement(
+                        LookupElementBuilder.create(expression)
+                                .withTypeText(PsiSignatureUtil.getSignature(expression, language))
+                                .withIcon(PsiIconUtil.getProvidersIcon(expression, 0))
+                                .withInsertHandler(FreeExpressionCompletionProvider::insertExpression));
+            }
+        }
+    }
+
+    private static boolean isContainingFile(@NotNull VirtualFile file, @NotNull FileBase containingFile) {
+        // same as FileBase.equals
+        return containingFile.getModuleName().equals(ORUtil.fileNameToModuleName(file.getName()))
+                && containingFile.isInterface() == FileHelper.isInterface(file.getFileType());
+    }
+
+    private static @Nullable Icon getExportIcon(@NotNull ModuleExports.Kind kind) {
+        switch (kind) {
+            case EXCEPTION:
+                return OCamlIcons.Nodes.EXCEPTION;
+            case MODULE:
+                return OCamlIcons.Nodes.INNER_MODULE;
+            case FUNCTOR:
+                return OCamlIcons.Nodes.FUNCTOR;
+            case TYPE:
+                return OCamlIcons.Nodes.TYPE;
+            case VARIANT:
+                return OCamlIcons.Nodes.VARIANT;
+            case RECORD:
+                return OCamlIcons.Nodes.OBJECT;
+            case FUNCTION:
+                return OCamlIcons.Nodes.FUNCTION;
+            case LET:
+                return OCamlIcons.Nodes.LET;
+            case EXTERNAL:
+                return OCamlIcons.Nodes.EXTERNAL;
+            case VAL:
+                return OCamlIcons.Nodes.VAL;
+            default:
+                return null;
+        }
+    }
+
     private static void expandType(@NotNull PsiType type, @NotNull CompletionResultSet resultSet) {
         Collection<PsiVariantDeclaration> variants = type.getVariants();
         if (!variants.isEmpty()) {
@@ -159,11 +234,85 @@ public class FreeExpressionCompletionProvider {
         if (psiElement instanceof PsiLet) {
             PsiLet let = (PsiLet) psiElement;
             if (let.isFunction()) {
-                insertionContext.setAddCompletionChar(false);
-                Editor editor = insertionContext.getEditor();
-                EditorModificationUtil.insertStringAtCaret(editor, "()");
-                editor.getCaretModel().moveToOffset(editor.getCaretModel().getOffset() - 1);
+                insertFunction(insertionContext, element);
+            }
+        }
+    }
+
+    private static void insertFunction(
+            @NotNull InsertionContext insertionContext, @NotNull LookupElement element) {
+        insertionContext.setAddCompletionChar(false);
+        Editor editor = insertionContext.getEditor();
+        EditorModificationUtil.insertStringAtCaret(editor, "()");
+        editor.getCaretModel().moveToOffset(editor.getCaretModel().getOffset() - 1);
+    }
+
+    /**
+     * An expression read from the export index. The PSI element is searched in the module
+     * when it's needed, see {@link LookupElement#getPsiElement()}.
+     */
+    static final class ExportElement implements PsiElementNavigationItem {
+        private final @NotNull Project myProject;
+        private final @NotNull VirtualFile myFile;
+        private final @NotNull String myModulePath;
+        private final @NotNull String myName;
+
+        ExportElement(@NotNull Project project, @NotNull VirtualFile file, @NotNull String modulePath, @NotNull String name) {
+            myProject = project;
+            myFile = file;
+            myModulePath = modulePath;
+            myName = name;
+        }
+
+        @Override
+        public @Nullable PsiElement getTargetElement() {
+            if (myProject.isDisposed() || !myFile.isValid()) {
+                return null;
+            }
+            for (PsiModule module : ModuleFqnIndex.getElements(myModulePath, myProject, GlobalSearchScope.fileScope(myProject, myFile))) {
+                for (PsiNamedElement expression : module.getExpressions(pub, NO_FILTER)) {
+                    if (myName.equals(expression.getName())) {
+                        return expression;
+                    }
+                    if (expression instanceof PsiType) {
+                        for (PsiVariantDeclaration variant : ((PsiType) expression).getVariants()) {
+                            if (myName.equals(variant.getName())) {
+                                return variant;
+                            }
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public @NotNull String getName() {
+            return myName;
+        }
+
+        @Override
+        public @Nullable ItemPresentation getPresentation() {
+            return null;
+        }
+
+        @Override
+        public void navigate(boolean requestFocus) {
+            PsiElement target = getTargetElement();
+            if (target instanceof Navigatable) {
+                ((Navigatable) target).navigate(requestFocus);
             }
         }
+
+        @Override
+        public boolean canNavigate() {
+            PsiElement target = getTargetElement();
+            return target instanceof Navigatable && ((Navigatable) target).canNavigate();
+        }
+
+        @Override
+        public boolean canNavigateToSource() {
+            return canNavigate();
+        }
     }
 }
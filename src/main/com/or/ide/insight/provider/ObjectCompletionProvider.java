@@ -109,7 +109,7 @@ public class ObjectCompletionProvider {
             Project project = let.getProject();
             String signatureName = "." + letSignature.getText();
             for (String path : paths) {
-                Collection<PsiType> types = TypeFqnIndex.getElements((path + signatureName).hashCode(), project, scope);
+                Collection<PsiType> types = TypeFqnIndex.getElements(path + signatureName, project, scope);
                 if (!types.isEmpty()) {
                     PsiType type = types.iterator().next();
                     LOG.debug("  -> Found", type);
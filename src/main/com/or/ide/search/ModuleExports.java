@@ -0,0 +1,96 @@
+package com.or.ide.search;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Public export table of a module, as stored in the ModuleExportsIndex.
+ * A module is incomplete when some of its exports come from another module (alias, include, functor call):
+ * they can't be read when indexing a single file, and the PSI of the module must be used instead.
+ */
+public class ModuleExports {
+    public static final ModuleExports INCOMPLETE = new ModuleExports(false, Collections.emptyList());
+
+    private final boolean m_isComplete;
+    private final List<Export> m_exports;
+
+    public ModuleExports(boolean isComplete, @NotNull List<Export> exports) {
+        m_isComplete = isComplete;
+        m_exports = exports;
+    }
+
+    public boolean isComplete() {
+        return m_isComplete;
+    }
+
+    public @NotNull List<Export> getExports() {
+        return m_exports;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ModuleExports that = (ModuleExports) o;
+        return m_isComplete == that.m_isComplete && m_exports.equals(that.m_exports);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(m_isComplete, m_exports);
+    }
+
+    @Override
+    public String toString() {
+        return "ModuleExports{complete=" + m_isComplete + ", exports=" + m_exports.size() + "}";
+    }
+
+    public enum Kind {
+        LET, FUNCTION, RECORD, VAL, EXTERNAL, TYPE, EXCEPTION, MODULE, FUNCTOR, VARIANT, OTHER
+    }
+
+    public static class Export {
+        private final String m_name;
+        private final Kind m_kind;
+        private final String m_signature;
+
+        public Export(@NotNull String name, @NotNull Kind kind, @NotNull String signature) {
+            m_name = name;
+            m_kind = kind;
+            m_signature = signature;
+        }
+
+        public @NotNull String getName() {
+            return m_name;
+        }
+
+        public @NotNull Kind getKind() {
+            return m_kind;
+        }
+
+        public @NotNull String getSignature() {
+            return m_signature;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Export export = (Export) o;
+            return m_name.equals(export.m_name) && m_kind == export.m_kind && m_signature.equals(export.m_signature);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(m_name, m_kind, m_signature);
+        }
+
+        @Override
+        public String toString() {
+            return m_name + ":" + m_kind;
+        }
+    }
+}
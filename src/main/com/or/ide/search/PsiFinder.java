@@ -1,14 +1,17 @@
 package com.or.ide.search;
 
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectRootModificationTracker;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
 import com.intellij.psi.search.GlobalSearchScope;
-import com.intellij.psi.stubs.StubIndex;
-import com.intellij.util.CommonProcessors;
-import com.or.ide.search.index.IndexKeys;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
 import com.or.ide.search.index.ModuleFqnIndex;
+import com.or.ide.search.index.ModuleIndex;
 import com.or.lang.core.ORFileType;
-import com.or.lang.core.ORUtil;
 import com.or.lang.core.psi.PsiInnerModule;
 import com.or.lang.core.psi.PsiModule;
 import com.or.lang.core.psi.PsiQualifiedPathElement;
@@ -21,7 +24,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static com.or.lang.core.ORFileType.*;
@@ -29,91 +32,149 @@ import static com.or.lang.core.ORFileType.*;
 public final class PsiFinder {
     private static final Log LOG = Log.create("finder");
     private final Project myProject;
+    // name -> modules, read from the index once per PSI modification
+    private final CachedValue<Map<String, PartitionedModules>> myCachedModulesByName;
+    // module qname -> end of its alias chain
+    private final CachedValue<Map<String, Set<PsiModule>>> myCachedModuleAliases;
 
     public PsiFinder(@NotNull Project project) {
         myProject = project;
+        CachedValuesManager cachedValuesManager = CachedValuesManager.getManager(project);
+        myCachedModulesByName = cachedValuesManager.createCachedValue(() ->
+                CachedValueProvider.Result.create(new ConcurrentHashMap<>(), PsiModificationTracker.MODIFICATION_COUNT, ProjectRootModificationTracker.getInstance(project)));
+        myCachedModuleAliases = cachedValuesManager.createCachedValue(() ->
+                CachedValueProvider.Result.create(new ConcurrentHashMap<>(), PsiModificationTracker.MODIFICATION_COUNT, ProjectRootModificationTracker.getInstance(project)));
     }
 
+    /**
+     * Find the module of a path, from the modules visible at root.
+     * The local aliases are followed, and if an alias leads to another file, the module is read from the index.
+     */
     public @Nullable PsiQualifiedPathElement findModuleBack(@Nullable PsiElement root, @Nullable String path) {
-        if (root != null && path != null) {
-            PsiElement prev = ORUtil.prevSibling(root);
-            PsiElement item = prev == null ? root.getParent() : prev;
-            while (item != null) {
-                if (item instanceof PsiInnerModule) {
-                    PsiInnerModule module = (PsiInnerModule) item;
-                    String name = module.getModuleName();
-                    String alias = module.getAlias();
-                    if (alias != null) {
-                        // This is a local module alias, we'll need to replace it in final paths
-                        Pattern compile = Pattern.compile("(\\.?)(" + name + ")(\\.?)");
-                        String replace = "$1" + alias + "$3";
-                        path = compile.matcher(path).replaceFirst(replace);
-                    } else if (path.equals(name)) {
-                        return module;
-                    } else if (name != null && path.startsWith(name)) {
-                        // Follow module from top to bottom to find real module
-                        path = path.substring(name.length() + 1);
-                        return findModuleForward(module.getBody(), path);
+        if (root == null || path == null) {
+            return null;
+        }
+        String[] names = path.split("\\.");
+        String[][] resolvedPath = new String[1][];
+        PsiQualifiedPathElement module = findModuleBack(root, names, new HashSet<>(), resolvedPath);
+        if (module == null && resolvedPath[0] != names) {
+            // module M = Other, M.Sub -> Other.Sub, which is not in this file
+            Set<PsiModule> modules = findModulesFromQn(Joiner.join(".", resolvedPath[0]), true, interfaceOrImplementation);
+            return modules.isEmpty() ? null : modules.iterator().next();
+        }
+        return module;
+    }
+
+    /**
+     * Same as {@link #findModuleBack(PsiElement, String)}, but return the path of the module.
+     * The aliases are followed inside the file only, so the path can be stored in a stub:
+     * if the module is not in the file, this is the path with the local aliases replaced
+     * (module M = Other, M.Sub -> Other.Sub).
+     */
+    public @Nullable String[] resolvePathBack(@Nullable PsiElement root, @Nullable String path) {
+        if (root == null || path == null) {
+            return null;
+        }
+        String[][] resolvedPath = new String[1][];
+        PsiQualifiedPathElement module = findModuleBack(root, path.split("\\."), new HashSet<>(), resolvedPath);
+        String qname = module == null ? null : module.getQualifiedName();
+        return qname == null ? resolvedPath[0] : qname.split("\\.");
+    }
+
+    private @Nullable PsiQualifiedPathElement findModuleBack(@NotNull PsiElement root, @NotNull String[] names,
+                                                            @NotNull Set<PsiInnerModule> visiting, @NotNull String[][] resolvedPath) {
+        resolvedPath[0] = names;
+
+        // Visit the modules defined before root, then the enclosing modules, from the closest to the farthest
+        PsiElement child = root;
+        PsiElement scope = root.getParent();
+        while (scope != null && !(child instanceof PsiFile)) {
+            ScopeModule[] scopeModules = getScopeModules(scope);
+            int childOffset = child.getStartOffsetInParent();
+            for (int i = scopeModules.length - 1; i >= 0; i--) {
+                ScopeModule scopeModule = scopeModules[i];
+                if (scopeModule.myOffset < childOffset && scopeModule.myName.equals(names[0])) {
+                    if (scopeModule.myAliasPath == null) {
+                        return names.length == 1 ? scopeModule.myModule : findModuleForward(scopeModule.myModule.getBody(), names, 1, visiting, resolvedPath);
                     }
+                    // This is a local module alias, we'll need to replace it in final paths
+                    names = scopeModule.replaceAlias(names);
+                    resolvedPath[0] = names;
+                }
+            }
+
+            if (scope instanceof PsiInnerModule) {
+                PsiInnerModule module = (PsiInnerModule) scope;
+                if (module.getAlias() == null && names[0].equals(module.getModuleName())) {
+                    return names.length == 1 ? module : findModuleForward(module.getBody(), names, 1, visiting, resolvedPath);
                 }
-                prev = ORUtil.prevSibling(item);
-                item = prev == null ? item.getParent() : prev;
             }
+
+            child = scope;
+            scope = scope.getParent();
         }
 
         return null;
     }
 
-    private @Nullable PsiQualifiedPathElement findModuleForward(@Nullable PsiElement root, @Nullable String path) {
-        if (root != null && path != null) {
-            PsiElement next = ORUtil.nextSibling(root);
-            PsiElement item = next == null ? root.getFirstChild() : next;
-            while (item != null) {
-                if (item instanceof PsiInnerModule) {
-                    PsiInnerModule module = (PsiInnerModule) item;
-                    String name = module.getModuleName();
-                    if (path.equals(name)) {
-                        return module;
-                    } else if (name != null && path.startsWith(name)) {
-                        // Go deeper
-                        path = path.substring(name.length() + 1);
-                        return findModuleForward(module.getBody(), path);
+    private @Nullable PsiQualifiedPathElement findModuleForward(@Nullable PsiElement body, @NotNull String[] names, int index,
+                                                               @NotNull Set<PsiInnerModule> visiting, @NotNull String[][] resolvedPath) {
+        if (body != null) {
+            // Follow module from top to bottom to find real module
+            for (ScopeModule scopeModule : getScopeModules(body)) {
+                if (scopeModule.myName.equals(names[index])) {
+                    if (scopeModule.myAliasPath == null) {
+                        return index == names.length - 1 ? scopeModule.myModule : findModuleForward(scopeModule.myModule.getBody(), names, index + 1, visiting, resolvedPath);
+                    }
+                    // module Sub = A.B, the rest of the path is resolved from the alias: A.B.x
+                    if (!visiting.add(scopeModule.myModule)) {
+                        LOG.info("Cyclic module alias found: " + scopeModule.myModule.getQualifiedName());
+                        return null;
                     }
+                    String[] aliasedNames = scopeModule.replaceAlias(Arrays.copyOfRange(names, index, names.length));
+                    return findModuleBack(scopeModule.myModule, aliasedNames, visiting, resolvedPath);
                 }
-                next = ORUtil.nextSibling(item);
-                item = next == null ? item.getFirstChild() : next;
             }
         }
 
         return null;
     }
 
+    private static @NotNull ScopeModule[] getScopeModules(@NotNull PsiElement scope) {
+        return CachedValuesManager.getCachedValue(scope, () -> {
+            List<ScopeModule> scopeModules = new ArrayList<>();
+            for (PsiElement child = scope.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child instanceof PsiInnerModule) {
+                    PsiInnerModule module = (PsiInnerModule) child;
+                    String name = module.getModuleName();
+                    if (name != null) {
+                        String alias = module.getAlias();
+                        scopeModules.add(new ScopeModule(module, name, alias == null ? null : alias.split("\\."), child.getStartOffsetInParent()));
+                    }
+                }
+            }
+            return CachedValueProvider.Result.create(scopeModules.toArray(new ScopeModule[0]), PsiModificationTracker.MODIFICATION_COUNT);
+        });
+    }
+
     public @NotNull Set<PsiModule> findModulesbyName(@NotNull String name, @NotNull ORFileType fileType) {
         Set<PsiModule> result = new HashSet<>();
 
-        StubIndex.getInstance().processAllKeys(IndexKeys.MODULES,
-                myProject,
-                CommonProcessors.processAll(
-                        moduleName -> {
-                            if (name.equals(moduleName)) {
-                                PartitionedModules partitionedModules =
-                                        new PartitionedModules();
-
-                                if (fileType == interfaceOrImplementation
-                                        || fileType == both
-                                        || fileType == interfaceOnly) {
-                                    result.addAll(partitionedModules.getInterfaces());
-                                }
-
-                                if (fileType != interfaceOnly) {
-                                    if (fileType == both
-                                            || fileType == implementationOnly
-                                            || !partitionedModules.hasInterfaces()) {
-                                        result.addAll(partitionedModules.getImplementations());
-                                    }
-                                }
-                            }
-                        }));
+        PartitionedModules partitionedModules = getModulesByName(name);
+
+        if (fileType == interfaceOrImplementation
+                || fileType == both
+                || fileType == interfaceOnly) {
+            result.addAll(partitionedModules.getInterfaces());
+        }
+
+        if (fileType != interfaceOnly) {
+            if (fileType == both
+                    || fileType == implementationOnly
+                    || !partitionedModules.hasInterfaces()) {
+                result.addAll(partitionedModules.getImplementations());
+            }
+        }
 
         if (LOG.isTraceEnabled()) {
             LOG.trace(
@@ -129,12 +190,40 @@ public final class PsiFinder {
         return result;
     }
 
+    private @NotNull PartitionedModules getModulesByName(@NotNull String name) {
+        Map<String, PartitionedModules> modulesByName = myCachedModulesByName.getValue();
+        PartitionedModules partitionedModules = modulesByName.get(name);
+        if (partitionedModules == null) {
+            partitionedModules = new PartitionedModules(ModuleIndex.getElements(name, myProject, GlobalSearchScope.allScope(myProject)));
+            modulesByName.put(name, partitionedModules);
+        }
+        return partitionedModules;
+    }
+
+    /**
+     * Follow the alias chain of a module (A = B, B = C, ...) and return the last modules of the chain.
+     * Chains are resolved once per PSI modification, a cyclic alias stops the resolution.
+     */
     @NotNull
     public Set<PsiModule> findModuleAlias(@Nullable String qname) {
         if (qname == null) {
             return Collections.emptySet();
         }
 
+        return resolveModuleAlias(qname, myCachedModuleAliases.getValue(), new LinkedHashSet<>());
+    }
+
+    private @NotNull Set<PsiModule> resolveModuleAlias(@NotNull String qname, @NotNull Map<String, Set<PsiModule>> moduleAliases, @NotNull Set<String> visiting) {
+        Set<PsiModule> cachedResult = moduleAliases.get(qname);
+        if (cachedResult != null) {
+            return cachedResult;
+        }
+
+        if (!visiting.add(qname)) {
+            LOG.info("Cyclic module alias found: " + qname + " [" + Joiner.join(" -> ", visiting) + "]");
+            return Collections.emptySet();
+        }
+
         Set<PsiModule> result = new HashSet<>();
 
         GlobalSearchScope scope = GlobalSearchScope.allScope(myProject);
@@ -143,20 +232,23 @@ public final class PsiFinder {
             String alias = module.getAlias();
             if (alias != null) {
                 Collection<PsiModule> aliasModules = ModuleFqnIndex.getElements(alias, myProject, scope);
-                if (!aliasModules.isEmpty()) {
-                    for (PsiModule aliasModule : aliasModules) {
-                        Set<PsiModule> nextModuleAlias = findModuleAlias(aliasModule.getQualifiedName());
-                        if (nextModuleAlias.isEmpty()) {
-                            result.add(aliasModule);
-                        } else {
-                            result.addAll(nextModuleAlias);
-                        }
+                for (PsiModule aliasModule : aliasModules) {
+                    String aliasQName = aliasModule.getQualifiedName();
+                    Set<PsiModule> nextModuleAlias = aliasQName == null ? Collections.emptySet() : resolveModuleAlias(aliasQName, moduleAliases, visiting);
+                    if (nextModuleAlias.isEmpty()) {
+                        result.add(aliasModule);
+                    } else {
+                        result.addAll(nextModuleAlias);
                     }
                 }
             }
         }
 
-        return result;
+        visiting.remove(qname);
+
+        Set<PsiModule> unmodifiableResult = Collections.unmodifiableSet(result);
+        moduleAliases.put(qname, unmodifiableResult);
+        return unmodifiableResult;
     }
 
     @NotNull
@@ -241,11 +333,47 @@ public final class PsiFinder {
         return result;
     }
 
+    /**
+     * Module declared directly in a scope (file, module body), with its alias path split once.
+     */
+    static final class ScopeModule {
+        final @NotNull PsiInnerModule myModule;
+        final @NotNull String myName;
+        final @Nullable String[] myAliasPath;
+        final int myOffset;
+
+        ScopeModule(@NotNull PsiInnerModule module, @NotNull String name, @Nullable String[] aliasPath, int offset) {
+            myModule = module;
+            myName = name;
+            myAliasPath = aliasPath;
+            myOffset = offset;
+        }
+
+        // module N = A.B, path N.x -> A.B.x
+        @NotNull String[] replaceAlias(@NotNull String[] path) {
+            if (myAliasPath == null || !myName.equals(path[0])) {
+                return path;
+            }
+
+            String[] newPath = new String[myAliasPath.length + path.length - 1];
+            System.arraycopy(myAliasPath, 0, newPath, 0, myAliasPath.length);
+            System.arraycopy(path, 1, newPath, myAliasPath.length, path.length - 1);
+            return newPath;
+        }
+    }
+
     static class PartitionedModules {
         private final List<PsiModule> m_interfaces = new ArrayList<>();
         private final List<PsiModule> m_implementations = new ArrayList<>();
 
-        PartitionedModules() {
+        PartitionedModules(@NotNull Collection<PsiModule> modules) {
+            for (PsiModule module : modules) {
+                if (module.isInterface()) {
+                    m_interfaces.add(module);
+                } else {
+                    m_implementations.add(module);
+                }
+            }
         }
 
         public boolean hasInterfaces() {
@@ -1,12 +1,12 @@
 package com.or.ide.search.index;
 
-import com.intellij.psi.stubs.IntStubIndexExtension;
+import com.intellij.psi.stubs.StringStubIndexExtension;
 import com.intellij.psi.stubs.StubIndexKey;
 import com.or.lang.core.psi.PsiException;
 import com.or.lang.core.stub.type.PsiExceptionStubElementType;
 import org.jetbrains.annotations.NotNull;
 
-public class ExceptionFqnIndex extends IntStubIndexExtension<PsiException> {
+public class ExceptionFqnIndex extends StringStubIndexExtension<PsiException> {
 
     @Override
     public int getVersion() {
@@ -14,7 +14,7 @@ public class ExceptionFqnIndex extends IntStubIndexExtension<PsiException> {
     }
 
     @Override
-    public @NotNull StubIndexKey<Integer, PsiException> getKey() {
+    public @NotNull StubIndexKey<String, PsiException> getKey() {
         return IndexKeys.EXCEPTIONS_FQN;
     }
 }
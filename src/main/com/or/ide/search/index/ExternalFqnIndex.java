@@ -2,7 +2,7 @@ package com.or.ide.search.index;
 
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.search.GlobalSearchScope;
-import com.intellij.psi.stubs.IntStubIndexExtension;
+import com.intellij.psi.stubs.StringStubIndexExtension;
 import com.intellij.psi.stubs.StubIndex;
 import com.intellij.psi.stubs.StubIndexKey;
 import com.or.lang.core.psi.PsiExternal;
@@ -12,8 +12,8 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
 
-public class ExternalFqnIndex extends IntStubIndexExtension<PsiExternal> {
-    public static @NotNull Collection<PsiExternal> getElements(int key, @NotNull Project project, @Nullable GlobalSearchScope scope) {
+public class ExternalFqnIndex extends StringStubIndexExtension<PsiExternal> {
+    public static @NotNull Collection<PsiExternal> getElements(@NotNull String key, @NotNull Project project, @Nullable GlobalSearchScope scope) {
         return StubIndex.getElements(IndexKeys.EXTERNALS_FQN, key, project, scope, PsiExternal.class);
     }
 
@@ -23,7 +23,7 @@ public class ExternalFqnIndex extends IntStubIndexExtension<PsiExternal> {
     }
 
     @Override
-    public @NotNull StubIndexKey<Integer, PsiExternal> getKey() {
+    public @NotNull StubIndexKey<String, PsiExternal> getKey() {
         return IndexKeys.EXTERNALS_FQN;
     }
 }
@@ -1,5 +1,7 @@
 package com.or.ide.search.index;
 
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.util.indexing.*;
 import com.intellij.util.io.DataExternalizer;
 import com.intellij.util.io.EnumeratorStringDescriptor;
@@ -16,6 +18,7 @@ import org.jetbrains.annotations.NotNull;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -27,6 +30,13 @@ public class FileModuleIndex extends FileBasedIndexExtension<String, FileModuleD
 
     private static final DataExternalizer<FileModuleData> EXTERNALIZER = new FileModuleDataExternalizer();
 
+    /**
+     * @return the files (implementation and interface) of a file module
+     */
+    public static @NotNull Collection<VirtualFile> getContainingFiles(@NotNull String moduleName, @NotNull GlobalSearchScope scope) {
+        return FileBasedIndex.getInstance().getContainingFiles(NAME, moduleName, scope);
+    }
+
     @Override
     public @NotNull ID<String, FileModuleData> getName() {
         return NAME;
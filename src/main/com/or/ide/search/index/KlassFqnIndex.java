@@ -2,7 +2,7 @@ package com.or.ide.search.index;
 
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.search.GlobalSearchScope;
-import com.intellij.psi.stubs.IntStubIndexExtension;
+import com.intellij.psi.stubs.StringStubIndexExtension;
 import com.intellij.psi.stubs.StubIndex;
 import com.intellij.psi.stubs.StubIndexKey;
 import com.or.lang.core.psi.PsiKlass;
@@ -12,8 +12,8 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
 
-public class KlassFqnIndex extends IntStubIndexExtension<PsiKlass> {
-    public static @NotNull Collection<PsiKlass> getElements(int key, @NotNull Project project, @Nullable GlobalSearchScope scope) {
+public class KlassFqnIndex extends StringStubIndexExtension<PsiKlass> {
+    public static @NotNull Collection<PsiKlass> getElements(@NotNull String key, @NotNull Project project, @Nullable GlobalSearchScope scope) {
         return StubIndex.getElements(IndexKeys.CLASSES_FQN, key, project, scope, PsiKlass.class);
     }
 
@@ -23,7 +23,7 @@ public class KlassFqnIndex extends IntStubIndexExtension<PsiKlass> {
     }
 
     @Override
-    public @NotNull StubIndexKey<Integer, PsiKlass> getKey() {
+    public @NotNull StubIndexKey<String, PsiKlass> getKey() {
         return IndexKeys.CLASSES_FQN;
     }
 }
@@ -0,0 +1,74 @@
+package com.or.ide.search.index;
+
+import com.or.lang.core.psi.*;
+import com.or.lang.core.psi.impl.PsiObjectField;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Definitions found for a lower symbol, partitioned by kind.
+ * The elements are stub based, the AST is only loaded if needed.
+ */
+public class LowerSymbolDefinitions {
+    private final List<PsiType> myTypes = new ArrayList<>();
+    private final List<PsiVal> myVals = new ArrayList<>();
+    private final List<PsiLet> myLets = new ArrayList<>();
+    private final List<PsiExternal> myExternals = new ArrayList<>();
+    private final List<PsiRecordField> myRecordFields = new ArrayList<>();
+    private final List<PsiObjectField> myObjectFields = new ArrayList<>();
+    private final List<PsiParameter> myParameters = new ArrayList<>();
+
+    void add(@NotNull PsiQualifiedPathElement element) {
+        if (element instanceof PsiType) {
+            myTypes.add((PsiType) element);
+        } else if (element instanceof PsiVal) {
+            myVals.add((PsiVal) element);
+        } else if (element instanceof PsiLet) {
+            myLets.add((PsiLet) element);
+        } else if (element instanceof PsiExternal) {
+            myExternals.add((PsiExternal) element);
+        } else if (element instanceof PsiRecordField) {
+            myRecordFields.add((PsiRecordField) element);
+        } else if (element instanceof PsiObjectField) {
+            myObjectFields.add((PsiObjectField) element);
+        } else if (element instanceof PsiParameter) {
+            myParameters.add((PsiParameter) element);
+        }
+    }
+
+    public @NotNull List<PsiType> getTypes() {
+        return myTypes;
+    }
+
+    public @NotNull List<PsiVal> getVals() {
+        return myVals;
+    }
+
+    public @NotNull List<PsiLet> getLets() {
+        return myLets;
+    }
+
+    public @NotNull List<PsiExternal> getExternals() {
+        return myExternals;
+    }
+
+    public @NotNull List<PsiRecordField> getRecordFields() {
+        return myRecordFields;
+    }
+
+    public @NotNull List<PsiObjectField> getObjectFields() {
+        return myObjectFields;
+    }
+
+    public @NotNull List<PsiParameter> getParameters() {
+        return myParameters;
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return "types=" + myTypes.size() + ", vals=" + myVals.size() + ", lets=" + myLets.size() +
+                ", externals=" + myExternals.size() + ", fieds=" + (myRecordFields.size() + myObjectFields.size()) + ", params=" + myParameters.size();
+    }
+}
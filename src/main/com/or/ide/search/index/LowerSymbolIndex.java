@@ -0,0 +1,38 @@
+package com.or.ide.search.index;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.stubs.StringStubIndexExtension;
+import com.intellij.psi.stubs.StubIndex;
+import com.intellij.psi.stubs.StubIndexKey;
+import com.or.lang.core.psi.PsiQualifiedPathElement;
+import com.or.lang.core.stub.type.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * All the definitions that a lower symbol can reference, in a single index.
+ * Used to resolve a lower symbol with only one query, instead of one per kind of definition.
+ */
+public class LowerSymbolIndex extends StringStubIndexExtension<PsiQualifiedPathElement> {
+    public static @NotNull LowerSymbolDefinitions getDefinitions(@NotNull String key, @NotNull Project project, @Nullable GlobalSearchScope scope) {
+        LowerSymbolDefinitions definitions = new LowerSymbolDefinitions();
+        StubIndex.getInstance().processElements(IndexKeys.LOWER_SYMBOLS, key, project, scope, PsiQualifiedPathElement.class, element -> {
+            definitions.add(element);
+            return true;
+        });
+        return definitions;
+    }
+
+    @Override
+    public int getVersion() {
+        return super.getVersion() + PsiTypeStubElementType.VERSION + PsiValStubElementType.VERSION + PsiLetStubElementType.VERSION
+                + PsiExternalStubElementType.VERSION + PsiRecordFieldStubElementType.VERSION + PsiObjectFieldStubElementType.VERSION
+                + PsiParameterStubElementType.VERSION;
+    }
+
+    @Override
+    public @NotNull StubIndexKey<String, PsiQualifiedPathElement> getKey() {
+        return IndexKeys.LOWER_SYMBOLS;
+    }
+}
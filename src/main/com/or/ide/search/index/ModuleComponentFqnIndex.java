@@ -1,12 +1,12 @@
 package com.or.ide.search.index;
 
-import com.intellij.psi.stubs.IntStubIndexExtension;
+import com.intellij.psi.stubs.StringStubIndexExtension;
 import com.intellij.psi.stubs.StubIndexKey;
 import com.or.lang.core.psi.PsiModule;
 import com.or.lang.core.stub.type.PsiModuleStubElementType;
 import org.jetbrains.annotations.NotNull;
 
-public class ModuleComponentFqnIndex extends IntStubIndexExtension<PsiModule> {
+public class ModuleComponentFqnIndex extends StringStubIndexExtension<PsiModule> {
 
     @Override
     public int getVersion() {
@@ -14,7 +14,7 @@ public class ModuleComponentFqnIndex extends IntStubIndexExtension<PsiModule> {
     }
 
     @Override
-    public @NotNull StubIndexKey<Integer, PsiModule> getKey() {
+    public @NotNull StubIndexKey<String, PsiModule> getKey() {
         return IndexKeys.MODULES_COMP_FQN;
     }
 }
@@ -0,0 +1,229 @@
+package com.or.ide.search.index;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiNamedElement;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.indexing.*;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.KeyDescriptor;
+import com.ocaml.ide.files.OCamlFileType;
+import com.ocaml.ide.files.OCamlInterfaceFileType;
+import com.or.ide.files.FileBase;
+import com.or.ide.search.ModuleExports;
+import com.or.lang.core.psi.*;
+import com.or.lang.core.psi.impl.PsiDirective;
+import com.or.lang.core.psi.impl.PsiFakeModule;
+import com.or.lang.core.signature.PsiSignatureUtil;
+import com.or.lang.utils.ORLanguageProperties;
+import com.or.utils.Log;
+import com.or.utils.Platform;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Public export table of each module (file modules and inner modules), keyed by the qualified name of the module.
+ * Names, kinds and signatures are read when the file is indexed, completion can use them without loading the PSI.
+ */
+public class ModuleExportsIndex extends FileBasedIndexExtension<String, ModuleExports> {
+
+    private static final ID<String, ModuleExports> NAME = ID.create("reason.module.exports");
+    private static final int VERSION = 2;
+    private static final Log LOG = Log.create("index.exports");
+
+    private static final DataExternalizer<ModuleExports> EXTERNALIZER = new ModuleExportsExternalizer();
+    private static final ModuleExports.Kind[] KINDS = ModuleExports.Kind.values();
+
+    public static void processExports(@NotNull String qname, @NotNull GlobalSearchScope scope, @NotNull FileBasedIndex.ValueProcessor<ModuleExports> processor) {
+        FileBasedIndex.getInstance().processValues(NAME, qname, null, processor, scope);
+    }
+
+    @Override
+    public @NotNull ID<String, ModuleExports> getName() {
+        return NAME;
+    }
+
+    @NotNull
+    @Override
+    public KeyDescriptor<String> getKeyDescriptor() {
+        return EnumeratorStringDescriptor.INSTANCE;
+    }
+
+    @NotNull
+    @Override
+    public DataIndexer<String, ModuleExports, FileContent> getIndexer() {
+        return inputData -> {
+            Map<String, ModuleExports> map = new HashMap<>();
+            FileBase psiFile = (FileBase) inputData.getPsiFile();
+            ORLanguageProperties lang = ORLanguageProperties.cast(psiFile.getLanguage());
+
+            map.put(psiFile.getModuleName(), readFileExports(psiFile, lang));
+
+            for (PsiModule module : PsiTreeUtil.findChildrenOfType(psiFile, PsiModule.class)) {
+                if (module instanceof PsiFakeModule) {
+                    continue;
+                }
+
+                String qname = module.getQualifiedName();
+                if (qname != null) {
+                    // Same qualified name found twice in the file: let the PSI decide
+                    ModuleExports exports = map.containsKey(qname) ? ModuleExports.INCOMPLETE : readModuleExports(module, lang);
+                    map.put(qname, exports);
+                }
+            }
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("indexing " + Platform.getRelativePathToModule(psiFile) + ": " + map.size() + " modules");
+            }
+
+            return map;
+        };
+    }
+
+    @NotNull
+    @Override
+    public DataExternalizer<ModuleExports> getValueExternalizer() {
+        return EXTERNALIZER;
+    }
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+
+    @NotNull
+    @Override
+    public FileBasedIndex.InputFilter getInputFilter() {
+        return new DefaultFileTypeSpecificInputFilter(OCamlFileType.INSTANCE, OCamlInterfaceFileType.INSTANCE);
+    }
+
+    @Override
+    public boolean dependsOnFileContent() {
+        return true;
+    }
+
+    // Same elements as PsiFileHelper.getExpressions(file, pub, NO_FILTER)
+    private static @NotNull ModuleExports readFileExports(@NotNull FileBase file, @Nullable ORLanguageProperties lang) {
+        List<ModuleExports.Export> exports = new ArrayList<>();
+        boolean isComplete = readSiblingExports(file.getFirstChild(), lang, exports);
+        return new ModuleExports(isComplete, exports);
+    }
+
+    private static boolean readSiblingExports(@Nullable PsiElement element, @Nullable ORLanguageProperties lang, @NotNull List<ModuleExports.Export> exports) {
+        boolean isComplete = true;
+
+        while (element != null) {
+            if (element instanceof PsiInclude) {
+                isComplete = false;
+            }
+
+            if (element instanceof PsiDirective) {
+                isComplete &= readSiblingExports(element.getFirstChild(), lang, exports);
+            } else if (element instanceof PsiNamedElement
+                    && !(element instanceof PsiFakeModule)
+                    && !(element instanceof PsiLet && ((PsiLet) element).isPrivate())) {
+                addExport((PsiNamedElement) element, lang, exports);
+            }
+
+            element = element.getNextSibling();
+        }
+
+        return isComplete;
+    }
+
+    // Same elements as PsiInnerModule.getExpressions(pub, NO_FILTER), without resolving other modules
+    private static @NotNull ModuleExports readModuleExports(@NotNull PsiModule module, @Nullable ORLanguageProperties lang) {
+        if (!(module instanceof PsiInnerModule)) {
+            // functors have no expressions
+            return new ModuleExports(true, Collections.emptyList());
+        }
+        if (module.getAlias() != null) {
+            return ModuleExports.INCOMPLETE;
+        }
+
+        PsiElement container = module.getModuleType();
+        if (container == null) {
+            container = module.getBody();
+        }
+        if (container == null) {
+            return module.getFunctorCall() == null ? new ModuleExports(true, Collections.emptyList()) : ModuleExports.INCOMPLETE;
+        }
+
+        List<ModuleExports.Export> exports = new ArrayList<>();
+        PsiElement element = container.getFirstChild();
+        while (element != null) {
+            if (element instanceof PsiNamedElement) {
+                addExport((PsiNamedElement) element, lang, exports);
+            }
+            element = element.getNextSibling();
+        }
+
+        return new ModuleExports(true, exports);
+    }
+
+    private static void addExport(@NotNull PsiNamedElement element, @Nullable ORLanguageProperties lang, @NotNull List<ModuleExports.Export> exports) {
+        String name = element.getName();
+        if (name != null && !(element instanceof PsiAnnotation)) {
+            exports.add(new ModuleExports.Export(name, getKind(element), PsiSignatureUtil.getSignature(element, lang)));
+        }
+    }
+
+    private static @NotNull ModuleExports.Kind getKind(@NotNull PsiElement element) {
+        if (element instanceof PsiException) {
+            return ModuleExports.Kind.EXCEPTION;
+        } else if (element instanceof PsiInnerModule) {
+            return ModuleExports.Kind.MODULE;
+        } else if (element instanceof PsiFunctor) {
+            return ModuleExports.Kind.FUNCTOR;
+        } else if (element instanceof PsiType) {
+            return ModuleExports.Kind.TYPE;
+        } else if (element instanceof PsiVariantDeclaration) {
+            return ModuleExports.Kind.VARIANT;
+        } else if (element instanceof PsiLet) {
+            PsiLet let = (PsiLet) element;
+            return let.isRecord() ? ModuleExports.Kind.RECORD : (let.isFunction() ? ModuleExports.Kind.FUNCTION : ModuleExports.Kind.LET);
+        } else if (element instanceof PsiExternal) {
+            return ModuleExports.Kind.EXTERNAL;
+        } else if (element instanceof PsiVal) {
+            return ModuleExports.Kind.VAL;
+        }
+        return ModuleExports.Kind.OTHER;
+    }
+
+    static final class ModuleExportsExternalizer implements DataExternalizer<ModuleExports> {
+        @Override
+        public void save(@NotNull DataOutput out, @NotNull ModuleExports value) throws IOException {
+            out.writeBoolean(value.isComplete());
+            List<ModuleExports.Export> exports = value.getExports();
+            out.writeInt(exports.size());
+            for (ModuleExports.Export export : exports) {
+                IOUtil.writeUTF(out, export.getName());
+                out.writeByte(export.getKind().ordinal());
+                // a signature may be longer than the 64 KB of writeUTF
+                IOUtil.writeUTF(out, export.getSignature());
+            }
+        }
+
+        @NotNull
+        @Override
+        public ModuleExports read(@NotNull DataInput in) throws IOException {
+            boolean isComplete = in.readBoolean();
+            int size = in.readInt();
+            List<ModuleExports.Export> exports = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                String name = IOUtil.readUTF(in);
+                ModuleExports.Kind kind = KINDS[in.readByte()];
+                String signature = IOUtil.readUTF(in);
+                exports.add(new ModuleExports.Export(name, kind, signature));
+            }
+            return new ModuleExports(isComplete, exports);
+        }
+    }
+}
@@ -1,12 +1,12 @@
 package com.or.ide.search.index;
 
-import com.intellij.psi.stubs.IntStubIndexExtension;
+import com.intellij.psi.stubs.StringStubIndexExtension;
 import com.intellij.psi.stubs.StubIndexKey;
 import com.or.lang.core.psi.PsiParameter;
 import com.or.lang.core.stub.type.PsiParameterStubElementType;
 import org.jetbrains.annotations.NotNull;
 
-public class ParameterFqnIndex extends IntStubIndexExtension<PsiParameter> {
+public class ParameterFqnIndex extends StringStubIndexExtension<PsiParameter> {
 
     @Override
     public int getVersion() {
@@ -14,7 +14,7 @@ public class ParameterFqnIndex extends IntStubIndexExtension<PsiParameter> {
     }
 
     @Override
-    public @NotNull StubIndexKey<Integer, PsiParameter> getKey() {
+    public @NotNull StubIndexKey<String, PsiParameter> getKey() {
         return IndexKeys.PARAMETERS_FQN;
     }
 }
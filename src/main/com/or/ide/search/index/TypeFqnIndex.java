@@ -2,7 +2,7 @@ package com.or.ide.search.index;
 
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.search.GlobalSearchScope;
-import com.intellij.psi.stubs.IntStubIndexExtension;
+import com.intellij.psi.stubs.StringStubIndexExtension;
 import com.intellij.psi.stubs.StubIndex;
 import com.intellij.psi.stubs.StubIndexKey;
 import com.or.lang.core.psi.PsiType;
@@ -12,8 +12,8 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
 
-public class TypeFqnIndex extends IntStubIndexExtension<PsiType> {
-    public static @NotNull Collection<PsiType> getElements(int key, @NotNull Project project, @Nullable GlobalSearchScope scope) {
+public class TypeFqnIndex extends StringStubIndexExtension<PsiType> {
+    public static @NotNull Collection<PsiType> getElements(@NotNull String key, @NotNull Project project, @Nullable GlobalSearchScope scope) {
         return StubIndex.getElements(IndexKeys.TYPES_FQN, key, project, scope, PsiType.class);
     }
 
@@ -23,7 +23,7 @@ public class TypeFqnIndex extends IntStubIndexExtension<PsiType> {
     }
 
     @Override
-    public @NotNull StubIndexKey<Integer, PsiType> getKey() {
+    public @NotNull StubIndexKey<String, PsiType> getKey() {
         return IndexKeys.TYPES_FQN;
     }
 }
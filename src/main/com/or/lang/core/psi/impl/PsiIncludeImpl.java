@@ -10,7 +10,6 @@ import com.ocaml.icons.OCamlIcons;
 import com.or.ide.search.PsiFinder;
 import com.or.lang.core.ORUtil;
 import com.or.lang.core.psi.PsiInclude;
-import com.or.lang.core.psi.PsiQualifiedPathElement;
 import com.or.lang.core.psi.PsiUpperSymbol;
 import com.or.lang.core.stub.PsiIncludeStub;
 import org.jetbrains.annotations.NotNull;
@@ -60,10 +59,7 @@ public class PsiIncludeImpl extends PsiTokenStub<PsiInclude, PsiIncludeStub> imp
         // Iterate over previous elements, can't use references here because it needs to work during indexing
         String includePath = getIncludePath();
         PsiFinder psiFinder = getProject().getService(PsiFinder.class);
-        PsiQualifiedPathElement resolvedElement = psiFinder.findModuleBack(this, includePath);
-
-        String path = resolvedElement == null ? includePath : resolvedElement.getQualifiedName();
-        return path == null ? null : path.split("\\.");
+        return psiFinder.resolvePathBack(this, includePath);
     }
 
     // deprecate ?
@@ -161,12 +161,9 @@ public class PsiInnerModuleImpl extends PsiTokenStub<PsiModule, PsiModuleStub> i
         String alias = getAlias();
         if (alias != null) {
             // Open alias and getExpressions on alias
-            Set<PsiModule> modulesByName = psiFinder.findModulesbyName(alias, interfaceOrImplementation);
-            if (!modulesByName.isEmpty()) {
-                PsiModule moduleAlias = modulesByName.iterator().next();
-                if (moduleAlias != null) {
-                    result = moduleAlias.getExpressions(eScope, filter);
-                }
+            PsiModule moduleAlias = findAliasedModule(psiFinder, alias);
+            if (moduleAlias != null) {
+                result = moduleAlias.getExpressions(eScope, filter);
             }
         } else {
             PsiModuleType moduleType = getModuleType();
@@ -230,6 +227,30 @@ public class PsiInnerModuleImpl extends PsiTokenStub<PsiModule, PsiModuleStub> i
         return result;
     }
 
+    /**
+     * The module of an alias is never an alias, the alias chains are followed using
+     * {@link PsiFinder#findModuleAlias(String)}, which stops on cyclic aliases
+     * (module A = B, module B = A). The name of the alias may also find this module
+     * (module String = String).
+     */
+    private @Nullable PsiModule findAliasedModule(@NotNull PsiFinder psiFinder, @NotNull String alias) {
+        for (PsiModule module : psiFinder.findModulesbyName(alias, interfaceOrImplementation)) {
+            if (module == this) {
+                continue;
+            }
+            if (module.getAlias() == null) {
+                return module;
+            }
+            for (PsiModule aliasedModule : psiFinder.findModuleAlias(module.getQualifiedName())) {
+                if (aliasedModule != this && aliasedModule.getAlias() == null) {
+                    return aliasedModule;
+                }
+            }
+        }
+
+        return null;
+    }
+
     private boolean isModuleTypeOf() {
         PsiElement nextSibling = ORUtil.nextSibling(getFirstChild());
         PsiElement nextNextSibling = ORUtil.nextSibling(nextSibling);
@@ -1,13 +1,17 @@
 package com.or.lang.core.psi.reference;
 
 import com.intellij.psi.PsiElement;
+import com.or.ide.files.FileBase;
 import com.or.lang.core.psi.PsiInclude;
+import com.or.lang.core.psi.PsiLowerSymbol;
+import com.or.lang.core.psi.PsiUpperSymbol;
 import com.or.utils.Joiner;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 class CodeInstruction {
@@ -31,6 +35,29 @@ class CodeInstruction {
         return myValues == null ? null : myValues[0];
     }
 
+    /**
+     * Append what the resolution engine is using from this instruction: the kind of source
+     * (it changes how the weights are updated), the values and the alternate values.
+     */
+    void appendFingerprint(@NotNull StringBuilder sb) {
+        if (mySource instanceof FileBase) {
+            sb.append('F');
+        } else if (mySource instanceof PsiLowerSymbol) {
+            sb.append('L');
+        } else if (mySource instanceof PsiUpperSymbol) {
+            sb.append('U');
+        } else {
+            sb.append('I');
+        }
+        if (myValues != null) {
+            sb.append(Joiner.join(".", myValues));
+        }
+        if (myAlternateValues != null) {
+            sb.append('(').append(Joiner.join(",", new TreeSet<>(myAlternateValues))).append(')');
+        }
+        sb.append('/');
+    }
+
     @Override
     public @NotNull String toString() {
         return "[" + mySource.getClass().getSimpleName() + ":" + Joiner.join("/", myValues) +
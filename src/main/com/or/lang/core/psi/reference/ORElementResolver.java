@@ -2,27 +2,28 @@ package com.or.lang.core.psi.reference;
 
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.Pair;
-import com.intellij.openapi.util.text.NaturalComparator;
+import com.intellij.openapi.roots.ProjectRootModificationTracker;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
 import com.intellij.psi.search.GlobalSearchScope;
-import com.intellij.psi.stubs.StubIndex;
 import com.intellij.psi.util.CachedValue;
 import com.intellij.psi.util.CachedValueProvider;
 import com.intellij.psi.util.CachedValuesManager;
 import com.intellij.psi.util.PsiModificationTracker;
-import com.intellij.util.ArrayUtil;
-import com.or.ide.search.index.IndexKeys;
 import com.or.ide.search.index.ModuleAliasedIndex;
-import com.or.lang.core.psi.PsiInclude;
 import com.or.lang.core.psi.PsiModule;
 import com.or.lang.core.psi.PsiQualifiedPathElement;
 import com.or.lang.core.psi.PsiVariantDeclaration;
 import com.or.utils.Joiner;
 import com.or.utils.Log;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
 import static java.util.Collections.emptyList;
@@ -31,72 +32,119 @@ public class ORElementResolver implements Disposable {
     private static final Log LOG = Log.create("ref");
 
     private final Project myProject;
-    private final CachedValue<Map<String, Set<String[]>>> myCachedIncludeDependencies;
+    private final ORIncludeGraph myIncludeGraph;
+    // key: file, instructions fingerprint and reference name, see #createCacheKey
+    private final CachedValue<Map<String, CachedResolution>> myCachedResolutions;
+    private final AtomicLong myCacheHits = new AtomicLong();
+    private final AtomicLong myCacheMisses = new AtomicLong();
+    // path segments, released when the PSI or the roots change
+    private final CachedValue<ORPathSymbols> myCachedSymbols;
 
     ORElementResolver(@NotNull Project project) {
         myProject = project;
         CachedValuesManager cachedValuesManager = CachedValuesManager.getManager(project);
 
-        myCachedIncludeDependencies = cachedValuesManager.createCachedValue(() -> {
-            Map<String, Set<Pair<String, String[]>>> topIncludedModules = new HashMap<>();
-            Map<String, Set<String[]>> dependencies = new HashMap<>();
-
-            StubIndex stubIndex = StubIndex.getInstance();
-            stubIndex.processAllKeys(IndexKeys.INCLUDES, myProject, includePath -> {
-                stubIndex.processElements(IndexKeys.INCLUDES, includePath, myProject, null, PsiInclude.class, psiInclude -> {
-                    String[] includeQPath = psiInclude.getQualifiedPath();
-                    String[] resolvedPath = psiInclude.getResolvedPath();
-                    if (Arrays.equals(resolvedPath, includeQPath)) {
-                        // !? coq ?
-                        LOG.info("Equality with recursion found: " + psiInclude + " [" + Joiner.join(".", includeQPath) + "] in " + psiInclude.getContainingFile().getVirtualFile());
-                        return true;
-                    }
+        myCachedResolutions = cachedValuesManager.createCachedValue(() ->
+                CachedValueProvider.Result.create(new ConcurrentHashMap<>(), PsiModificationTracker.MODIFICATION_COUNT));
 
-                    Set<String[]> depPaths = dependencies.computeIfAbsent(includePath, k -> new TreeSet<>(ArrayUtil::lexicographicCompare));
-                    depPaths.add(includeQPath);
+        myCachedSymbols = cachedValuesManager.createCachedValue(() ->
+                CachedValueProvider.Result.create(new ORPathSymbols(), PsiModificationTracker.MODIFICATION_COUNT, ProjectRootModificationTracker.getInstance(project)));
 
-                    String includeModuleName = includeQPath[0];
+        myIncludeGraph = new ORIncludeGraph(project);
+        PsiManager.getInstance(project).addPsiTreeChangeListener(myIncludeGraph.createListener(), this);
+    }
 
-                    Set<Pair<String, String[]>> alternatePaths = topIncludedModules.get(resolvedPath[0]);
-                    if (alternatePaths != null) {
-                        for (Pair<String, String[]> alternatePath : alternatePaths) {
-                            String alternateKey = alternatePath.first;
-                            Set<String[]> alternateDependencies = dependencies.get(alternateKey);
-                            String[] newPath = new String[alternatePath.second.length];
-                            System.arraycopy(alternatePath.second, 0, newPath, 0, alternatePath.second.length);
-                            newPath[0] = includeModuleName;
-                            alternateDependencies.add(newPath);
-                        }
-                    }
+    @NotNull Resolutions getComputation() {
+        return new ResolutionsImpl(getSymbols());
+    }
 
-                    Set<Pair<String, String[]>> topIncludes = topIncludedModules.computeIfAbsent(includeModuleName, k -> new TreeSet<>((o1, o2) -> {
-                        int compare = NaturalComparator.INSTANCE.compare(o1.first, o2.first);
-                        if (compare != 0) {
-                            return compare;
-                        }
+    /**
+     * The symbol table of the current version of the PSI. A computation keeps the same table until it's done.
+     */
+    @NotNull ORPathSymbols getSymbols() {
+        return myCachedSymbols.getValue();
+    }
 
-                        return ArrayUtil.lexicographicCompare(o1.second, o2.second);
-                    }));
-                    topIncludes.add(Pair.create(includePath, includeQPath));
+    /**
+     * Two references with the same name, in the same version of a file, and with the same
+     * resolved instructions will always be resolved to the same elements.
+     */
+    static @NotNull String createCacheKey(@NotNull PsiFile file, @NotNull Collection<CodeInstruction> instructions, @NotNull String name) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(file.getViewProvider().getVirtualFile().getPath()).append('@').append(file.getModificationStamp()).append('|');
+        for (CodeInstruction instruction : instructions) {
+            instruction.appendFingerprint(sb);
+        }
+        return sb.append('|').append(name).toString();
+    }
 
-                    return true;
-                });
-                return true;
-            });
+    @Nullable CachedResolution getCachedResolution(@NotNull String key) {
+        CachedResolution resolution = myCachedResolutions.getValue().get(key);
+        if (resolution != null && resolution.isValid()) {
+            myCacheHits.incrementAndGet();
+            return resolution;
+        }
+        myCacheMisses.incrementAndGet();
+        return null;
+    }
+
+    void cacheResolution(@NotNull String key, @NotNull CachedResolution resolution) {
+        myCachedResolutions.getValue().put(key, resolution);
+    }
 
-            return CachedValueProvider.Result.create(dependencies, PsiModificationTracker.MODIFICATION_COUNT);
-        });
+    /**
+     * Qualified paths of all the modules that are an alias of the given top module (ex: module L = Core.List for Core),
+     * the same table is shared by all the resolutions until the next modification.
+     */
+    @NotNull int[][] getAliasPaths(@NotNull ORPathSymbols symbols, @NotNull String topModuleName) {
+        Map<String, int[][]> aliasPathsPerModule = symbols.myAliasPaths;
+        int[][] aliasPaths = aliasPathsPerModule.get(topModuleName);
+        if (aliasPaths == null) {
+            Collection<PsiModule> aliases = ModuleAliasedIndex.getElements(topModuleName, myProject, GlobalSearchScope.allScope(myProject));
+            aliasPaths = new int[aliases.size()][];
+            int i = 0;
+            for (PsiModule alias : aliases) {
+                aliasPaths[i++] = symbols.intern(alias.getQualifiedNameAsPath());
+            }
+            int[][] previous = aliasPathsPerModule.putIfAbsent(topModuleName, aliasPaths);
+            if (previous != null) {
+                aliasPaths = previous;
+            }
+        }
+        return aliasPaths;
+    }
 
+    long getCacheHits() {
+        return myCacheHits.get();
     }
 
-    @NotNull Resolutions getComputation() {
-        return new ResolutionsImpl();
+    long getCacheMisses() {
+        return myCacheMisses.get();
     }
 
     @Override
     public void dispose() {
     }
 
+    static final class CachedResolution {
+        final @NotNull List<PsiQualifiedPathElement> myResolvedElements;
+        final @NotNull List<PsiQualifiedPathElement> myAllElements;
+
+        CachedResolution(@NotNull Resolutions resolutions) {
+            myResolvedElements = List.copyOf(resolutions.resolvedElements());
+            myAllElements = List.copyOf(resolutions.resolveAllElements());
+        }
+
+        boolean isValid() {
+            for (PsiQualifiedPathElement element : myAllElements) {
+                if (!element.isValid()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     interface Resolutions {
         void add(@NotNull Collection<? extends PsiQualifiedPathElement> elements, boolean includeSource);
 
@@ -121,10 +169,35 @@ public class ORElementResolver implements Disposable {
 
     /*
      Note: performance is extremely important
+     Path segments are interned (see ORPathSymbols), paths are int arrays, and weights are stored per level in an int array.
      */
     private class ResolutionsImpl implements Resolutions {
-        private final Map<Integer, Integer> myWeightPerLevel = new HashMap<>();
-        private final Map<String, Map<String, Resolution>> myResolutionsPerTopModule = new HashMap<>();
+        private final ORPathSymbols mySymbols;
+        private int[] myWeightPerLevel = new int[8]; // 0 means no weight
+        private final Int2ObjectMap<Map<String, Resolution>> myResolutionsPerTopModule = new Int2ObjectOpenHashMap<>();
+
+        ResolutionsImpl(@NotNull ORPathSymbols symbols) {
+            mySymbols = symbols;
+        }
+
+        private @NotNull Map<String, Resolution> getResolutionsPerQName(int topModule) {
+            Map<String, Resolution> resolutionsPerQName = myResolutionsPerTopModule.get(topModule);
+            if (resolutionsPerQName == null) {
+                resolutionsPerQName = new HashMap<>();
+                myResolutionsPerTopModule.put(topModule, resolutionsPerQName);
+            }
+            return resolutionsPerQName;
+        }
+
+        private int getLevelWeight(int level) {
+            return level < myWeightPerLevel.length ? myWeightPerLevel[level] : 0;
+        }
+
+        private void ensureLevelCapacity(int level) {
+            if (myWeightPerLevel.length <= level) {
+                myWeightPerLevel = Arrays.copyOf(myWeightPerLevel, Math.max(level + 1, myWeightPerLevel.length * 2));
+            }
+        }
 
         @Override
         public void add(@NotNull Collection<? extends PsiQualifiedPathElement> elements, boolean includeSource) {
@@ -139,64 +212,51 @@ public class ORElementResolver implements Disposable {
                 }
 
                 String sourceQName = source.getQualifiedName();
-                String[] sourcePath = source.getPath();
-                if (sourcePath != null) {
+                String[] sourceNames = source.getPath();
+                if (sourceNames != null) {
+                    int sourceLength = sourceNames.length;
                     // Add source name to the path in case of modules
                     if (includeSource) {
-                        String[] newPath = new String[sourcePath.length + 1];
-                        System.arraycopy(sourcePath, 0, newPath, 0, sourcePath.length);
-                        newPath[sourcePath.length] = sourceName;
-                        sourcePath = newPath;
+                        sourceLength++;
                     }
                     // Remove type name in case of variants
                     if (source instanceof PsiVariantDeclaration) {
-                        String[] newPath = new String[sourcePath.length - 1];
-                        System.arraycopy(sourcePath, 0, newPath, 0, newPath.length);
-                        sourcePath = newPath;
+                        sourceLength--;
                     }
 
-                    String first = sourcePath[0];
-                    Map<String, Resolution> resolutionsPerQName = myResolutionsPerTopModule.get(first);
-                    //noinspection Java8MapApi
-                    if (resolutionsPerQName == null) {
-                        resolutionsPerQName = new HashMap<>();
-                        myResolutionsPerTopModule.put(first, resolutionsPerQName);
+                    int[] sourcePath = new int[sourceLength];
+                    for (int i = 0; i < sourceLength; i++) {
+                        sourcePath[i] = mySymbols.intern(i < sourceNames.length ? sourceNames[i] : sourceName);
                     }
 
                     // try to find duplicates
+                    Map<String, Resolution> resolutionsPerQName = getResolutionsPerQName(sourcePath[0]);
                     Resolution resolution = resolutionsPerQName.get(sourceQName);
                     if (resolution == null) {
-                        resolutionsPerQName.put(sourceQName, new Resolution(sourcePath, source));
+                        resolutionsPerQName.put(sourceQName, new Resolution(mySymbols, sourcePath, source));
                     } else {
                         resolution.myElements.add(source);
                     }
                 } else if (includeSource) {
-                    Map<String, Resolution> resolutionsPerQName = myResolutionsPerTopModule.get(sourceName);
-                    //noinspection Java8MapApi
-                    if (resolutionsPerQName == null) {
-                        resolutionsPerQName = new HashMap<>();
-                        myResolutionsPerTopModule.put(sourceName, resolutionsPerQName);
-                    }
+                    int sourceId = mySymbols.intern(sourceName);
+                    Map<String, Resolution> resolutionsPerQName = getResolutionsPerQName(sourceId);
 
                     // try to find duplicates
                     Resolution resolution = resolutionsPerQName.get(sourceQName);
                     if (resolution == null) {
-                        resolutionsPerQName.put(sourceQName, new Resolution(new String[]{sourceName}, source));
+                        resolutionsPerQName.put(sourceQName, new Resolution(mySymbols, new int[]{sourceId}, source));
                     } else {
                         resolution.myElements.add(source);
                     }
                 }
             }
 
-            Project project = elements.iterator().next().getProject();
             List<Resolution> aliasResolutions = new ArrayList<>();
-            for (Map.Entry<String, Map<String, Resolution>> entry : myResolutionsPerTopModule.entrySet()) {
-                String first = entry.getKey();
+            for (Int2ObjectMap.Entry<Map<String, Resolution>> entry : myResolutionsPerTopModule.int2ObjectEntrySet()) {
+                String first = mySymbols.getName(entry.getIntKey());
                 Collection<Resolution> resolutions = entry.getValue().values();
 
-                Collection<PsiModule> aliases = ModuleAliasedIndex.getElements(first, project, GlobalSearchScope.allScope(project));
-                for (PsiModule alias : aliases) {
-                    String[] aliasPath = alias.getQualifiedNameAsPath();
+                for (int[] aliasPath : getAliasPaths(mySymbols, first)) {
                     for (Resolution resolution : resolutions) {
                         Resolution aliasResolution = Resolution.createAlternate(resolution, aliasPath);
                         aliasResolutions.add(aliasResolution);
@@ -205,13 +265,7 @@ public class ORElementResolver implements Disposable {
             }
 
             for (Resolution aliasResolution : aliasResolutions) {
-                String topModuleName = aliasResolution.getTopModuleName();
-                Map<String, Resolution> resolutionsPerQName = myResolutionsPerTopModule.get(topModuleName);
-                //noinspection Java8MapApi
-                if (resolutionsPerQName == null) {
-                    resolutionsPerQName = new HashMap<>();
-                    myResolutionsPerTopModule.put(topModuleName, resolutionsPerQName);
-                }
+                Map<String, Resolution> resolutionsPerQName = getResolutionsPerQName(aliasResolution.getTopModuleId());
 
                 PsiQualifiedPathElement aliasElement = aliasResolution.myElements.get(0);
                 String aliasQName = aliasResolution.joinPath() + (aliasElement instanceof PsiModule ? "" : "." + aliasElement.getName());
@@ -222,12 +276,11 @@ public class ORElementResolver implements Disposable {
 
         @Override
         public void addIncludesEquivalence() {
-            Map<String, Set<String[]>> cachedIncludes = myCachedIncludeDependencies.getValue();
+            Map<String, Set<String[]>> cachedIncludes = myIncludeGraph.getDependencies();
 
             List<Resolution> includeResolutions = new ArrayList<>();
 
-            for (Map.Entry<String, Map<String, Resolution>> resolutionPerNameEntry : myResolutionsPerTopModule.entrySet()) {
-                Map<String, Resolution> resolutions = resolutionPerNameEntry.getValue();
+            for (Map<String, Resolution> resolutions : myResolutionsPerTopModule.values()) {
                 for (Map.Entry<String, Resolution> resolutionEntry : resolutions.entrySet()) {
                     String key = resolutionEntry.getKey();
                     int pos = key.lastIndexOf(".");
@@ -237,13 +290,7 @@ public class ORElementResolver implements Disposable {
             }
 
             for (Resolution includeResolution : includeResolutions) {
-                String topModuleName = includeResolution.getTopModuleName();
-                Map<String, Resolution> resolutionsPerQName = myResolutionsPerTopModule.get(topModuleName);
-                //noinspection Java8MapApi
-                if (resolutionsPerQName == null) {
-                    resolutionsPerQName = new HashMap<>();
-                    myResolutionsPerTopModule.put(topModuleName, resolutionsPerQName);
-                }
+                Map<String, Resolution> resolutionsPerQName = getResolutionsPerQName(includeResolution.getTopModuleId());
 
                 PsiQualifiedPathElement includeElement = includeResolution.myElements.get(0);
                 String includeQName = includeResolution.joinPath() + (includeElement instanceof PsiModule ? "" : "." + includeElement.getName());
@@ -264,7 +311,7 @@ public class ORElementResolver implements Disposable {
                 //    A.B.C.t
                 //       A.B.C ==> A   ::   A.B.C.t => A.t
                 for (String[] includeDepPath : includeDeps) {
-                    Resolution newResolution = new Resolution(includeDepPath, resolution.myElements);
+                    Resolution newResolution = new Resolution(mySymbols, mySymbols.intern(includeDepPath), resolution.myElements);
                     result.add(newResolution);
                     String newPath = Joiner.join(".", includeDepPath);
                     if (20 < guard) {
@@ -284,8 +331,8 @@ public class ORElementResolver implements Disposable {
                     //    Core.Types.Visibility
                     //       Core ==> Css  ::   Core.Types.Visibility.t => Css.Types.Visibility.t
                     for (String[] includeDepPath : includeDeps) {
-                        String[] newPath = resolution.augmentPath(includeDepPath);
-                        Resolution newResolution = new Resolution(newPath, resolution.myElements);
+                        int[] newPath = resolution.augmentPath(mySymbols.intern(includeDepPath));
+                        Resolution newResolution = new Resolution(mySymbols, newPath, resolution.myElements);
                         result.add(newResolution);
                     }
                 }
@@ -293,48 +340,51 @@ public class ORElementResolver implements Disposable {
         }
 
         public void updateWeight(@Nullable String value, @Nullable Set<String> alternateNames) {
-            Map<Integer, Integer> newWeights = new HashMap<>();
+            // all resolutions of the same level get the same new weight, computed from the previous weights
+            int[] newWeights = null;
+            int valueId = mySymbols.find(value);
+            int[] alternateIds = mySymbols.find(alternateNames);
 
             for (Map<String, Resolution> topModuleEntry : myResolutionsPerTopModule.values()) {
                 for (Resolution resolution : topModuleEntry.values()) {
-                    String name = resolution.getCurrentName();
-                    if (name != null) {
-                        if (value == null || value.equals(name)) {
+                    int id = resolution.getCurrentId();
+                    if (id != ORPathSymbols.NONE) {
+                        if (value == null || valueId == id || ORPathSymbols.contains(alternateIds, id)) {
                             int level = resolution.myLevel;
-                            Integer weight = myWeightPerLevel.get(level);
-                            int newWeight = weight == null ? 1 : weight + 1;
+                            int newWeight = getLevelWeight(level) + 1;
                             resolution.updateCurrentWeight(newWeight);
-                            newWeights.put(level, newWeight);
-                        } else if (alternateNames != null) {
-                            for (String alternateName : alternateNames) {
-                                if (alternateName.equals(name)) {
-                                    int level = resolution.myLevel;
-                                    Integer weight = myWeightPerLevel.get(level);
-                                    int newWeight = weight == null ? 1 : weight + 1;
-                                    resolution.updateCurrentWeight(newWeight);
-                                    newWeights.put(level, newWeight);
-                                    break;
-                                }
+                            if (newWeights == null) {
+                                newWeights = myWeightPerLevel.clone();
                             }
+                            if (newWeights.length <= level) {
+                                newWeights = Arrays.copyOf(newWeights, Math.max(level + 1, newWeights.length * 2));
+                            }
+                            newWeights[level] = newWeight;
                         }
                     }
                 }
             }
 
-            myWeightPerLevel.putAll(newWeights);
+            if (newWeights != null) {
+                myWeightPerLevel = newWeights;
+            }
         }
 
         public void udpateTerminalWeight(@NotNull String value) {
+            int valueId = mySymbols.find(value);
+            if (valueId == ORPathSymbols.NONE) {
+                return;
+            }
+
             for (Map<String, Resolution> topModuleEntry : myResolutionsPerTopModule.values()) {
                 for (Resolution resolution : topModuleEntry.values()) {
-                    String name = resolution.getCurrentName();
-                    if (value.equals(name) && resolution.isLastLevel()) {
+                    if (valueId == resolution.getCurrentId() && resolution.isLastLevel()) {
                         // terminal
                         int level = resolution.myLevel;
-                        Integer weight = myWeightPerLevel.get(level);
-                        int newWeight = weight == null ? 1 : weight + 1;
+                        int newWeight = getLevelWeight(level) + 1;
                         resolution.updateCurrentWeight(newWeight);
-                        myWeightPerLevel.put(level, newWeight);
+                        ensureLevelCapacity(level);
+                        myWeightPerLevel[level] = newWeight;
                     }
                 }
             }
@@ -343,18 +393,21 @@ public class ORElementResolver implements Disposable {
         public void removeUpper() {
             for (Map<String, Resolution> topModuleEntry : myResolutionsPerTopModule.values()) {
                 topModuleEntry.values().removeIf(resolution -> {
-                    String name = resolution.getCurrentName();
-                    return name != null && Character.isUpperCase(name.charAt(0));
+                    int id = resolution.getCurrentId();
+                    return id != ORPathSymbols.NONE && Character.isUpperCase(mySymbols.getName(id).charAt(0));
                 });
             }
         }
 
         // all resolutions must be complete
         public void removeIfNotFound(@NotNull String value, @Nullable Set<String> alternateNames) {
+            int valueId = mySymbols.find(value);
+            int[] alternateIds = mySymbols.find(alternateNames);
+
             for (Map<String, Resolution> topModuleEntry : myResolutionsPerTopModule.values()) {
                 topModuleEntry.values().removeIf(resolution -> {
-                    String currentName = resolution.getCurrentName();
-                    return !value.equals(currentName) && (alternateNames == null || !alternateNames.contains(currentName));
+                    int currentId = resolution.getCurrentId();
+                    return (currentId == ORPathSymbols.NONE || valueId != currentId) && !ORPathSymbols.contains(alternateIds, currentId);
                 });
             }
         }
@@ -0,0 +1,395 @@
+package com.or.lang.core.psi.reference;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectRootModificationTracker;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.PsiTreeChangeAdapter;
+import com.intellij.psi.PsiTreeChangeEvent;
+import com.intellij.psi.stubs.StubElement;
+import com.intellij.psi.stubs.StubIndex;
+import com.intellij.util.ArrayUtil;
+import com.or.ide.files.FileBase;
+import com.or.ide.search.index.IndexKeys;
+import com.or.lang.core.psi.PsiInclude;
+import com.or.lang.core.stub.PsiIncludeStub;
+import com.or.utils.Joiner;
+import com.or.utils.Log;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Include dependencies of the project (includePath -> included paths).
+ * <p>
+ * Each file contributes its own include edges. When a file is modified, only the edges of this file
+ * are read again from the IncludeIndex, and only the dependencies produced by its removed and added
+ * edges are updated. Everything is read again from the index when the roots of the project changed.
+ * <p>
+ * The index is read outside the lock, and can be cancelled: the dependencies are only published,
+ * under the lock, once everything was read, and the files that weren't read are read again the next time.
+ * The published dependencies are never modified, they are replaced.
+ */
+class ORIncludeGraph {
+    private static final Log LOG = Log.create("ref.include");
+
+    private final Project myProject;
+    // Filled by the PSI listener, consumed when the dependencies are requested
+    private final Set<VirtualFile> myDirtyFiles = ConcurrentHashMap.newKeySet();
+    private volatile boolean myRebuildAll = true;
+    private volatile long myRootsModificationCount = -1;
+    // Orders the reads of the index: a read never replaces the edges of a more recent read
+    private final AtomicLong myReadSequence = new AtomicLong();
+    private final AtomicInteger myRebuildsInProgress = new AtomicInteger();
+    // Guarded by this
+    private Graph myGraph = new Graph(0);
+    private volatile Map<String, Set<String[]>> myDependencies = Collections.emptyMap();
+
+    ORIncludeGraph(@NotNull Project project) {
+        myProject = project;
+    }
+
+    @NotNull Map<String, Set<String[]>> getDependencies() {
+        long rootsModificationCount = ProjectRootModificationTracker.getInstance(myProject).getModificationCount();
+        if (myRebuildAll || rootsModificationCount != myRootsModificationCount) {
+            rebuild(rootsModificationCount);
+        } else if (!myDirtyFiles.isEmpty()) {
+            update();
+        }
+
+        return myDependencies;
+    }
+
+    private void rebuild(long rootsModificationCount) {
+        long sequence = myReadSequence.incrementAndGet();
+        myRebuildsInProgress.incrementAndGet();
+        // Reset first, so that the modifications made while reading the index are not lost
+        myRebuildAll = false;
+        myDirtyFiles.clear();
+        boolean done = false;
+        try {
+            Map<VirtualFile, List<IncludeEdge>> edgesPerFile = readAllEdges();
+            Graph graph = new Graph(sequence);
+            Set<String> changedPaths = new HashSet<>();
+            for (Map.Entry<VirtualFile, List<IncludeEdge>> entry : edgesPerFile.entrySet()) {
+                graph.setEdges(entry.getKey(), entry.getValue(), sequence, changedPaths);
+            }
+            Map<String, Set<String[]>> dependencies = graph.update(Collections.emptyMap(), changedPaths);
+
+            synchronized (this) {
+                // another rebuild started after this one, its result is more recent
+                if (myGraph.myBaseSequence < sequence) {
+                    myGraph = graph;
+                    myDependencies = dependencies;
+                    myRootsModificationCount = rootsModificationCount;
+                }
+            }
+            done = true;
+        } finally {
+            myRebuildsInProgress.decrementAndGet();
+            if (!done) {
+                myRebuildAll = true;
+            }
+        }
+    }
+
+    private void update() {
+        List<VirtualFile> dirtyFiles = new ArrayList<>(myDirtyFiles);
+        myDirtyFiles.removeAll(dirtyFiles);
+        long sequence = myReadSequence.incrementAndGet();
+
+        Map<VirtualFile, List<IncludeEdge>> edgesPerDirtyFile = new HashMap<>();
+        boolean done = false;
+        try {
+            for (VirtualFile file : dirtyFiles) {
+                edgesPerDirtyFile.put(file, readFileEdges(file));
+            }
+            done = true;
+        } finally {
+            if (!done) {
+                myDirtyFiles.addAll(dirtyFiles);
+            }
+        }
+
+        synchronized (this) {
+            Set<String> changedPaths = new HashSet<>();
+            for (Map.Entry<VirtualFile, List<IncludeEdge>> entry : edgesPerDirtyFile.entrySet()) {
+                myGraph.setEdges(entry.getKey(), entry.getValue(), sequence, changedPaths);
+            }
+            if (!changedPaths.isEmpty()) {
+                myDependencies = myGraph.update(myDependencies, changedPaths);
+            }
+        }
+
+        // a rebuild may have read these files before they were modified, and replace this graph
+        if (myRebuildsInProgress.get() > 0) {
+            myDirtyFiles.addAll(dirtyFiles);
+        }
+    }
+
+    @NotNull PsiTreeChangeAdapter createListener() {
+        return new PsiTreeChangeAdapter() {
+            @Override
+            public void childAdded(@NotNull PsiTreeChangeEvent event) {
+                fileChanged(event);
+            }
+
+            @Override
+            public void childRemoved(@NotNull PsiTreeChangeEvent event) {
+                fileChanged(event);
+            }
+
+            @Override
+            public void childReplaced(@NotNull PsiTreeChangeEvent event) {
+                fileChanged(event);
+            }
+
+            @Override
+            public void childrenChanged(@NotNull PsiTreeChangeEvent event) {
+                fileChanged(event);
+            }
+
+            @Override
+            public void childMoved(@NotNull PsiTreeChangeEvent event) {
+                fileChanged(event);
+            }
+
+            @Override
+            public void propertyChanged(@NotNull PsiTreeChangeEvent event) {
+                fileChanged(event);
+            }
+        };
+    }
+
+    private void fileChanged(@NotNull PsiTreeChangeEvent event) {
+        PsiFile file = event.getFile();
+        if (file == null) {
+            PsiElement element = event.getChild() == null ? event.getElement() : event.getChild();
+            if (element instanceof PsiFile) {
+                file = (PsiFile) element;
+            } else {
+                // directories, or events we can't attach to a file
+                myRebuildAll = true;
+                return;
+            }
+        }
+
+        if (file instanceof FileBase) {
+            myDirtyFiles.add(file.getViewProvider().getVirtualFile());
+        }
+    }
+
+    private @NotNull Map<VirtualFile, List<IncludeEdge>> readAllEdges() {
+        Map<VirtualFile, List<IncludeEdge>> edgesPerFile = new HashMap<>();
+
+        StubIndex stubIndex = StubIndex.getInstance();
+        stubIndex.processAllKeys(IndexKeys.INCLUDES, myProject, includePath -> {
+            stubIndex.processElements(IndexKeys.INCLUDES, includePath, myProject, null, PsiInclude.class, psiInclude -> {
+                VirtualFile file = psiInclude.getContainingFile().getViewProvider().getVirtualFile();
+                IncludeEdge edge = createEdge(includePath, psiInclude.getQualifiedPath(), psiInclude.getResolvedPath(), file);
+                if (edge != null) {
+                    edgesPerFile.computeIfAbsent(file, k -> new ArrayList<>()).add(edge);
+                }
+                return true;
+            });
+            return true;
+        });
+
+        return edgesPerFile;
+    }
+
+    private @NotNull List<IncludeEdge> readFileEdges(@NotNull VirtualFile file) {
+        if (!file.isValid()) {
+            return Collections.emptyList();
+        }
+
+        // The includes of the file, read from its stubs (same keys as the IncludeIndex)
+        PsiFile psiFile = PsiManager.getInstance(myProject).findFile(file);
+        if (!(psiFile instanceof FileBase)) {
+            return Collections.emptyList();
+        }
+
+        List<IncludeEdge> edges = new ArrayList<>();
+        for (StubElement<?> stub : ((FileBase) psiFile).calcStubTree().getPlainList()) {
+            if (stub instanceof PsiIncludeStub) {
+                PsiIncludeStub includeStub = (PsiIncludeStub) stub;
+                String[] resolvedPath = includeStub.getResolvedPath();
+                IncludeEdge edge = createEdge(Joiner.join(".", resolvedPath), includeStub.getQualifiedPath(), resolvedPath, file);
+                if (edge != null) {
+                    edges.add(edge);
+                }
+            }
+        }
+
+        return edges;
+    }
+
+    private static IncludeEdge createEdge(@NotNull String includePath, @NotNull String[] includeQPath, @NotNull String[] resolvedPath, @NotNull VirtualFile file) {
+        if (Arrays.equals(resolvedPath, includeQPath)) {
+            // !? coq ?
+            LOG.info("Equality with recursion found: include [" + Joiner.join(".", includeQPath) + "] in " + file);
+            return null;
+        }
+        return new IncludeEdge(includePath, includeQPath, resolvedPath);
+    }
+
+    /**
+     * The edges of the files, and the dependencies they produce. Each dependency is counted once per edge,
+     * or pair of edges, producing it, so that the edges of a file can be added and removed without
+     * merging the edges of the other files again.
+     * <ul>
+     *     <li>an edge (include A.B in X) produces the dependency X -> A.B</li>
+     *     <li>an edge resolved to a module included by another edge (include C, resolved to A) produces
+     *     the dependency of the other edge, with its first module replaced: X -> C.B</li>
+     * </ul>
+     */
+    private static final class Graph {
+        private final long myBaseSequence;
+        private final Map<VirtualFile, List<IncludeEdge>> myEdgesPerFile = new HashMap<>();
+        private final Map<VirtualFile, Long> mySequencePerFile = new HashMap<>();
+        // first module of the qualified path -> edges
+        private final Map<String, List<IncludeEdge>> myEdgesPerIncludedModule = new HashMap<>();
+        // first module of the resolved path -> edges
+        private final Map<String, List<IncludeEdge>> myEdgesPerResolvedModule = new HashMap<>();
+        // include path -> dependency -> number of edges producing it
+        private final Map<String, Map<String[], Integer>> myDependencyCounts = new HashMap<>();
+
+        Graph(long baseSequence) {
+            myBaseSequence = baseSequence;
+        }
+
+        /**
+         * Replace the edges of a file, if they were read after the current ones.
+         * The include paths whose dependencies may have changed are added to changedPaths.
+         */
+        void setEdges(@NotNull VirtualFile file, @NotNull List<IncludeEdge> edges, long sequence, @NotNull Set<String> changedPaths) {
+            if (sequence < mySequencePerFile.getOrDefault(file, myBaseSequence)) {
+                return;
+            }
+            mySequencePerFile.put(file, sequence);
+
+            List<IncludeEdge> previousEdges = edges.isEmpty() ? myEdgesPerFile.remove(file) : myEdgesPerFile.put(file, edges);
+            if (previousEdges == null) {
+                previousEdges = Collections.emptyList();
+            }
+            if (edges.equals(previousEdges)) {
+                return;
+            }
+
+            for (IncludeEdge edge : previousEdges) {
+                removeEdge(edge, changedPaths);
+            }
+            for (IncludeEdge edge : edges) {
+                addEdge(edge, changedPaths);
+            }
+        }
+
+        private void addEdge(@NotNull IncludeEdge edge, @NotNull Set<String> changedPaths) {
+            count(edge, changedPaths, 1);
+            myEdgesPerIncludedModule.computeIfAbsent(edge.myQualifiedPath[0], k -> new ArrayList<>()).add(edge);
+            myEdgesPerResolvedModule.computeIfAbsent(edge.myResolvedPath[0], k -> new ArrayList<>()).add(edge);
+        }
+
+        private void removeEdge(@NotNull IncludeEdge edge, @NotNull Set<String> changedPaths) {
+            // an equal edge of another file produces the same dependencies
+            removeFrom(myEdgesPerIncludedModule, edge.myQualifiedPath[0], edge);
+            removeFrom(myEdgesPerResolvedModule, edge.myResolvedPath[0], edge);
+            count(edge, changedPaths, -1);
+        }
+
+        // the edge itself is not in the tables
+        private void count(@NotNull IncludeEdge edge, @NotNull Set<String> changedPaths, int delta) {
+            count(edge.myIncludePath, edge.myQualifiedPath, delta, changedPaths);
+            for (IncludeEdge includingEdge : myEdgesPerIncludedModule.getOrDefault(edge.myResolvedPath[0], Collections.emptyList())) {
+                count(includingEdge.myIncludePath, replaceModule(includingEdge, edge), delta, changedPaths);
+            }
+            for (IncludeEdge resolvedEdge : myEdgesPerResolvedModule.getOrDefault(edge.myQualifiedPath[0], Collections.emptyList())) {
+                count(edge.myIncludePath, replaceModule(edge, resolvedEdge), delta, changedPaths);
+            }
+        }
+
+        private void count(@NotNull String includePath, @NotNull String[] dependency, int delta, @NotNull Set<String> changedPaths) {
+            Map<String[], Integer> counts = myDependencyCounts.computeIfAbsent(includePath, k -> new TreeMap<>(ArrayUtil::lexicographicCompare));
+            int count = counts.getOrDefault(dependency, 0) + delta;
+            if (count > 0) {
+                counts.put(dependency, count);
+            } else {
+                counts.remove(dependency);
+                if (counts.isEmpty()) {
+                    myDependencyCounts.remove(includePath);
+                }
+            }
+            changedPaths.add(includePath);
+        }
+
+        // the dependency of includingEdge, with its first module replaced by the one of resolvedEdge
+        private static @NotNull String[] replaceModule(@NotNull IncludeEdge includingEdge, @NotNull IncludeEdge resolvedEdge) {
+            String[] path = includingEdge.myQualifiedPath.clone();
+            path[0] = resolvedEdge.myQualifiedPath[0];
+            return path;
+        }
+
+        private static void removeFrom(@NotNull Map<String, List<IncludeEdge>> edgesPerModule, @NotNull String module, @NotNull IncludeEdge edge) {
+            List<IncludeEdge> edges = edgesPerModule.get(module);
+            if (edges != null && edges.remove(edge) && edges.isEmpty()) {
+                edgesPerModule.remove(module);
+            }
+        }
+
+        /**
+         * @return a copy of the dependencies, with the dependencies of the changed paths replaced
+         */
+        @NotNull Map<String, Set<String[]>> update(@NotNull Map<String, Set<String[]>> dependencies, @NotNull Set<String> changedPaths) {
+            Map<String, Set<String[]>> result = new HashMap<>(dependencies);
+            for (String includePath : changedPaths) {
+                Map<String[], Integer> counts = myDependencyCounts.get(includePath);
+                if (counts == null) {
+                    result.remove(includePath);
+                } else {
+                    Set<String[]> depPaths = new TreeSet<>(ArrayUtil::lexicographicCompare);
+                    depPaths.addAll(counts.keySet());
+                    result.put(includePath, Collections.unmodifiableSet(depPaths));
+                }
+            }
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Include dependencies updated: " + changedPaths.size() + " of " + result.size() + " paths, from " + myEdgesPerFile.size() + " files");
+            }
+
+            return Collections.unmodifiableMap(result);
+        }
+    }
+
+    static final class IncludeEdge {
+        final @NotNull String myIncludePath;
+        final @NotNull String[] myQualifiedPath;
+        final @NotNull String[] myResolvedPath;
+
+        IncludeEdge(@NotNull String includePath, @NotNull String[] qualifiedPath, @NotNull String[] resolvedPath) {
+            myIncludePath = includePath;
+            myQualifiedPath = qualifiedPath;
+            myResolvedPath = resolvedPath;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            IncludeEdge that = (IncludeEdge) o;
+            return myIncludePath.equals(that.myIncludePath) && Arrays.equals(myQualifiedPath, that.myQualifiedPath) && Arrays.equals(myResolvedPath, that.myResolvedPath);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = myIncludePath.hashCode();
+            result = 31 * result + Arrays.hashCode(myQualifiedPath);
+            result = 31 * result + Arrays.hashCode(myResolvedPath);
+            return result;
+        }
+    }
+}
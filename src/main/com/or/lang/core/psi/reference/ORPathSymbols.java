@@ -0,0 +1,117 @@
+package com.or.lang.core.psi.reference;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Symbol table of the path segments (module names, element names) used by the resolution engine.
+ * Paths are stored as arrays of ids, and segments are compared with ==.
+ * A table belongs to a project, and is replaced when the PSI or the roots change (see {@link ORElementResolver#getSymbols()}):
+ * ids must never be kept longer than the table they come from.
+ */
+final class ORPathSymbols {
+    static final int NONE = -1;
+    static final int[] EMPTY_PATH = new int[0];
+
+    private final Map<String, Integer> myIds = new ConcurrentHashMap<>();
+    private final Object myLock = new Object();
+    private volatile String[] myNames = new String[1024];
+    private int myCount = 0;
+    // key: top module name, value: paths of the modules aliasing it, interned in this table
+    final Map<String, int[][]> myAliasPaths = new ConcurrentHashMap<>();
+
+    int intern(@NotNull String name) {
+        Integer id = myIds.get(name);
+        if (id != null) {
+            return id;
+        }
+
+        synchronized (myLock) {
+            id = myIds.get(name);
+            if (id == null) {
+                String[] names = myNames;
+                if (myCount == names.length) {
+                    String[] newNames = new String[names.length * 2];
+                    System.arraycopy(names, 0, newNames, 0, names.length);
+                    names = newNames;
+                }
+                id = myCount++;
+                names[id] = name;
+                myNames = names;
+                myIds.put(name, id);
+            }
+            return id;
+        }
+    }
+
+    @NotNull int[] intern(@NotNull String[] path) {
+        if (path.length == 0) {
+            return EMPTY_PATH;
+        }
+
+        int[] ids = new int[path.length];
+        for (int i = 0; i < path.length; i++) {
+            ids[i] = intern(path[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * Same as {@link #intern(String)}, without creating a new id: a name that has never been seen
+     * can't be found in a path.
+     */
+    int find(@Nullable String name) {
+        if (name == null) {
+            return NONE;
+        }
+        Integer id = myIds.get(name);
+        return id == null ? NONE : id;
+    }
+
+    @Nullable int[] find(@Nullable Set<String> names) {
+        if (names == null) {
+            return null;
+        }
+
+        int[] ids = new int[names.size()];
+        int count = 0;
+        for (String name : names) {
+            int id = find(name);
+            if (id != NONE) {
+                ids[count++] = id;
+            }
+        }
+        return count == ids.length ? ids : Arrays.copyOf(ids, count);
+    }
+
+    static boolean contains(@Nullable int[] ids, int id) {
+        if (ids != null) {
+            for (int value : ids) {
+                if (value == id) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @NotNull String getName(int id) {
+        return myNames[id];
+    }
+
+    @NotNull String join(@NotNull int[] path, int from) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = from; i < path.length; i++) {
+            if (i > from) {
+                sb.append('.');
+            }
+            sb.append(getName(path[i]));
+        }
+        return sb.toString();
+    }
+}
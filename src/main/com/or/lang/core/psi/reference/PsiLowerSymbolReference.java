@@ -13,7 +13,6 @@ import com.or.lang.core.ORCodeFactory;
 import com.or.lang.core.ORUtil;
 import com.or.lang.core.psi.*;
 import com.or.lang.core.psi.impl.PsiLowerIdentifier;
-import com.or.lang.core.psi.impl.PsiObjectField;
 import com.or.utils.Joiner;
 import com.or.utils.Log;
 import com.or.utils.Platform;
@@ -75,68 +74,79 @@ public class PsiLowerSymbolReference extends ORMultiSymbolReference<PsiLowerSymb
 
         long endResolvedInstructions = System.currentTimeMillis();
 
-        // Find all elements by name and create a list of paths
+        // Same file, same instructions, same name: the resolution has already been done
         Project project = myElement.getProject();
-        ORElementResolver.Resolutions resolutions = project.getService(ORElementResolver.class).getComputation();
-        GlobalSearchScope scope = GlobalSearchScope.allScope(project);
+        ORElementResolver resolver = project.getService(ORElementResolver.class);
+        String cacheKey = ORElementResolver.createCacheKey(myElement.getContainingFile(), resolvedInstructions, myReferenceName);
+        ORElementResolver.CachedResolution cachedResolution = resolver.getCachedResolution(cacheKey);
+        boolean cacheHit = cachedResolution != null;
 
-        Collection<PsiType> types = TypeIndex.getElements(myReferenceName, project, scope);
-        Collection<PsiVal> vals = ValIndex.getElements(myReferenceName, project, scope);
-        Collection<PsiLet> lets = LetIndex.getElements(myReferenceName, project, scope);
-        Collection<PsiExternal> externals = ExternalIndex.getElements(myReferenceName, project, scope);
-        Collection<PsiRecordField> recordFields = RecordFieldIndex.getElements(myReferenceName, project, scope);
-        Collection<PsiObjectField> objectFields = ObjectFieldIndex.getElements(myReferenceName, project, scope);
-        Collection<PsiParameter> parameters = ParameterIndex.getElements(myReferenceName, project, scope);
+        long endIndexes = endResolvedInstructions;
+        long endAddResolutions = endResolvedInstructions;
+        long endIncludes = endResolvedInstructions;
+        long endUpdateResolutions = endResolvedInstructions;
 
-        if (LOG.isTraceEnabled()) {
-            LOG.trace("  indexes: types=" + types.size() + ", vals=" + vals.size() + ", lets=" + lets.size() +
-                    ", externals=" + externals.size() + ", fieds=" + (recordFields.size() + objectFields.size()) + ", params=" + parameters.size());
-        }
+        if (cachedResolution == null) {
+            // Find all elements by name and create a list of paths
+            ORElementResolver.Resolutions resolutions = resolver.getComputation();
+            GlobalSearchScope scope = GlobalSearchScope.allScope(project);
+
+            LowerSymbolDefinitions definitions = LowerSymbolIndex.getDefinitions(myReferenceName, project, scope);
+
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("  indexes: " + definitions);
+            }
+
+            endIndexes = System.currentTimeMillis();
+
+            resolutions.add(definitions.getTypes(), false);
+            resolutions.add(definitions.getVals(), false);
+            resolutions.add(definitions.getLets(), false);
+            resolutions.add(definitions.getExternals(), false);
+            resolutions.add(definitions.getRecordFields(), false);
+            resolutions.add(definitions.getObjectFields(), false);
+            resolutions.add(definitions.getParameters(), false);
+
+            endAddResolutions = System.currentTimeMillis();
 
-        long endIndexes = System.currentTimeMillis();
-
-        resolutions.add(types, false);
-        resolutions.add(vals, false);
-        resolutions.add(lets, false);
-        resolutions.add(externals, false);
-        resolutions.add(recordFields, false);
-        resolutions.add(objectFields, false);
-        resolutions.add(parameters, false);
-
-        long endAddResolutions = System.currentTimeMillis();
-
-        resolutions.addIncludesEquivalence();
-
-        long endIncludes = System.currentTimeMillis();
-
-        // Now that everything is resolved, we can use the stack of instructions to add weight to the paths
-
-        for (CodeInstruction instruction : resolvedInstructions) {
-            if (instruction.mySource instanceof FileBase) {
-                resolutions.udpateTerminalWeight(((FileBase) instruction.mySource).getModuleName());
-            } else if (instruction.mySource instanceof PsiLowerSymbol) {
-                resolutions.removeUpper();
-                resolutions.updateWeight(null, instruction.myAlternateValues);
-            } else if (instruction.mySource instanceof PsiUpperSymbol) {
-                // We're in a path, must be exact
-                String value = instruction.getFirstValue();
-                resolutions.removeIfNotFound(value, instruction.myAlternateValues);
-                resolutions.updateWeight(value, instruction.myAlternateValues);
-            } else if (instruction.myValues != null) {
-                for (String value : instruction.myValues) {
+            resolutions.addIncludesEquivalence();
+
+            endIncludes = System.currentTimeMillis();
+
+            // Now that everything is resolved, we can use the stack of instructions to add weight to the paths
+
+            for (CodeInstruction instruction : resolvedInstructions) {
+                if (instruction.mySource instanceof FileBase) {
+                    resolutions.udpateTerminalWeight(((FileBase) instruction.mySource).getModuleName());
+                } else if (instruction.mySource instanceof PsiLowerSymbol) {
+                    resolutions.removeUpper();
+                    resolutions.updateWeight(null, instruction.myAlternateValues);
+                } else if (instruction.mySource instanceof PsiUpperSymbol) {
+                    // We're in a path, must be exact
+                    String value = instruction.getFirstValue();
+                    resolutions.removeIfNotFound(value, instruction.myAlternateValues);
                     resolutions.updateWeight(value, instruction.myAlternateValues);
+                } else if (instruction.myValues != null) {
+                    for (String value : instruction.myValues) {
+                        resolutions.updateWeight(value, instruction.myAlternateValues);
+                    }
                 }
             }
-        }
 
-        long endUpdateResolutions = System.currentTimeMillis();
+            endUpdateResolutions = System.currentTimeMillis();
+
+            resolutions.removeIncomplete();
+            cachedResolution = new ORElementResolver.CachedResolution(resolutions);
+            resolver.cacheResolution(cacheKey, cachedResolution);
+        } else if (LOG.isTraceEnabled()) {
+            LOG.trace("  resolution found in cache");
+        }
 
-        resolutions.removeIncomplete();
         Collection<PsiQualifiedPathElement> sortedResult;
         if (symbol != null) {
             int max = symbol.getTextOffset();
             PsiQualifiedPathElement e = null;
-            List<PsiQualifiedPathElement> choices = resolutions.resolveAllElements();
+            List<PsiQualifiedPathElement> choices = cachedResolution.myAllElements;
             for (PsiQualifiedPathElement element : choices) {
                 if (element.getTextOffset() > max) break;
                 e = element;
@@ -146,7 +156,7 @@ public class PsiLowerSymbolReference extends ORMultiSymbolReference<PsiLowerSymb
                 sortedResult = List.of(choices.get(0));
             } else sortedResult = List.of();
         } else {
-            sortedResult = resolutions.resolvedElements();
+            sortedResult = cachedResolution.myResolvedElements;
         }
 
         if (LOG.isDebugEnabled()) {
@@ -167,6 +177,7 @@ public class PsiLowerSymbolReference extends ORMultiSymbolReference<PsiLowerSymb
         long endAll = System.currentTimeMillis();
         if (LOG_PERF.isDebugEnabled()) {
             LOG_PERF.debug("Resolution of " + myReferenceName + " in " + (endAll - startAll) + "ms => " +
+                    " cache:" + (cacheHit ? "hit" : "miss") + " (" + resolver.getCacheHits() + "/" + resolver.getCacheMisses() + ")," +
                     " i:" + (endInstructions - startAll) + "," +
                     " rI:" + (endResolvedInstructions - endInstructions) + "," +
                     " id:" + (endIndexes - endResolvedInstructions) + "," +
@@ -6,7 +6,6 @@ import com.or.ide.files.FileBase;
 import com.or.lang.core.psi.PsiLet;
 import com.or.lang.core.psi.PsiQualifiedPathElement;
 import com.or.lang.core.psi.PsiRecordField;
-import com.or.utils.Joiner;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -15,49 +14,57 @@ import java.util.List;
 
 class Resolution implements Comparable<Resolution> {
     final List<PsiQualifiedPathElement> myElements = new ArrayList<>();
-    private final String[] myPath;
+    private final ORPathSymbols mySymbols;
+    private final int[] myPath; // ids from mySymbols
     int myLevel; // reverse order
     boolean myIsComplete = false;
-    Integer[] myWeights;
-    private String[] myAlternatePath;
+    int[] myWeights; // 0 means no weight
+    private int[] myAlternatePath;
 
-    public Resolution(String [] path, @NotNull PsiQualifiedPathElement element) {
+    public Resolution(@NotNull ORPathSymbols symbols, int [] path, @NotNull PsiQualifiedPathElement element) {
+        mySymbols = symbols;
         myPath = path;
         myLevel = path == null ? -1 : myPath.length - 1;
         myElements.add(element);
     }
 
-    public Resolution(String [] path, @NotNull List<PsiQualifiedPathElement> elements) {
+    public Resolution(@NotNull ORPathSymbols symbols, int [] path, @NotNull List<PsiQualifiedPathElement> elements) {
+        mySymbols = symbols;
         myPath = path;
         myLevel = path == null ? -1 : myPath.length - 1;
         myElements.addAll(elements);
     }
 
-    public static @NotNull Resolution createAlternate(@NotNull Resolution resolution, String [] alternatePath) {
-        Resolution result = new Resolution(resolution.myPath, resolution.myElements);
+    public static @NotNull Resolution createAlternate(@NotNull Resolution resolution, int [] alternatePath) {
+        Resolution result = new Resolution(resolution.mySymbols, resolution.myPath, resolution.myElements);
         int newPathLength = alternatePath.length + resolution.myPath.length;
         result.myAlternatePath = alternatePath;
         result.myLevel = newPathLength - 2;
         return result;
     }
 
-    public @Nullable String getCurrentName() {
+    public int getCurrentId() {
         if (0 <= myLevel) {
             boolean hasAlternate = myAlternatePath != null;
             int alternateLength = hasAlternate ? myAlternatePath.length : 0;
             boolean useAlternate = myLevel < alternateLength;
             return useAlternate ? myAlternatePath[myLevel] : myPath[myLevel + (hasAlternate ? 1 - alternateLength : 0)];
         }
-        return null;
+        return ORPathSymbols.NONE;
+    }
+
+    public @Nullable String getCurrentName() {
+        int id = getCurrentId();
+        return id == ORPathSymbols.NONE ? null : mySymbols.getName(id);
     }
 
-    public @Nullable Integer getWeight(int level) {
-        return myWeights != null && 0 <= level && level < myPath.length ? myWeights[level] : null;
+    public int getWeight(int level) {
+        return myWeights != null && 0 <= level && level < myPath.length ? myWeights[level] : 0;
     }
 
     public int getFirstWeight() {
-        Integer weight = myWeights == null ? null : myWeights[myWeights.length - 1];
-        return weight == null ? Integer.MAX_VALUE : weight;
+        int weight = myWeights == null ? 0 : myWeights[myWeights.length - 1];
+        return weight == 0 ? Integer.MAX_VALUE : weight;
     }
 
     public void updateCurrentWeight(int weight) {
@@ -68,7 +75,7 @@ class Resolution implements Comparable<Resolution> {
         if (myWeights == null) {
             int alternateLength = myAlternatePath != null ? myAlternatePath.length : 0;
             int totalLength = myAlternatePath != null ? alternateLength + myPath.length - 1 : myPath.length;
-            myWeights = new Integer[totalLength];
+            myWeights = new int[totalLength];
             myLevel = totalLength - 1;
         }
 
@@ -91,20 +98,24 @@ class Resolution implements Comparable<Resolution> {
         return file instanceof FileBase && ((FileBase) file).isInterface();
     }
 
-    public String getTopModuleName() {
+    public int getTopModuleId() {
         return myAlternatePath == null ? myPath[0] : myAlternatePath[0];
     }
 
+    public @NotNull String getTopModuleName() {
+        return mySymbols.getName(getTopModuleId());
+    }
+
     @Override
     public @NotNull String toString() {
         StringBuilder sb = new StringBuilder();
         if (myPath != null) {
             for (int i = 0; i < myPath.length; i++) {
-                String item = myPath[i];
                 if (i > 0) {
                     sb.append(", ");
                 }
-                sb.append(item).append("-").append(getWeight(i));
+                int weight = getWeight(i);
+                sb.append(mySymbols.getName(myPath[i])).append("-").append(weight == 0 ? null : weight);
             }
         }
 
@@ -112,20 +123,12 @@ class Resolution implements Comparable<Resolution> {
         return "(" + myIsComplete + ", level:" + myLevel + ", path:[" + sb + "], element: '" + element.getQualifiedName() + "' " + element.getClass().getSimpleName() + ")";
     }
 
-    /*
-    public void setAlternatePath(@NotNull String[] alternatePath) {
-        int newPathLength = alternatePath.length + myPath.length;
-        myAlternatePath = alternatePath;
-        myLevel = newPathLength - 2;
-    }
-     */
-
     public @NotNull String joinPath() {
         if (myAlternatePath == null) {
-            return Joiner.join(".", myPath);
+            return mySymbols.join(myPath, 0);
         }
 
-        return Joiner.join(".", myAlternatePath) + "." + Joiner.joinFrom(".", myPath, 1);
+        return mySymbols.join(myAlternatePath, 0) + "." + mySymbols.join(myPath, 1);
     }
 
     @Override public int compareTo(@NotNull Resolution o) {
@@ -154,9 +157,9 @@ class Resolution implements Comparable<Resolution> {
         int r1Level = r1Length - 1;
         int oLength = o.myPath.length;
         int oLevel = oLength - 1;
-        Integer r1Weight = getWeight(r1Level);
-        Integer oWeight = o.getWeight(oLevel);
-        while (0 <= r1Level && 0 <= oLevel && r1Weight != null && r1Weight.equals(oWeight)) {
+        int r1Weight = getWeight(r1Level);
+        int oWeight = o.getWeight(oLevel);
+        while (0 <= r1Level && 0 <= oLevel && r1Weight != 0 && r1Weight == oWeight) {
             r1Level--;
             oLevel--;
             r1Weight = getWeight(r1Level);
@@ -171,7 +174,7 @@ class Resolution implements Comparable<Resolution> {
             return -1;
         }
 
-        int levels = Integer.compare(r1Weight == null ? Integer.MAX_VALUE : r1Weight, oWeight == null ? Integer.MAX_VALUE : oWeight);
+        int levels = Integer.compare(r1Weight == 0 ? Integer.MAX_VALUE : r1Weight, oWeight == 0 ? Integer.MAX_VALUE : oWeight);
         if (levels == 0) {
             if (isInterface() && !o.isInterface()) {
                 return 1;
@@ -184,13 +187,13 @@ class Resolution implements Comparable<Resolution> {
         return levels;
     }
 
-    public String [] augmentPath(@NotNull String [] path) {
+    public int [] augmentPath(@NotNull int [] path) {
         if (myAlternatePath == null && myPath.length == 1) {
             return path;
         }
 
         int totalLength = (myAlternatePath == null ? 1 : myAlternatePath.length) + myPath.length - 1;
-        String[] newPath = new String[path.length + totalLength - 1];
+        int[] newPath = new int[path.length + totalLength - 1];
 
         System.arraycopy(path, 0, newPath, 0, path.length);
         if (myAlternatePath == null) {
@@ -12,7 +12,7 @@ import org.jetbrains.annotations.NotNull;
 
 public class OclFileStubElementType extends IStubFileElementType<OclFileStub> {
     public static final IStubFileElementType<OclFileStub> INSTANCE = new OclFileStubElementType();
-    private static final int VERSION = 9;
+    private static final int VERSION = 10;
 
     private OclFileStubElementType() {
         super("OCAML_FILE", OCamlLanguage.INSTANCE);
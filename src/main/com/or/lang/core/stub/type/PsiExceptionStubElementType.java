@@ -15,7 +15,7 @@ import org.jetbrains.annotations.NotNull;
 import java.io.IOException;
 
 public class PsiExceptionStubElementType extends ORStubElementType<PsiExceptionStub, PsiException> {
-    public static final int VERSION = 7;
+    public static final int VERSION = 8;
 
     public PsiExceptionStubElementType() {
         super("C_EXCEPTION_DECLARATION");
@@ -59,7 +59,7 @@ public class PsiExceptionStubElementType extends ORStubElementType<PsiExceptionS
         }
 
         String fqn = stub.getQualifiedName();
-        sink.occurrence(IndexKeys.EXCEPTIONS_FQN, fqn.hashCode());
+        sink.occurrence(IndexKeys.EXCEPTIONS_FQN, fqn);
     }
 
     @NotNull
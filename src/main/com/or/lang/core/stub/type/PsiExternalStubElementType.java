@@ -15,7 +15,7 @@ import org.jetbrains.annotations.NotNull;
 import java.io.IOException;
 
 public class PsiExternalStubElementType extends ORStubElementType<PsiExternalStub, PsiExternal> {
-    public static final int VERSION = 9;
+    public static final int VERSION = 11;
 
     public PsiExternalStubElementType() {
         super("C_EXTERNAL_DECLARATION");
@@ -56,7 +56,11 @@ public class PsiExternalStubElementType extends ORStubElementType<PsiExternalStu
         String name = stub.getName();
         if (name != null) {
             sink.occurrence(IndexKeys.EXTERNALS, name);
+            sink.occurrence(IndexKeys.LOWER_SYMBOLS, name);
         }
+
+        String fqn = stub.getQualifiedName();
+        sink.occurrence(IndexKeys.EXTERNALS_FQN, fqn);
     }
 
     @NotNull
@@ -18,7 +18,7 @@ import org.jetbrains.annotations.NotNull;
 import java.io.IOException;
 
 public class PsiIncludeStubElementType extends ORStubElementType<PsiIncludeStub, PsiInclude> {
-    public static final int VERSION = 3;
+    public static final int VERSION = 4;
 
     public PsiIncludeStubElementType() {
         super("C_INCLUDE");
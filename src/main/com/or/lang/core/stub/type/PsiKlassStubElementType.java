@@ -15,7 +15,7 @@ import org.jetbrains.annotations.NotNull;
 import java.io.IOException;
 
 public class PsiKlassStubElementType extends ORStubElementType<PsiKlassStub, PsiKlass> {
-    public static final int VERSION = 2;
+    public static final int VERSION = 3;
 
     public PsiKlassStubElementType() {
         super("C_CLASS_DECLARATION");
@@ -52,7 +52,7 @@ public class PsiKlassStubElementType extends ORStubElementType<PsiKlassStub, Psi
 
     public void indexStub(@NotNull PsiKlassStub stub, @NotNull IndexSink sink) {
         String fqn = stub.getQualifiedName();
-        sink.occurrence(IndexKeys.CLASSES_FQN, fqn.hashCode());
+        sink.occurrence(IndexKeys.CLASSES_FQN, fqn);
     }
 
     @NotNull
@@ -19,7 +19,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class PsiLetStubElementType extends ORStubElementType<PsiLetStub, PsiLet> {
-    public static final int VERSION = 14;
+    public static final int VERSION = 16;
 
     public PsiLetStubElementType() {
         super("C_LET_DECLARATION");
@@ -100,19 +100,21 @@ public class PsiLetStubElementType extends ORStubElementType<PsiLetStub, PsiLet>
             String name = stub.getName();
             if (name != null) {
                 sink.occurrence(IndexKeys.LETS, name);
+                sink.occurrence(IndexKeys.LOWER_SYMBOLS, name);
             }
 
             String fqn = stub.getQualifiedName();
-            sink.occurrence(IndexKeys.LETS_FQN, fqn.hashCode());
+            sink.occurrence(IndexKeys.LETS_FQN, fqn);
         } else {
             // Deconstruction
 
             for (String name : deconstructionNames) {
                 sink.occurrence(IndexKeys.LETS, name);
+                sink.occurrence(IndexKeys.LOWER_SYMBOLS, name);
             }
 
             for (String fqn : stub.getQualifiedNames()) {
-                sink.occurrence(IndexKeys.LETS_FQN, fqn.hashCode());
+                sink.occurrence(IndexKeys.LETS_FQN, fqn);
             }
         }
     }
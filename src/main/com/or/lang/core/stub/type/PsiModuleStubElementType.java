@@ -15,7 +15,7 @@ import org.jetbrains.annotations.NotNull;
 import java.io.IOException;
 
 public abstract class PsiModuleStubElementType extends ORStubElementType<PsiModuleStub, PsiModule> {
-    public static final int VERSION = 24;
+    public static final int VERSION = 25;
 
     protected PsiModuleStubElementType(@NotNull String name) {
         super(name);
@@ -84,10 +84,10 @@ public abstract class PsiModuleStubElementType extends ORStubElementType<PsiModu
             }
         }
 
-        int fqnHash = stub.getQualifiedName().hashCode();
-        sink.occurrence(IndexKeys.MODULES_FQN, fqnHash);
+        String fqn = stub.getQualifiedName();
+        sink.occurrence(IndexKeys.MODULES_FQN, fqn);
         if (stub.isComponent()) {
-            sink.occurrence(IndexKeys.MODULES_COMP_FQN, fqnHash);
+            sink.occurrence(IndexKeys.MODULES_COMP_FQN, fqn);
         }
     }
 
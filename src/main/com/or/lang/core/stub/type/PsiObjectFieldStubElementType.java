@@ -14,7 +14,7 @@ import org.jetbrains.annotations.NotNull;
 import java.io.IOException;
 
 public class PsiObjectFieldStubElementType extends ORStubElementType<PsiObjectFieldStub, PsiObjectField> {
-    public static final int VERSION = 2;
+    public static final int VERSION = 3;
 
     public PsiObjectFieldStubElementType() {
         super("C_OBJECT_FIELD");
@@ -51,6 +51,7 @@ public class PsiObjectFieldStubElementType extends ORStubElementType<PsiObjectFi
         String name = stub.getName();
         if (name != null) {
             sink.occurrence(IndexKeys.OBJECT_FIELDS, name);
+            sink.occurrence(IndexKeys.LOWER_SYMBOLS, name);
         }
     }
 
@@ -15,7 +15,7 @@ import org.jetbrains.annotations.NotNull;
 import java.io.IOException;
 
 public class PsiParameterStubElementType extends ORStubElementType<PsiParameterStub, PsiParameter> {
-    public static final int VERSION = 5;
+    public static final int VERSION = 7;
 
     public PsiParameterStubElementType(@NotNull String name) {
         super(name);
@@ -54,11 +54,12 @@ public class PsiParameterStubElementType extends ORStubElementType<PsiParameterS
         String name = stub.getName();
         if (name != null) {
             sink.occurrence(IndexKeys.PARAMETERS, name);
+            sink.occurrence(IndexKeys.LOWER_SYMBOLS, name);
         }
 
         String fqn = stub.getQualifiedName();
         if (fqn != null) {
-            sink.occurrence(IndexKeys.PARAMETERS_FQN, fqn.hashCode());
+            sink.occurrence(IndexKeys.PARAMETERS_FQN, fqn);
         }
     }
 
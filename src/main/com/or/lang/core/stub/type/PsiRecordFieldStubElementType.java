@@ -15,7 +15,7 @@ import org.jetbrains.annotations.NotNull;
 import java.io.IOException;
 
 public class PsiRecordFieldStubElementType extends ORStubElementType<PsiRecordFieldStub, PsiRecordField> {
-    public static final int VERSION = 5;
+    public static final int VERSION = 6;
 
     public PsiRecordFieldStubElementType() {
         super("C_RECORD_FIELD");
@@ -52,6 +52,7 @@ public class PsiRecordFieldStubElementType extends ORStubElementType<PsiRecordFi
         String name = stub.getName();
         if (name != null) {
             sink.occurrence(IndexKeys.RECORD_FIELDS, name);
+            sink.occurrence(IndexKeys.LOWER_SYMBOLS, name);
         }
     }
 
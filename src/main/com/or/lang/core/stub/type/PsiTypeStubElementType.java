@@ -15,7 +15,7 @@ import org.jetbrains.annotations.NotNull;
 import java.io.IOException;
 
 public class PsiTypeStubElementType extends ORStubElementType<PsiTypeStub, PsiType> {
-    public static final int VERSION = 11;
+    public static final int VERSION = 13;
 
     public PsiTypeStubElementType() {
         super("C_TYPE_DECLARATION");
@@ -55,10 +55,11 @@ public class PsiTypeStubElementType extends ORStubElementType<PsiTypeStub, PsiTy
         String name = stub.getName();
         if (name != null) {
             sink.occurrence(IndexKeys.TYPES, name);
+            sink.occurrence(IndexKeys.LOWER_SYMBOLS, name);
         }
 
         String fqn = stub.getQualifiedName();
-        sink.occurrence(IndexKeys.TYPES_FQN, fqn.hashCode());
+        sink.occurrence(IndexKeys.TYPES_FQN, fqn);
     }
 
     @NotNull
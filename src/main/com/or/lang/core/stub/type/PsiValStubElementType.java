@@ -15,7 +15,7 @@ import org.jetbrains.annotations.NotNull;
 import java.io.IOException;
 
 public class PsiValStubElementType extends ORStubElementType<PsiValStub, PsiVal> {
-    public static final int VERSION = 12;
+    public static final int VERSION = 14;
 
     public PsiValStubElementType() {
         super("C_VAL_DECLARATION");
@@ -55,10 +55,11 @@ public class PsiValStubElementType extends ORStubElementType<PsiValStub, PsiVal>
         String name = stub.getName();
         if (name != null) {
             sink.occurrence(IndexKeys.VALS, name);
+            sink.occurrence(IndexKeys.LOWER_SYMBOLS, name);
         }
 
         String fqn = stub.getQualifiedName();
-        sink.occurrence(IndexKeys.VALS_FQN, fqn.hashCode());
+        sink.occurrence(IndexKeys.VALS_FQN, fqn);
     }
 
     @NotNull
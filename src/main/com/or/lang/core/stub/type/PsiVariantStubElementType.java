@@ -14,7 +14,7 @@ import org.jetbrains.annotations.NotNull;
 import java.io.IOException;
 
 public class PsiVariantStubElementType extends ORStubElementType<PsiVariantDeclarationStub, PsiVariantDeclaration> {
-    public static final int VERSION = 6;
+    public static final int VERSION = 7;
 
     public PsiVariantStubElementType() {
         super("C_VARIANT_DECLARATION");
@@ -55,7 +55,7 @@ public class PsiVariantStubElementType extends ORStubElementType<PsiVariantDecla
         }
 
         String fqn = stub.getQualifiedName();
-        sink.occurrence(IndexKeys.VARIANTS_FQN, fqn.hashCode());
+        sink.occurrence(IndexKeys.VARIANTS_FQN, fqn);
     }
 
     @NotNull
@@ -0,0 +1,78 @@
+package com.ocaml.compiler;
+
+import com.intellij.openapi.util.Pair;
+import com.intellij.psi.PsiFile;
+import com.ocaml.OCamlBaseTest;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+
+@SuppressWarnings("JUnit4AnnotatedMethodInJUnit3TestCase")
+public class CompilationUnitTest extends OCamlBaseTest {
+
+    @Override protected String getCustomTestDataPath() {
+        return "com.lang.utils/deps/";
+    }
+
+    /**
+     * hello_world.mli is opening Toto, so toto.mli must be compiled first.
+     */
+    @Test
+    public void testTopologicalOrder() {
+        PsiFile helloWorld = myFixture.configureByText("hello_world.mli", loadFileNonNull("hello_world.mli"));
+        PsiFile toto = myFixture.configureByText("toto.mli", loadFileNonNull("toto.mli"));
+
+        List<CompilationUnit> units = CompilationUnit.createUnits(Set.of(
+                new Pair<>("hello_world.mli", helloWorld),
+                new Pair<>("toto.mli", toto)
+        ));
+        assertSize(2, units);
+        assertEquals("toto.mli", units.get(0).myRelativePath);
+        assertEquals("hello_world.mli", units.get(1).myRelativePath);
+        assertContainsElements(units.get(1).myDependencies, units.get(0));
+    }
+
+    @Test
+    public void testFingerprintDependsOnDependencies() {
+        PsiFile helloWorld = myFixture.configureByText("hello_world.mli", loadFileNonNull("hello_world.mli"));
+        PsiFile toto = myFixture.configureByText("toto.mli", loadFileNonNull("toto.mli"));
+        List<CompilationUnit> units = CompilationUnit.createUnits(Set.of(
+                new Pair<>("hello_world.mli", helloWorld),
+                new Pair<>("toto.mli", toto)
+        ));
+        CompilationUnit.computeFingerprints(units, "home");
+
+        PsiFile newToto = myFixture.configureByText("toto.mli", loadFileNonNull("toto.mli") + "\nval added : int");
+        List<CompilationUnit> newUnits = CompilationUnit.createUnits(Set.of(
+                new Pair<>("hello_world.mli", helloWorld),
+                new Pair<>("toto.mli", newToto)
+        ));
+        CompilationUnit.computeFingerprints(newUnits, "home");
+
+        // toto changed, hello_world must be compiled again
+        assertFalse(units.get(0).myFingerprint.equals(newUnits.get(0).myFingerprint));
+        assertFalse(units.get(1).myFingerprint.equals(newUnits.get(1).myFingerprint));
+    }
+
+    /**
+     * Two folders define the module Utils, each file depends on the one of its folder.
+     */
+    @Test
+    public void testSameModuleNameInTwoFolders() {
+        PsiFile aUtils = myFixture.addFileToProject("a/utils.mli", "val x : int");
+        PsiFile bUtils = myFixture.addFileToProject("b/utils.mli", "val y : int");
+        PsiFile aMain = myFixture.addFileToProject("a/main.mli", "open Utils\nval z : int");
+
+        List<CompilationUnit> units = CompilationUnit.createUnits(List.of(
+                new Pair<>("a/main.mli", aMain),
+                new Pair<>("a/utils.mli", aUtils),
+                new Pair<>("b/utils.mli", bUtils)
+        ));
+        assertSize(3, units);
+        CompilationUnit main = units.stream().filter(unit -> unit.myRelativePath.equals("a/main.mli")).findFirst().orElseThrow();
+        assertSize(1, main.myDependencies);
+        assertEquals("a/utils.mli", main.myDependencies.get(0).myRelativePath);
+        assertTrue(units.indexOf(main.myDependencies.get(0)) < units.indexOf(main));
+    }
+}
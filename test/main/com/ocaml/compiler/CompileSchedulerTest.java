@@ -0,0 +1,105 @@
+package com.ocaml.compiler;
+
+import com.ocaml.OCamlBaseTest;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@SuppressWarnings("JUnit4AnnotatedMethodInJUnit3TestCase")
+public class CompileSchedulerTest extends OCamlBaseTest {
+
+    @Test
+    public void testCompile() {
+        CompileScheduler scheduler = new CompileScheduler(1, 0);
+        assertEquals("result", scheduler.schedule("a.ml", 1, () -> 1, () -> "result"));
+        assertEquals(1, scheduler.getMetrics().completed);
+        assertEquals(0, scheduler.getMetrics().queueDepth);
+    }
+
+    @Test
+    public void testModifiedDocumentIsNotCompiled() {
+        CompileScheduler scheduler = new CompileScheduler(1, 0);
+        assertNull(scheduler.schedule("a.ml", 1, () -> 2, () -> "result"));
+        assertEquals(1, scheduler.getMetrics().superseded);
+        assertEquals(0, scheduler.getMetrics().completed);
+    }
+
+    /**
+     * The first request is waiting for the delay, when a request for
+     * a newer version of the file is made.
+     */
+    @Test
+    public void testSupersededRequestIsDropped() throws Exception {
+        CompileScheduler scheduler = new CompileScheduler(1, 500);
+        AtomicInteger compilations = new AtomicInteger();
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(
+                () -> scheduler.schedule("a.ml", 1, () -> 1, () -> "v" + compilations.incrementAndGet()));
+        while (scheduler.getMetrics().queueDepth == 0) Thread.sleep(5);
+
+        assertEquals("v1", scheduler.schedule("a.ml", 2, () -> 2, () -> "v" + compilations.incrementAndGet()));
+        assertNull(first.get(5, TimeUnit.SECONDS));
+        assertEquals(1, compilations.get());
+        assertEquals(1, scheduler.getMetrics().superseded);
+    }
+
+    @Test
+    public void testSameVersionIsShared() throws Exception {
+        CompileScheduler scheduler = new CompileScheduler(1, 0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicInteger compilations = new AtomicInteger();
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(
+                () -> scheduler.schedule("a.ml", 1, () -> 1, () -> {
+                    compilations.incrementAndGet();
+                    started.countDown();
+                    try {
+                        assertTrue(done.await(5, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return "result";
+                }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(
+                () -> scheduler.schedule("a.ml", 1, () -> 1, () -> "other" + compilations.incrementAndGet()));
+        while (scheduler.getMetrics().shared == 0) Thread.sleep(5);
+        done.countDown();
+
+        assertEquals("result", first.get(5, TimeUnit.SECONDS));
+        assertEquals("result", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, compilations.get());
+    }
+
+    @Test
+    public void testRunningCompilationsAreBounded() throws Exception {
+        CompileScheduler scheduler = new CompileScheduler(1, 0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(
+                () -> scheduler.schedule("a.ml", 1, () -> 1, () -> {
+                    started.countDown();
+                    try {
+                        assertTrue(done.await(5, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return "a";
+                }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(
+                () -> scheduler.schedule("b.ml", 1, () -> 1, () -> "b"));
+        while (scheduler.getMetrics().queueDepth == 0) Thread.sleep(5);
+        assertEquals(1, scheduler.getMetrics().running);
+        assertFalse(second.isDone());
+
+        done.countDown();
+        assertEquals("a", first.get(5, TimeUnit.SECONDS));
+        assertEquals("b", second.get(5, TimeUnit.SECONDS));
+        assertEquals(2, scheduler.getMetrics().completed);
+    }
+}
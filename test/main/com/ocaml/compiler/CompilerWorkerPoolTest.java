@@ -0,0 +1,117 @@
+package com.ocaml.compiler;
+
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
+import com.ocaml.OCamlBaseTest;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@SuppressWarnings("JUnit4AnnotatedMethodInJUnit3TestCase")
+public class CompilerWorkerPoolTest extends OCamlBaseTest {
+
+    private File myCompiler;
+    private CompilerWorkerPool myPool;
+
+    @Override protected void setUp() throws Exception {
+        super.setUp();
+        myPool = new CompilerWorkerPool(2);
+        // a stub compiler, printing its arguments, and exiting with the first one
+        File dir = FileUtil.createTempDirectory("compiler", null);
+        myCompiler = new File(dir, "stub-compiler");
+        FileUtil.writeToFile(myCompiler, "#!/bin/sh\ncode=$1; shift\necho \"$@\"\necho \"error\" >&2\nexit $code\n");
+        assertTrue(myCompiler.setExecutable(true));
+    }
+
+    @Override protected void tearDown() throws Exception {
+        try {
+            myPool.dispose();
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    private GeneralCommandLine stub(String... args) {
+        GeneralCommandLine cli = new GeneralCommandLine(myCompiler.getPath());
+        cli.addParameters(args);
+        cli.setWorkDirectory(FileUtil.getTempDirectory());
+        return cli;
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        if (SystemInfo.isWindows) return;
+        List<String> output = new ArrayList<>();
+        assertEquals(0, myPool.run(stub("0", "a b", "c"), output::add, null));
+        assertEquals(List.of("a b c", "error"), output);
+
+        output.clear();
+        assertEquals(2, myPool.run(stub("2", "d"), output::add, null));
+        assertEquals(List.of("d", "error"), output);
+    }
+
+    @Test
+    public void testRunBatch() throws Exception {
+        if (SystemInfo.isWindows) return;
+        List<String> output = new ArrayList<>();
+        int[] exitCodes = myPool.runBatch(List.of(stub("0", "a"), stub("1", "b"), stub("3", "c")),
+                (index, line) -> output.add(index + ":" + line), null);
+        assertEquals("[0, 1, 3]", Arrays.toString(exitCodes));
+        assertEquals(List.of("0:a", "0:error", "1:b", "1:error", "2:c", "2:error"), output);
+    }
+
+    @Test
+    public void testWorkerIsReused() throws Exception {
+        if (SystemInfo.isWindows) return;
+        // the running set is emptied when the command is done, keep a copy
+        List<Process> workers = new ArrayList<>();
+        Set<Process> running = new HashSet<>() {
+            @Override public boolean add(Process process) {
+                workers.add(process);
+                return super.add(process);
+            }
+        };
+        myPool.run(stub("0"), line -> {}, running);
+        myPool.run(stub("1"), line -> {}, running);
+        assertSize(2, workers);
+        assertSame(workers.get(0), workers.get(1));
+        assertEmpty(running);
+    }
+
+    @Test
+    public void testWorkerUsesTheCharsetOfTheCommand() throws Exception {
+        if (SystemInfo.isWindows) return;
+        List<Process> workers = new ArrayList<>();
+        Set<Process> running = new HashSet<>() {
+            @Override public boolean add(Process process) {
+                workers.add(process);
+                return super.add(process);
+            }
+        };
+        List<String> output = new ArrayList<>();
+        GeneralCommandLine latin1 = stub("0", "\u00e9t\u00e9");
+        latin1.setCharset(StandardCharsets.ISO_8859_1);
+        GeneralCommandLine utf8 = stub("0", "\u00e9t\u00e9");
+        utf8.setCharset(StandardCharsets.UTF_8);
+        myPool.run(latin1, output::add, running);
+        myPool.run(utf8, output::add, running);
+        assertEquals(List.of("\u00e9t\u00e9", "error", "\u00e9t\u00e9", "error"), output);
+        // not the same worker
+        assertSize(2, workers);
+        assertNotSame(workers.get(0), workers.get(1));
+    }
+
+    @Test
+    public void testCanRun() throws Exception {
+        if (SystemInfo.isWindows) return;
+        assertTrue(CompilerWorkerPool.canRun(stub("0", "a")));
+        assertFalse(CompilerWorkerPool.canRun(stub("0", "a\nb")));
+    }
+}
@@ -0,0 +1,67 @@
+package com.ocaml.compiler;
+
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.ocaml.OCamlBaseTest;
+import com.ocaml.sdk.output.CompilerOutputMessage;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+@SuppressWarnings("JUnit4AnnotatedMethodInJUnit3TestCase")
+public class ProjectCheckTest extends OCamlBaseTest {
+
+    private File myHome;
+    private File myLog;
+
+    @Override protected void setUp() throws Exception {
+        super.setUp();
+        // a stub compiler, logging the compiled files, and failing for the files with "ERROR"
+        myHome = FileUtil.createTempDirectory("4.14.0", null);
+        myLog = new File(myHome, "compiled.log");
+        File compiler = new File(myHome, "bin/ocamlc");
+        FileUtil.writeToFile(compiler, "#!/bin/sh\n" +
+                "[ \"$1\" = \"-c\" ] && shift\n" +
+                "file=\"$1\"\n" +
+                "basename \"$file\" >> '" + myLog.getPath() + "'\n" +
+                "if grep -q ERROR \"$file\"; then\n" +
+                "  echo \"File \\\"$file\\\", line 1, characters 0-3:\"\n" +
+                "  echo \"Error: stub error\"\n" +
+                "  exit 2\n" +
+                "fi\n");
+        assertTrue(compiler.setExecutable(true));
+    }
+
+    @Test
+    public void testCheckProject() throws Exception {
+        if (SystemInfo.isWindows) return;
+        VirtualFile aMli = myFixture.addFileToProject("a.mli", "val x : int").getVirtualFile();
+        VirtualFile aMl = myFixture.addFileToProject("a.ml", "let x = 5").getVirtualFile();
+        VirtualFile bMl = myFixture.addFileToProject("b.ml", "let y = A.x").getVirtualFile();
+        VirtualFile cMl = myFixture.addFileToProject("c.ml", "let z = B.y (* ERROR *)").getVirtualFile();
+
+        File outputFolder = FileUtil.createTempDirectory("out", null);
+        ProjectCheck check = new ProjectCheck(getProject(), GlobalSearchScope.projectScope(getProject()),
+                myHome.getPath(), outputFolder, CompilerRunner.getInstance(getProject()));
+        Map<VirtualFile, List<CompilerOutputMessage>> results = check.run(new EmptyProgressIndicator());
+
+        assertSameElements(results.keySet(), aMli, aMl, bMl, cMl);
+        assertEmpty(results.get(aMli));
+        assertEmpty(results.get(bMl));
+        List<CompilerOutputMessage> errors = results.get(cMl);
+        assertSize(1, errors);
+        assertEquals(CompilerOutputMessage.Kind.ERROR, errors.get(0).kind);
+
+        // dependencies are compiled first
+        List<String> compiled = FileUtil.loadLines(myLog);
+        assertSize(4, compiled);
+        assertTrue(compiled.indexOf("a.mli") < compiled.indexOf("a.ml"));
+        assertTrue(compiled.indexOf("a.mli") < compiled.indexOf("b.ml"));
+        assertTrue(compiled.indexOf("b.ml") < compiled.indexOf("c.ml"));
+    }
+}
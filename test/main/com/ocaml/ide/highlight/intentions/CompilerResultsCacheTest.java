@@ -0,0 +1,73 @@
+package com.ocaml.ide.highlight.intentions;
+
+import com.intellij.build.FilePosition;
+import com.intellij.openapi.editor.Editor;
+import com.ocaml.OCamlBaseTest;
+import com.ocaml.sdk.output.CompilerOutputMessage;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+@SuppressWarnings("JUnit4AnnotatedMethodInJUnit3TestCase")
+public class CompilerResultsCacheTest extends OCamlBaseTest {
+
+    private static CompilerOutputProvider.ExternalCompilerResult result(String content) {
+        CompilerOutputMessage message = new CompilerOutputMessage();
+        message.kind = CompilerOutputMessage.Kind.WARNING;
+        message.content = content;
+        message.filePosition = new FilePosition(new File("a.ml"), 1, 4, 1, 5);
+        List<CompilerOutputMessage> messages = new ArrayList<>();
+        messages.add(message);
+        return new CompilerOutputProvider.ExternalCompilerResult(messages, null, null);
+    }
+
+    @Test
+    public void testRestoreInAnotherEditor() {
+        myFixture.configureByText("a.ml", "let x = 5");
+        Editor editor = myFixture.getEditor();
+        CompilerResultsCache cache = new CompilerResultsCache(10, Long.MAX_VALUE);
+        CompilerOutputProvider.ExternalCompilerResult result = result("Warning 32: unused value x.\n");
+        cache.put("a.ml", "v1", result);
+
+        assertNull(cache.get("a.ml", "v2", editor));
+        CompilerOutputProvider.ExternalCompilerResult restored = cache.get("a.ml", "v1", editor);
+        assertNotNull(restored);
+        assertSame(editor, restored.myEditor);
+        assertSame(result.myOutputInfo, restored.myOutputInfo);
+        // the messages are tempered once
+        assertSame(result.getIntentions(), restored.getIntentions());
+        assertTrue(restored.getIntentions().get(0).hasCustomHighLightType());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsRemoved() {
+        myFixture.configureByText("a.ml", "let x = 5");
+        Editor editor = myFixture.getEditor();
+        CompilerResultsCache cache = new CompilerResultsCache(2, Long.MAX_VALUE);
+        cache.put("a.ml", "v1", result("Warning 32: unused value x.\n"));
+        cache.put("b.ml", "v1", result("Warning 32: unused value y.\n"));
+        assertNotNull(cache.get("a.ml", "v1", editor));
+        cache.put("c.ml", "v1", result("Warning 32: unused value z.\n"));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a.ml", "v1", editor));
+        assertNull(cache.get("b.ml", "v1", editor));
+        assertNotNull(cache.get("c.ml", "v1", editor));
+    }
+
+    @Test
+    public void testMemoryLimit() {
+        myFixture.configureByText("a.ml", "let x = 5");
+        Editor editor = myFixture.getEditor();
+        // only one result fits
+        CompilerResultsCache cache = new CompilerResultsCache(10, 300);
+        cache.put("a.ml", "v1", result("Warning 32: unused value x.\n"));
+        cache.put("a.ml", "v2", result("Warning 32: unused value y.\n"));
+
+        assertEquals(1, cache.size());
+        assertNull(cache.get("a.ml", "v1", editor));
+        assertNotNull(cache.get("a.ml", "v2", editor));
+    }
+}
@@ -0,0 +1,167 @@
+package com.ocaml.ide.insight;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
+import com.ocaml.OCamlBaseTest;
+import com.ocaml.sdk.annot.OCamlAnnotIndex;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+@SuppressWarnings("JUnit4AnnotatedMethodInJUnit3TestCase")
+public class OCamlAnnotResultsServiceTest extends OCamlBaseTest {
+
+    private static final Pattern SAVED = Pattern.compile(".*\\.sig");
+
+    private File myAnnotFile;
+
+    @Override protected void setUp() throws Exception {
+        super.setUp();
+        myAnnotFile = new File(getTestDataPath(), "types.annot");
+    }
+
+    @Override protected String getCustomTestDataPath() {
+        return "com.ocaml.ide.insight/types/";
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsRemoved() {
+        OCamlAnnotResultsService service = new OCamlAnnotResultsService(2, Long.MAX_VALUE);
+        service.updateForFile("a.ml", myAnnotFile);
+        service.updateForFile("b.ml", myAnnotFile);
+        assertNotNull(service.getIndex("a.ml"));
+        service.updateForFile("c.ml", myAnnotFile);
+
+        assertEquals(2, service.size());
+        assertNotNull(service.getIndex("a.ml"));
+        assertNull(service.getIndex("b.ml"));
+        assertNotNull(service.getIndex("c.ml"));
+    }
+
+    @Test
+    public void testMemoryLimit() {
+        OCamlAnnotResultsService service = new OCamlAnnotResultsService(10, 1);
+        service.updateForFile("a.ml", myAnnotFile);
+        // the file that was compiled is kept, even if it's too big
+        assertNotNull(service.getIndex("a.ml"));
+        service.updateForFile("b.ml", myAnnotFile);
+
+        assertEquals(1, service.size());
+        assertNull(service.getIndex("a.ml"));
+        assertNotNull(service.getIndex("b.ml"));
+    }
+
+    @Test
+    public void testPendingCmtIsCounted() {
+        OCamlAnnotResultsService service = new OCamlAnnotResultsService(2, Long.MAX_VALUE);
+        File cmtFile = new File(myAnnotFile.getParentFile(), "types.cmt");
+        service.updateForFileFromCmt("a.ml", cmtFile, "home", "v1");
+        service.updateForFileFromCmt("b.ml", cmtFile, "home", "v1");
+        service.updateForFile("c.ml", myAnnotFile);
+
+        assertEquals(2, service.size());
+        assertNotNull(service.getIndex("c.ml"));
+        // a.ml was removed, so its .cmt is never read
+        assertNull(service.getOrLoadIndex("a.ml"));
+    }
+
+    @Test
+    public void testUpdateReplacesTheSignatures() {
+        OCamlAnnotResultsService service = new OCamlAnnotResultsService(10, Long.MAX_VALUE);
+        service.updateForFile("a.ml", myAnnotFile);
+        OCamlAnnotIndex index = service.getIndex("a.ml");
+        assertNotNull(index);
+        int size = index.size();
+
+        service.updateForFile("a.ml", myAnnotFile);
+        OCamlAnnotIndex updated = service.getIndex("a.ml");
+        assertNotSame(index, updated);
+        // the previous signatures are still usable
+        assertEquals(size, index.size());
+
+        service.clearForFile("a.ml");
+        assertNull(service.getIndex("a.ml"));
+        assertEquals(0, service.size());
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        OCamlAnnotResultsService service = new OCamlAnnotResultsService(4, Long.MAX_VALUE);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            String file = i + ".ml";
+            threads[i] = new Thread(() -> {
+                try {
+                    for (int j = 0; j < 20; j++) {
+                        service.updateForFile(file, myAnnotFile);
+                        service.getIndex((j % threads.length) + ".ml");
+                        service.clearForFile(file + j);
+                    }
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertNull(error.get());
+        assertEquals(4, service.size());
+    }
+
+    @Test
+    public void testLoadSavedSignatures() throws Exception {
+        File storeFolder = FileUtil.createTempDirectory("signatures", null);
+        OCamlAnnotResultsService service = new OCamlAnnotResultsService(10, Long.MAX_VALUE, storeFolder);
+        service.updateForFile("types.ml", myAnnotFile, "v1");
+        // saved in the background
+        for (int i = 0; i < 100 && FileUtil.findFilesByMask(SAVED, storeFolder).isEmpty(); i++) Thread.sleep(50);
+
+        // after a restart
+        OCamlAnnotResultsService restarted = new OCamlAnnotResultsService(10, Long.MAX_VALUE, storeFolder);
+        assertFalse(restarted.loadForFile("types.ml", "v2"));
+        assertNull(restarted.getIndex("types.ml"));
+        assertTrue(restarted.loadForFile("types.ml", "v1"));
+        OCamlAnnotIndex index = restarted.getIndex("types.ml");
+        assertNotNull(index);
+        assertEquals(service.getIndex("types.ml").size(), index.size());
+        // already loaded
+        assertFalse(restarted.loadForFile("types.ml", "v1"));
+    }
+
+    @Test
+    public void testExtractSignaturesFromCmt() throws Exception {
+        if (SystemInfo.isWindows) return;
+        // a stub ocamlcmt, writing the .annot
+        File home = FileUtil.createTempDirectory("4.14.0", null);
+        File ocamlcmt = new File(home, "bin/ocamlcmt");
+        FileUtil.writeToFile(ocamlcmt, "#!/bin/sh\ncat '" + myAnnotFile.getPath() + "'\n");
+        assertTrue(ocamlcmt.setExecutable(true));
+        File cmtFile = new File(home, "types.cmt");
+        FileUtil.writeToFile(cmtFile, "stub");
+
+        OCamlAnnotResultsService service = new OCamlAnnotResultsService(10, Long.MAX_VALUE);
+        service.updateForFileFromCmt("types.ml", cmtFile, home.getPath(), null);
+        // only extracted when needed
+        assertNull(service.getIndex("types.ml"));
+        // extracted in the background, even outside the EDT
+        assertNull(ApplicationManager.getApplication()
+                .executeOnPooledThread(() -> service.getOrLoadIndex("types.ml")).get());
+        for (int i = 0; i < 100 && service.getIndex("types.ml") == null; i++) Thread.sleep(50);
+
+        OCamlAnnotIndex index = service.getIndex("types.ml");
+        assertNotNull(index);
+        service.updateForFile("a.ml", myAnnotFile);
+        assertEquals(service.getIndex("a.ml").size(), index.size());
+
+        // compiled again, then the file has errors
+        service.updateForFileFromCmt("types.ml", cmtFile, home.getPath(), null);
+        assertNull(service.getIndex("types.ml"));
+        service.clearForFile("types.ml");
+        assertNull(service.getOrLoadIndex("types.ml"));
+    }
+}
@@ -0,0 +1,42 @@
+package com.ocaml.ide.search;
+
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.ocaml.OCamlBaseTest;
+import com.or.lang.core.psi.PsiInclude;
+import com.or.utils.Joiner;
+import org.intellij.lang.annotations.Language;
+import org.junit.Test;
+
+@SuppressWarnings("JUnit4AnnotatedMethodInJUnit3TestCase")
+public class PsiFinderTest extends OCamlBaseTest {
+
+    private String resolvedPath(@Language("OCaml") String code) {
+        PsiFile file = myFixture.configureByText("include.ml", code);
+        PsiInclude include = PsiTreeUtil.findChildOfType(file, PsiInclude.class);
+        assertNotNull(include);
+        return Joiner.join(".", include.getResolvedPath());
+    }
+
+    @Test
+    public void testIncludeLocalModule() {
+        assertEquals("Include.A.Sub", resolvedPath("module A = struct module Sub = struct end end\ninclude A.Sub"));
+    }
+
+    @Test
+    public void testIncludeThroughLocalAlias() {
+        assertEquals("Include.A.Sub", resolvedPath("module A = struct module Sub = struct end end\nmodule M = A\ninclude M.Sub"));
+    }
+
+    @Test
+    public void testIncludeThroughAliasToAnotherFile() {
+        assertEquals("Other.Sub", resolvedPath("module M = Other\ninclude M.Sub"));
+    }
+
+    @Test
+    public void testIncludeThroughInnerAlias() {
+        assertEquals("Include.A.B", resolvedPath("module A = struct module B = struct end end\n" +
+                "module C = struct module D = A end\n" +
+                "include C.D.B"));
+    }
+}
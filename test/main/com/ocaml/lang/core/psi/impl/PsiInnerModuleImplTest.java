@@ -0,0 +1,42 @@
+package com.ocaml.lang.core.psi.impl;
+
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.ocaml.OCamlBaseTest;
+import com.or.lang.core.psi.ExpressionScope;
+import com.or.lang.core.psi.PsiInnerModule;
+import org.intellij.lang.annotations.Language;
+import org.junit.Test;
+
+import java.util.List;
+
+@SuppressWarnings("JUnit4AnnotatedMethodInJUnit3TestCase")
+public class PsiInnerModuleImplTest extends OCamlBaseTest {
+
+    private List<PsiInnerModule> configureModules(@Language("OCaml") String code) {
+        PsiFile file = myFixture.configureByText("cycle.ml", code);
+        return PsiTreeUtil.getChildrenOfTypeAsList(file, PsiInnerModule.class);
+    }
+
+    @Test
+    public void testExpressionsOfSelfAlias() {
+        List<PsiInnerModule> modules = configureModules("module String = String");
+        assertSize(1, modules);
+        assertEmpty(modules.get(0).getExpressions(ExpressionScope.all, null));
+    }
+
+    @Test
+    public void testExpressionsOfCyclicAliases() {
+        List<PsiInnerModule> modules = configureModules("module A = B\nmodule B = A");
+        assertSize(2, modules);
+        assertEmpty(modules.get(0).getExpressions(ExpressionScope.all, null));
+        assertEmpty(modules.get(1).getExpressions(ExpressionScope.all, null));
+    }
+
+    @Test
+    public void testExpressionsOfAlias() {
+        List<PsiInnerModule> modules = configureModules("module A = struct let x = 5 end\nmodule B = A");
+        assertSize(2, modules);
+        assertSize(1, modules.get(1).getExpressions(ExpressionScope.all, null));
+    }
+}
@@ -4,11 +4,15 @@ import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleUtil;
 import com.intellij.openapi.roots.ModuleRootManager;
 import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.ocaml.compiler.OCamlDependencyGraph;
 import com.ocaml.OCamlBaseTest;
 import org.intellij.lang.annotations.Language;
 import org.junit.Test;
 
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 
@@ -62,4 +66,33 @@ public class OCamlResolveDependenciesTest extends OCamlBaseTest {
         assertEquals("hello_world.mli", next.second.getName());
     }
 
+    /**
+     * hello_world.mli and toto.ml are opening Toto and Tata,
+     * test_hello_world.ml is opening Hello_world.
+     */
+    @Test
+    public void testFilesToRecompile() {
+        myFixture.configureByText("hello_world.ml", loadFileNonNull("hello_world.ml"));
+        myFixture.configureByText("hello_world.mli", loadFileNonNull("hello_world.mli"));
+        PsiFile tata = myFixture.configureByText("tata.ml", loadFileNonNull("tata.ml"));
+        myFixture.configureByText("toto.ml", loadFileNonNull("toto.ml"));
+        PsiFile toto = myFixture.configureByText("toto.mli", loadFileNonNull("toto.mli"));
+        myFixture.configureByText("test_hello_world.ml", loadFileNonNull("test_hello_world.ml"));
+
+        OCamlDependencyGraph dependencyGraph = OCamlDependencyGraph.getInstance(getProject());
+        GlobalSearchScope scope = GlobalSearchScope.allScope(getProject());
+
+        Set<String> names = new HashSet<>();
+        for (VirtualFile file : dependencyGraph.getFilesToRecompile(toto.getVirtualFile(), scope)) {
+            names.add(file.getName());
+        }
+        assertSameElements(names, "hello_world.mli", "test_hello_world.ml");
+
+        names.clear();
+        for (VirtualFile file : dependencyGraph.getFilesToRecompile(tata.getVirtualFile(), scope)) {
+            names.add(file.getName());
+        }
+        assertSameElements(names, "toto.ml", "hello_world.mli", "test_hello_world.ml");
+    }
+
 }
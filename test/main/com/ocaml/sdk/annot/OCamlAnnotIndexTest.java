@@ -0,0 +1,109 @@
+package com.ocaml.sdk.annot;
+
+import com.intellij.build.FilePosition;
+import com.ocaml.OCamlBaseTest;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.ocaml.sdk.annot.OCamlAnnotIndex.pack;
+
+@SuppressWarnings("JUnit4AnnotatedMethodInJUnit3TestCase")
+public class OCamlAnnotIndexTest extends OCamlBaseTest {
+
+    private final List<OCamlInferredSignature> mySignatures = new ArrayList<>();
+
+    private @NotNull OCamlInferredSignature add(String type, int startLine, int startColumn, int endLine, int endColumn) {
+        OCamlInferredSignature signature = new OCamlInferredSignature();
+        signature.kind = OCamlInferredSignature.Kind.VALUE;
+        signature.type = type;
+        signature.position = new FilePosition(new File("a.ml"), startLine, startColumn, endLine, endColumn);
+        mySignatures.add(signature);
+        return signature;
+    }
+
+    @Test
+    public void testNested() {
+        // let x = f (g 5) 6
+        //         ^^^^^^^^^  int
+        OCamlInferredSignature f = add("int -> int -> int", 1, 8, 1, 9);
+        OCamlInferredSignature g5 = add("int", 1, 11, 1, 14);
+        OCamlInferredSignature g = add("int -> int", 1, 11, 1, 12);
+        OCamlInferredSignature five = add("int", 1, 13, 1, 14);
+        OCamlInferredSignature six = add("int", 1, 16, 1, 17);
+        OCamlInferredSignature call = add("int", 1, 8, 1, 17);
+        OCamlAnnotIndex index = new OCamlAnnotIndex(mySignatures);
+
+        assertSame(call, index.findExact(pack(1, 8), pack(1, 17)));
+        assertSame(g5, index.findExact(pack(1, 11), pack(1, 14)));
+        assertNull(index.findExact(pack(1, 10), pack(1, 14)));
+
+        assertSame(f, index.findInnermost(pack(1, 8)));
+        assertSame(g, index.findInnermost(pack(1, 11)));
+        assertSame(five, index.findInnermost(pack(1, 13)));
+        // the ')'
+        assertSame(call, index.findInnermost(pack(1, 14), pack(1, 15)));
+        assertSame(call, index.findInnermost(pack(1, 15)));
+        assertSame(six, index.findInnermost(pack(1, 17)));
+        assertSame(call, index.findInnermost(pack(1, 10), pack(1, 15)));
+        assertNull(index.findInnermost(pack(1, 4)));
+        assertNull(index.findInnermost(pack(2, 0)));
+
+        assertOrderedEquals(index.findInRange(pack(1, 10), pack(1, 17)), g5, g, five, six);
+        assertOrderedEquals(index.findInRange(pack(1, 8), pack(1, 17)), call, f, g5, g, five, six);
+        assertEmpty(index.findInRange(pack(1, 0), pack(1, 7)));
+    }
+
+    @Test
+    public void testManyLines() {
+        List<OCamlInferredSignature> lines = new ArrayList<>();
+        for (int i = 1000; i >= 1; i--) lines.add(add("int", i, 4, i, 5));
+        OCamlInferredSignature all = add("unit", 1, 0, 1000, 9);
+        OCamlAnnotIndex index = new OCamlAnnotIndex(mySignatures);
+
+        assertEquals(1001, index.size());
+        assertSame(lines.get(0), index.findInnermost(pack(1000, 4)));
+        assertSame(lines.get(999), index.findExact(pack(1, 4), pack(1, 5)));
+        assertSame(all, index.findInnermost(pack(500, 7)));
+        assertSize(10, index.findInRange(pack(10, 0), pack(19, 9)));
+    }
+
+    @Test
+    public void testSameSection() {
+        add("int", 1, 0, 1, 1);
+        OCamlInferredSignature last = add("'a", 1, 0, 1, 1);
+        OCamlAnnotIndex index = new OCamlAnnotIndex(mySignatures);
+        assertSame(last, index.findExact(pack(1, 0), pack(1, 1)));
+        assertSame(last, index.findInnermost(pack(1, 0)));
+    }
+
+    @Test
+    public void testModule() {
+        // module Make = ..., with a value inside
+        List<OCamlInferredSignature> signatures = new OCamlAnnotParser("\"test.ml\" 1 0 7 \"test.ml\" 1 0 11\n" +
+                "ident(\n" +
+                "  def Make \"test.ml\" 3 35 38 \"test.ml\" 0 0 -1\n" +
+                ")\n" +
+                "\"test.ml\" 2 21 33 \"test.ml\" 2 21 34\n" +
+                "type(\n" +
+                "  int\n" +
+                ")").get();
+        OCamlAnnotIndex index = new OCamlAnnotIndex(signatures);
+
+        assertEquals(2, index.size());
+        OCamlInferredSignature module = index.findExact(pack(1, 7), pack(1, 11));
+        assertNotNull(module);
+        assertEquals(OCamlInferredSignature.Kind.MODULE, module.kind);
+        assertEquals("", module.type);
+        assertTrue(index.getEstimatedSize() > 0);
+    }
+
+    @Test
+    public void testEmpty() {
+        assertNull(OCamlAnnotIndex.EMPTY.findInnermost(pack(1, 0)));
+        assertEmpty(OCamlAnnotIndex.EMPTY.findInRange(pack(1, 0), pack(10, 0)));
+    }
+}
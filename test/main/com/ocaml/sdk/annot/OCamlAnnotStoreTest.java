@@ -0,0 +1,75 @@
+package com.ocaml.sdk.annot;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.ocaml.OCamlBaseTest;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+@SuppressWarnings("JUnit4AnnotatedMethodInJUnit3TestCase")
+public class OCamlAnnotStoreTest extends OCamlBaseTest {
+
+    private File myAnnotFile;
+    private File myStoreFile;
+
+    @Override protected void setUp() throws Exception {
+        super.setUp();
+        myAnnotFile = new File(getTestDataPath(), "find/call.annot");
+        myStoreFile = new File(FileUtil.createTempDirectory("signatures", null), "call.sig");
+    }
+
+    @Override protected String getCustomTestDataPath() {
+        return "com.lang.utils/";
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        List<OCamlInferredSignature> signatures = OCamlAnnotParser.fromFile(myAnnotFile).get();
+        OCamlAnnotStore.save(myStoreFile, "v1", signatures);
+        // the types are only saved once
+        assertTrue(myStoreFile.length() < myAnnotFile.length() / 4);
+
+        List<OCamlInferredSignature> loaded = OCamlAnnotStore.load(myStoreFile, "v1");
+        assertNotNull(loaded);
+        assertEquals(signatures.toString(), loaded.toString());
+        assertEquals(signatures.get(0).range, loaded.get(0).range);
+    }
+
+    @Test
+    public void testSaveAndLoadModule() throws IOException {
+        // a module has no type
+        List<OCamlInferredSignature> signatures = new OCamlAnnotParser("\"test.ml\" 1 0 7 \"test.ml\" 1 0 11\n" +
+                "ident(\n" +
+                "  def Make \"test.ml\" 3 35 38 \"test.ml\" 0 0 -1\n" +
+                ")\n" +
+                "\"test.ml\" 2 21 33 \"test.ml\" 2 21 34\n" +
+                "type(\n" +
+                "  int\n" +
+                ")").get();
+        OCamlAnnotStore.save(myStoreFile, "v1", signatures);
+
+        List<OCamlInferredSignature> loaded = OCamlAnnotStore.load(myStoreFile, "v1");
+        assertNotNull(loaded);
+        assertEquals(signatures.toString(), loaded.toString());
+        assertEquals(OCamlInferredSignature.Kind.MODULE, loaded.get(0).kind);
+    }
+
+    @Test
+    public void testAnotherKey() throws IOException {
+        OCamlAnnotStore.save(myStoreFile, "v1", OCamlAnnotParser.fromFile(myAnnotFile).get());
+        assertNull(OCamlAnnotStore.load(myStoreFile, "v2"));
+        assertNull(OCamlAnnotStore.load(new File(myStoreFile.getParentFile(), "none.sig"), "v1"));
+    }
+
+    @Test
+    public void testTruncatedFile() throws IOException {
+        OCamlAnnotStore.save(myStoreFile, "v1", OCamlAnnotParser.fromFile(myAnnotFile).get());
+        try (RandomAccessFile file = new RandomAccessFile(myStoreFile, "rw")) {
+            file.setLength(file.length() / 2);
+        }
+        assertThrows(IOException.class, () -> OCamlAnnotStore.load(myStoreFile, "v1"));
+    }
+}
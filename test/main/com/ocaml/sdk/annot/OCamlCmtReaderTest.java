@@ -0,0 +1,58 @@
+package com.ocaml.sdk.annot;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
+import com.ocaml.OCamlBaseTest;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+@SuppressWarnings("JUnit4AnnotatedMethodInJUnit3TestCase")
+public class OCamlCmtReaderTest extends OCamlBaseTest {
+
+    private File myAnnotFile;
+    private File myHome;
+    private File myCmtFile;
+
+    @Override protected void setUp() throws Exception {
+        super.setUp();
+        myAnnotFile = new File(getTestDataPath(), "types.annot");
+        // a stub ocamlcmt, writing the .annot of the .cmt, or failing if the .cmt is empty
+        myHome = FileUtil.createTempDirectory("4.14.0", null);
+        File ocamlcmt = new File(myHome, "bin/ocamlcmt");
+        FileUtil.writeToFile(ocamlcmt, "#!/bin/sh\n" +
+                "[ -s \"$4\" ] || { echo \"Error: not a .cmt\" >&2; exit 2; }\n" +
+                "cat '" + myAnnotFile.getPath() + "'\n");
+        assertTrue(ocamlcmt.setExecutable(true));
+        myCmtFile = new File(myHome, "types.cmt");
+        FileUtil.writeToFile(myCmtFile, "stub");
+    }
+
+    @Override protected String getCustomTestDataPath() {
+        return "com.ocaml.ide.insight/types/";
+    }
+
+    private List<OCamlInferredSignature> read(File cmtFile) throws Exception {
+        // the process is not started in the EDT
+        return ApplicationManager.getApplication()
+                .executeOnPooledThread(() -> OCamlCmtReader.read(myHome.getPath(), cmtFile)).get();
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        if (SystemInfo.isWindows) return;
+        List<OCamlInferredSignature> signatures = read(myCmtFile);
+        assertNotNull(signatures);
+        assertEquals(OCamlAnnotParser.fromFile(myAnnotFile).get().toString(), signatures.toString());
+    }
+
+    @Test
+    public void testInvalidCmt() throws Exception {
+        if (SystemInfo.isWindows) return;
+        FileUtil.writeToFile(myCmtFile, "");
+        assertNull(read(myCmtFile));
+        assertNull(read(new File(myHome, "missing.cmt")));
+    }
+}
@@ -455,4 +455,44 @@ public class OcamlAnnotParserTest extends OCamlBaseTest {
                 "Li|3.8,3.22|unit");
     }
 
+    @Test
+    public void testCallBeforeAnotherPosition() {
+        assertParserResult("\"test.ml\" 1 0 8 \"test.ml\" 1 0 13\n" +
+                "call(\n" +
+                "  tail\n" +
+                ")\n" +
+                "\"test.ml\" 1 0 12 \"test.ml\" 1 0 13\n" +
+                "type(\n" +
+                "  int\n" +
+                ")\n", "Li|1.12,1.13|int");
+    }
+
+    @Test
+    public void testWindowsLineSeparators() {
+        assertParserResult(("\"test.ml\" 1 0 4 \"test.ml\" 1 0 5\n" +
+                "type(\n" +
+                "  int\n" +
+                ")\n" +
+                "ident(\n" +
+                "  def x \"test.ml\" 2 10 10 \"test.ml\" 0 0 -1\n" +
+                ")\n\n").replace("\n", "\r\n"), "Va|1.4,1.5|x|int");
+    }
+
+    @Test
+    public void testNext() {
+        OCamlAnnotParser parser = new OCamlAnnotParser("\"test.ml\" 1 0 4 \"test.ml\" 1 0 5\n" +
+                "type(\n" +
+                "  int\n" +
+                ")\n" +
+                "\"test.ml\" 1 0 8 \"test.ml\" 1 0 9\n" +
+                "type(\n" +
+                "  int\n" +
+                ")\n" +
+                "unexpected\n");
+        assertNotNull(parser.next());
+        assertNotNull(parser.next());
+        // the signatures before the error are returned
+        assertThrows(IllegalStateException.class, parser::next);
+    }
+
 }
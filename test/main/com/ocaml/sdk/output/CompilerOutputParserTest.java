@@ -0,0 +1,85 @@
+package com.ocaml.sdk.output;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+@SuppressWarnings("JUnit4AnnotatedMethodInJUnit3TestCase")
+public class CompilerOutputParserTest extends BaseOutputTest {
+
+    private static final String WARNING = "File \"unused.ml\", line 1, characters 4-5:\n" +
+            "1 | let x = 5\n" +
+            "        ^\n" +
+            "Warning 32 [unused-value-declaration]: unused value x.\n";
+
+    private static final class Parser extends CompilerOutputParser {
+        private final ArrayList<CompilerOutputMessage> messages = new ArrayList<>();
+
+        @Override protected void onMessageReady(@NotNull CompilerOutputMessage message) {
+            messages.add(message);
+        }
+    }
+
+    /**
+     * Send the text to the parser, in parts of chunkSize characters.
+     */
+    private static Parser stream(@NotNull String text, int chunkSize) {
+        Parser parser = new Parser();
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i += chunkSize) {
+            parser.parse(chars, i, Math.min(chunkSize, chars.length - i));
+        }
+        parser.inputDone();
+        return parser;
+    }
+
+    @Test
+    public void testLinesSplitBetweenChunks() {
+        for (int chunkSize : new int[]{1, 3, 7, WARNING.length()}) {
+            Parser parser = stream(WARNING, chunkSize);
+            assertSize(1, parser.messages);
+            CompilerOutputMessage message = parser.messages.get(0);
+            assertEquals(CompilerOutputMessage.Kind.WARNING, message.kind);
+            assertIsFile(message, "unused.ml", 1, 1, 4, 5);
+            assertIsContent(message, "Warning 32: unused value x.");
+            assertIsContext(message, "1 | let x = 5\n" + "        ^\n");
+        }
+    }
+
+    @Test
+    public void testWindowsLineSeparators() {
+        Parser parser = stream(WARNING.replace("\n", "\r\n"), 5);
+        assertSize(1, parser.messages);
+        assertIsContent(parser.messages.get(0), "Warning 32: unused value x.");
+    }
+
+    @Test
+    public void testWholeLine() {
+        Parser parser = stream("File \"a.ml\", lines 2-4:\nError: Syntax error", 16);
+        assertSize(1, parser.messages);
+        assertIsFile(parser.messages.get(0), "a.ml", 2, 4, -1, -1);
+        assertEquals(0, parser.getMalformedLines());
+    }
+
+    @Test
+    public void testMalformedInput() {
+        Parser parser = stream("something\nFile \"a.ml\", line x:\n" + WARNING + "File \"b.ml\", line 1:\n", 16);
+        // the message of b.ml has no kind
+        assertSize(1, parser.messages);
+        assertEquals(2, parser.getMalformedLines());
+        assertEquals(1, parser.getMalformedMessages());
+    }
+
+    @Test
+    public void testManyWarnings() {
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            output.append(WARNING.replace("line 1", "line " + (i + 1)));
+        }
+        Parser parser = stream(output.toString(), 8192);
+        assertSize(5000, parser.messages);
+        assertIsFile(parser.messages.get(4999), "unused.ml", 5000, 5000, 4, 5);
+        assertEquals(0, parser.getMalformedLines());
+    }
+}
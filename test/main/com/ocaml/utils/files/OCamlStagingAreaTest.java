@@ -0,0 +1,84 @@
+package com.ocaml.utils.files;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.ocaml.OCamlBaseTest;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+@SuppressWarnings("JUnit4AnnotatedMethodInJUnit3TestCase")
+public class OCamlStagingAreaTest extends OCamlBaseTest {
+
+    private static final Logger LOG = Logger.getInstance(OCamlStagingAreaTest.class);
+
+    private static OCamlStagingArea.Source source(String text, File diskFile) {
+        return new OCamlStagingArea.Source(text, StandardCharsets.UTF_8, diskFile);
+    }
+
+    @Test
+    public void testUnchangedFileIsNotWritten() throws Exception {
+        File dir = FileUtil.createTempDirectory("staging", null);
+        File copy = OCamlStagingArea.stage(dir, "a.ml", source("let x = 5", null), LOG);
+        assertNotNull(copy);
+        assertEquals("let x = 5", FileUtil.loadFile(copy));
+
+        // if the file was written again, the date would be updated
+        long lastModified = copy.lastModified();
+        File again = OCamlStagingArea.stage(dir, "a.ml", source("let x = 5", null), LOG);
+        assertEquals(copy, again);
+        assertEquals(lastModified, again.lastModified());
+    }
+
+    @Test
+    public void testChangedFileIsWritten() throws Exception {
+        File dir = FileUtil.createTempDirectory("staging", null);
+        OCamlStagingArea.stage(dir, "a.ml", source("let x = 5", null), LOG);
+        File copy = OCamlStagingArea.stage(dir, "a.ml", source("let x = 6", null), LOG);
+        assertNotNull(copy);
+        assertEquals("let x = 6", FileUtil.loadFile(copy));
+    }
+
+    @Test
+    public void testRemovedCopyIsWritten() throws Exception {
+        File dir = FileUtil.createTempDirectory("staging", null);
+        File copy = OCamlStagingArea.stage(dir, "a.ml", source("let x = 5", null), LOG);
+        assertNotNull(copy);
+        assertTrue(copy.delete());
+        copy = OCamlStagingArea.stage(dir, "a.ml", source("let x = 5", null), LOG);
+        assertNotNull(copy);
+        assertEquals("let x = 5", FileUtil.loadFile(copy));
+    }
+
+    @Test
+    public void testSavedFileIsLinked() throws Exception {
+        File dir = FileUtil.createTempDirectory("staging", null);
+        File diskFile = new File(FileUtil.createTempDirectory("sources", null), "a.ml");
+        FileUtil.writeToFile(diskFile, "let x = 5");
+
+        File copy = OCamlStagingArea.stage(dir, "a.ml", source("let x = 5", diskFile), LOG);
+        assertNotNull(copy);
+        assertTrue(Files.isSameFile(diskFile.toPath(), copy.toPath()));
+
+        // the document was modified, the file on the disk mustn't be modified
+        copy = OCamlStagingArea.stage(dir, "a.ml", source("let x = 6", null), LOG);
+        assertNotNull(copy);
+        assertEquals("let x = 6", FileUtil.loadFile(copy));
+        assertEquals("let x = 5", FileUtil.loadFile(diskFile));
+    }
+
+    @Test
+    public void testDifferentFileIsNotLinked() throws Exception {
+        File dir = FileUtil.createTempDirectory("staging", null);
+        File diskFile = new File(FileUtil.createTempDirectory("sources", null), "a.ml");
+        // same size, but not the same content
+        FileUtil.writeToFile(diskFile, "let x = 5\r\n");
+
+        File copy = OCamlStagingArea.stage(dir, "a.ml", source("let x = 5\n\n", diskFile), LOG);
+        assertNotNull(copy);
+        assertFalse(Files.isSameFile(diskFile.toPath(), copy.toPath()));
+        assertEquals("let x = 5\n\n", FileUtil.loadFile(copy));
+    }
+}